@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.SubmitRejectedException;
+import ibis.constellation.util.SingleEventCollector;
+
+public class BackpressureTest {
+
+    // Counts the waiters that finished.
+    private static final AtomicInteger finished = new AtomicInteger();
+
+    /**
+     * Holds on to its room until it gets an event.
+     */
+    private static class Waiter extends Activity {
+
+        private static final long serialVersionUID = 7301290856372915263L;
+
+        Waiter() {
+            super(new Context("DC"), false, true);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            finished.incrementAndGet();
+        }
+    }
+
+    private static Constellation createConstellation(int limit, String mode, int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_BACKPRESSURE_LIMIT, Integer.toString(limit));
+        p.put(ConstellationProperties.S_BACKPRESSURE_MODE, mode);
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+        return c;
+    }
+
+    private static void wakeUp(Constellation c, ActivityIdentifier id) {
+        c.send(new Event(id, id, null));
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+
+        // The suspended activities hold on to their room, so the executors have to go over the limit to finish the tree.
+        Constellation c = createConstellation(16, "block", 4);
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+
+        c.done();
+    }
+
+    @Test(timeout = 10000)
+    public void blockUntilRoom() throws Exception {
+
+        final Constellation c = createConstellation(2, "block", 2);
+
+        finished.set(0);
+
+        Waiter w1 = new Waiter();
+        Waiter w2 = new Waiter();
+        c.submit(w1);
+        c.submit(w2);
+
+        final Waiter w3 = new Waiter();
+        final int[] seen = new int[] { -1 };
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    c.submit(w3);
+                    seen[0] = finished.get();
+                } catch (Exception e) {
+                    // seen stays -1
+                }
+            }
+        };
+
+        t.start();
+
+        // The third submit can only return once one of the others has finished.
+        wakeUp(c, w1.identifier());
+        t.join();
+
+        assertEquals(1, seen[0]);
+
+        wakeUp(c, w2.identifier());
+        wakeUp(c, w3.identifier());
+        c.awaitQuiescence();
+
+        c.done();
+    }
+
+    @Test
+    public void retryRefuses() throws Exception {
+
+        Constellation c = createConstellation(2, "retry", 2);
+
+        Waiter w1 = new Waiter();
+        Waiter w2 = new Waiter();
+        assertNotNull(c.submit(w1));
+        assertNotNull(c.submit(w2));
+        assertNull(c.submit(new Waiter()));
+
+        wakeUp(c, w1.identifier());
+        wakeUp(c, w2.identifier());
+        c.awaitQuiescence();
+
+        Waiter w3 = new Waiter();
+        assertNotNull(c.submit(w3));
+        wakeUp(c, w3.identifier());
+        c.awaitQuiescence();
+
+        c.done();
+    }
+
+    @Test
+    public void failRejects() throws Exception {
+
+        Constellation c = createConstellation(1, "fail", 2);
+
+        Waiter w1 = new Waiter();
+        c.submit(w1);
+
+        try {
+            c.submit(new Waiter());
+            fail("Submit should have been rejected");
+        } catch (SubmitRejectedException e) {
+            // expected
+        }
+
+        wakeUp(c, w1.identifier());
+        c.awaitQuiescence();
+
+        c.done();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * Spawns a number of children, and then repeatedly sends an event to all of them in one batch. Each child answers every event
+ * with an event of its own. When all rounds are done, the total number of answers is sent to the parent.
+ */
+public class Broadcast extends Activity {
+
+    private static final long serialVersionUID = -2409518370163549180L;
+
+    private final ActivityIdentifier parent;
+
+    private final int children;
+    private final int rounds;
+
+    private ActivityIdentifier[] ids;
+
+    private int round = 0;
+    private int answers = 0;
+    private long total = 0L;
+
+    public Broadcast(ActivityIdentifier parent, int children, int rounds) {
+        super(new Context("DC"), true);
+        this.parent = parent;
+        this.children = children;
+        this.rounds = rounds;
+    }
+
+    private void broadcast(Constellation c) {
+
+        Event[] events = new Event[children];
+
+        for (int i = 0; i < children; i++) {
+            events[i] = new Event(identifier(), ids[i], round);
+        }
+
+        c.send(events);
+    }
+
+    @Override
+    public int initialize(Constellation c) {
+
+        ids = new ActivityIdentifier[children];
+
+        try {
+            for (int i = 0; i < children; i++) {
+                ids[i] = c.submit(new Child(identifier(), rounds));
+            }
+        } catch (NoSuitableExecutorException e) {
+            System.err.println("Should not happen: " + e);
+            e.printStackTrace(System.err);
+        }
+
+        broadcast(c);
+        return SUSPEND;
+    }
+
+    @Override
+    public int process(Constellation c, Event e) {
+
+        total++;
+        answers++;
+
+        if (answers < children) {
+            return SUSPEND;
+        }
+
+        answers = 0;
+        round++;
+
+        if (round < rounds) {
+            broadcast(c);
+            return SUSPEND;
+        }
+
+        c.send(new Event(identifier(), parent, total));
+        return FINISH;
+    }
+
+    @Override
+    public void cleanup(Constellation c) {
+        // empty!
+    }
+
+    /**
+     * Answers every event it gets, and finishes after the specified number of events.
+     */
+    public static class Child extends Activity {
+
+        private static final long serialVersionUID = 5861843067290834741L;
+
+        private final ActivityIdentifier parent;
+        private final int rounds;
+
+        private int round = 0;
+
+        public Child(ActivityIdentifier parent, int rounds) {
+            super(new Context("DC"), true);
+            this.parent = parent;
+            this.rounds = rounds;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+
+            if (((Integer) e.getData()).intValue() != round) {
+                throw new IllegalStateException("Got event of round " + e.getData() + " in round " + round);
+            }
+
+            c.send(new Event(identifier(), parent, round));
+
+            round++;
+            return round < rounds ? SUSPEND : FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty!
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.util.MultiEventCollector;
+import ibis.constellation.util.SingleEventCollector;
+
+public class BroadcastTest {
+
+    private long runTest(int children, int rounds, int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+        long result = 0;
+
+        if (c.isMaster()) {
+
+            long start = System.nanoTime();
+
+            SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+
+            c.submit(a);
+            c.submit(new Broadcast(a.identifier(), children, rounds));
+
+            result = (Long) a.waitForEvent().getData();
+
+            long end = System.nanoTime();
+
+            System.out.println("Broadcast(" + children + ", " + rounds + ") on " + executors + " executors = " + result
+                    + " total time = " + Math.round((end - start) / 1000000.0) / 1000.0 + " sec");
+        }
+        c.done();
+        return result;
+    }
+
+    @Test
+    public void test1() throws Exception {
+        assertEquals(100 * 100, runTest(100, 100, 1));
+    }
+
+    @Test
+    public void test2() throws Exception {
+        assertEquals(100 * 100, runTest(100, 100, 2));
+    }
+
+    @Test
+    public void test3() throws Exception {
+        assertEquals(1000 * 10, runTest(1000, 10, 4));
+    }
+
+    @Test
+    public void testSendFromApplication() throws Exception {
+
+        final int children = 100;
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, 2);
+        c.activate();
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), children);
+        c.submit(a);
+
+        Event[] events = new Event[children];
+
+        for (int i = 0; i < children; i++) {
+            ActivityIdentifier id = c.submit(new Broadcast.Child(a.identifier(), 1));
+            events[i] = new Event(a.identifier(), id, 0);
+        }
+
+        c.send(events);
+
+        assertEquals(children, a.waitForEvents().length);
+
+        c.done();
+    }
+}
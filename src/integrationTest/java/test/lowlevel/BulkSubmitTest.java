@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.util.MultiEventCollector;
+
+public class BulkSubmitTest {
+
+    private long runTest(int activities, int executors, boolean backpressure) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        if (backpressure) {
+            p.put("ibis.constellation.backpressure.limit", "100");
+        }
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), activities);
+        c.submit(a);
+
+        // Use a few different depths, so the batch has more than one context.
+        Activity[] batch = new Activity[activities];
+
+        for (int i = 0; i < activities; i++) {
+            batch[i] = new DivideAndConquerClean(a.identifier(), 2, i % 4);
+        }
+
+        long start = System.nanoTime();
+
+        ActivityIdentifier[] ids = c.submit(batch);
+
+        assertEquals(activities, ids.length);
+
+        for (int i = 0; i < activities; i++) {
+            assertNotNull(ids[i]);
+            assertEquals(batch[i].identifier(), ids[i]);
+        }
+
+        long result = 0;
+
+        for (Event e : a.waitForEvents()) {
+            result += (Long) e.getData();
+        }
+
+        long end = System.nanoTime();
+
+        System.out.println("BulkSubmit(" + activities + ") on " + executors + " executors = " + result + " total time = "
+                + Math.round((end - start) / 1000000.0) / 1000.0 + " sec");
+
+        c.done();
+        return result;
+    }
+
+    private static long expected(int activities) {
+        long result = 0;
+        for (int i = 0; i < activities; i++) {
+            result += (2L << (i % 4)) - 1;
+        }
+        return result;
+    }
+
+    @Test
+    public void bulkOnOne() throws Exception {
+        assertEquals(expected(1000), runTest(1000, 1, false));
+    }
+
+    @Test
+    public void bulkOnFour() throws Exception {
+        assertEquals(expected(10000), runTest(10000, 4, false));
+    }
+
+    @Test
+    public void bulkFewerThanExecutors() throws Exception {
+        assertEquals(expected(3), runTest(3, 4, false));
+    }
+
+    @Test
+    public void bulkWithBackpressure() throws Exception {
+        assertEquals(expected(1000), runTest(1000, 4, true));
+    }
+
+    @Test(expected = NoSuitableExecutorException.class)
+    public void bulkNoSuitableExecutor() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), 2);
+        c.activate();
+
+        try {
+            c.submit(new Activity[] { new MultiEventCollector(new Context("other"), 1) });
+        } finally {
+            c.done();
+        }
+    }
+
+    @Test
+    public void bulkNoSuitableExecutorSubmitsNothing() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), 2);
+        c.activate();
+
+        // The activity that cannot run comes last, but its group is found before any other is submitted.
+        Activity[] batch = new Activity[] { new MultiEventCollector(new Context("DC"), 1),
+                new MultiEventCollector(new Context("other"), 1) };
+
+        try {
+            c.submit(batch);
+            fail("Expected NoSuitableExecutorException");
+        } catch (NoSuitableExecutorException e) {
+            assertNull(batch[0].identifier());
+        } finally {
+            c.done();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.util.MultiEventCollector;
+
+public class CancelTest {
+
+    // Counts the activities that were initialized.
+    private static final AtomicLong started = new AtomicLong();
+
+    private static CountDownLatch running;
+    private static CountDownLatch blocked;
+
+    /**
+     * Blocks its executor until the test lets it go.
+     */
+    private static class Blocker extends Activity {
+
+        private static final long serialVersionUID = -2530437532425003461L;
+
+        Blocker() {
+            super(new Context("DC"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            running.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * A search tree. If <code>stop</code> is set, the first leaf to be reached finds the solution, and cancels the rest of the
+     * search.
+     */
+    private static class Search extends Activity {
+
+        private static final long serialVersionUID = 6791150423911474021L;
+
+        private final ActivityIdentifier root;
+        private final ActivityIdentifier parent;
+        private final int depth;
+        private final boolean stop;
+
+        private int merged = 0;
+
+        Search(ActivityIdentifier root, ActivityIdentifier parent, int depth, boolean stop) {
+            super(new Context("DC", depth), true, depth > 0);
+            this.root = root;
+            this.parent = parent;
+            this.depth = depth;
+            this.stop = stop;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            started.incrementAndGet();
+
+            if (depth == 0) {
+                if (stop) {
+                    c.cancel(root, true);
+                }
+                return FINISH;
+            }
+
+            ActivityIdentifier r = root == null ? identifier() : root;
+
+            for (int i = 0; i < 2; i++) {
+                try {
+                    c.submit(new Search(r, identifier(), depth - 1, stop));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return ++merged < 2 ? SUSPEND : FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            if (parent != null) {
+                c.send(new Event(identifier(), parent, null));
+            }
+        }
+    }
+
+    private static Constellation createConstellation(int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), executors);
+        c.activate();
+        return c;
+    }
+
+    @Test
+    public void queued() throws Exception {
+
+        Constellation c = createConstellation(1);
+
+        started.set(0);
+        running = new CountDownLatch(1);
+        blocked = new CountDownLatch(1);
+
+        c.submit(new Blocker());
+        running.await();
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 1);
+        c.submit(a);
+
+        Search s = new Search(null, a.identifier(), 3, false);
+        c.submit(s);
+
+        // Nothing can run yet, so neither activity has started when they are cancelled.
+        c.cancel(a.identifier(), false);
+        c.cancel(s.identifier(), false);
+
+        blocked.countDown();
+        c.awaitQuiescence();
+
+        assertEquals(0, started.get());
+        assertFalse(a.isFinished());
+
+        c.done();
+    }
+
+    @Test
+    public void subtree() throws Exception {
+
+        Constellation c = createConstellation(2);
+
+        started.set(0);
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 2);
+        c.submit(a);
+
+        // Without a parent, cancelling a subtree does not cancel its siblings, which send their results to a cancelled activity.
+        Search s1 = new Search(null, a.identifier(), 10, false);
+        Search s2 = new Search(null, a.identifier(), 10, false);
+        c.submit(s1);
+        c.submit(s2);
+        c.cancel(s1.identifier(), true);
+
+        c.awaitQuiescence();
+
+        assertFalse(a.isFinished());
+        assertTrue(started.get() < 2 * 2047);
+
+        c.done();
+    }
+
+    private void search(int executors) throws Exception {
+
+        Constellation c = createConstellation(executors);
+
+        started.set(0);
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 1);
+        c.submit(a);
+        c.submit(new Search(null, a.identifier(), 16, true));
+
+        // Once the first leaf cancels the search, the remaining activities are dropped, wherever they are.
+        c.awaitQuiescence();
+
+        assertFalse(a.isFinished());
+        assertTrue("ran " + started.get() + " activities", started.get() < 131071);
+
+        c.done();
+    }
+
+    @Test
+    public void searchOnOne() throws Exception {
+        search(1);
+    }
+
+    @Test
+    public void searchOnFour() throws Exception {
+        search(4);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.EventFuture;
+
+public class EventFutureTest {
+
+    private long runTest(int requests, int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+
+        // Keep all requests in flight at the same time, without a thread waiting for each of them.
+        EventFuture[] futures = new EventFuture[requests];
+
+        for (int i = 0; i < requests; i++) {
+            futures[i] = EventFuture.submit(c, new Context("DC"));
+            c.submit(new DivideAndConquerClean(futures[i].identifier(), 2, 6));
+        }
+
+        CompletableFuture.allOf(futures).get();
+
+        long result = 0;
+
+        for (EventFuture f : futures) {
+            result += (Long) f.get().getData();
+        }
+
+        c.done();
+        return result;
+    }
+
+    @Test
+    public void testOne() throws Exception {
+        assertEquals(1000 * 127, runTest(1000, 1));
+    }
+
+    @Test
+    public void testFour() throws Exception {
+        assertEquals(1000 * 127, runTest(1000, 4));
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.util.MultiEventCollector;
+import ibis.constellation.util.SingleEventCollector;
+
+public class HandoffTest {
+
+    /**
+     * Replies to the first event it gets, and then tells its parent it is done.
+     */
+    private static class Ponger extends Activity {
+
+        private static final long serialVersionUID = -1771939734416735618L;
+
+        private final ActivityIdentifier parent;
+
+        Ponger(ActivityIdentifier parent) {
+            super(new Context("DC"), true);
+            this.parent = parent;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            c.send(new Event(identifier(), e.getSource(), "pong"));
+            c.send(new Event(identifier(), parent, "done"));
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Sends an event from its cleanup, when it can no longer receive the reply.
+     */
+    private static class Pinger extends Activity {
+
+        private static final long serialVersionUID = 2763385513741101742L;
+
+        private final ActivityIdentifier target;
+
+        Pinger(ActivityIdentifier target) {
+            super(new Context("DC"), true);
+            this.target = target;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            c.send(new Event(identifier(), target, "ping"));
+        }
+    }
+
+    /**
+     * Remembers the thread it got its event on.
+     */
+    private static class Listener extends Activity {
+
+        private static final long serialVersionUID = 4470383286119524695L;
+
+        private volatile Thread thread;
+
+        Listener() {
+            super(new Context("DC"), true);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            thread = Thread.currentThread();
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private long runTest(int length, int tokens, int executors, int depth) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_EVENT_HANDOFF_DEPTH, Integer.toString(depth));
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+        long result = 0;
+
+        if (c.isMaster()) {
+
+            long start = System.nanoTime();
+
+            SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+
+            c.submit(a);
+            c.submit(new Relay(a.identifier(), length, tokens));
+
+            result = (Long) a.waitForEvent().getData();
+
+            long end = System.nanoTime();
+
+            System.out.println("Relay(" + length + ", " + tokens + ") on " + executors + " executors with hand-off depth " + depth
+                    + " = " + result + " hops, " + (end - start) / result + " ns/hop");
+        }
+        c.done();
+        return result;
+    }
+
+    @Test
+    public void testQueued() throws Exception {
+        assertEquals(10000 * 9, runTest(8, 10000, 1, 0));
+    }
+
+    @Test
+    public void testHandoff() throws Exception {
+        assertEquals(10000 * 9, runTest(8, 10000, 1, 16));
+    }
+
+    @Test
+    public void testHandoffDepthExceeded() throws Exception {
+        assertEquals(1000 * 65, runTest(64, 1000, 1, 4));
+    }
+
+    @Test
+    public void testSendFromCleanup() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_EVENT_HANDOFF_DEPTH, "16");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), 1);
+        c.activate();
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 1);
+        c.submit(a);
+
+        Ponger ponger = new Ponger(a.identifier());
+        c.submit(ponger);
+
+        // Make sure the ponger is suspended, so the ping wakes it up.
+        c.awaitQuiescence();
+
+        // The ponger must not run while the pinger is finishing, as its reply cannot be delivered then.
+        c.submit(new Pinger(ponger.identifier()));
+        c.awaitQuiescence();
+
+        assertTrue(a.isFinished());
+        assertEquals("done", a.waitForEvents()[0].getData());
+
+        c.done();
+    }
+
+    @Test(timeout = 10000)
+    public void testSendFromApplication() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_EVENT_HANDOFF_DEPTH, "16");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), 1);
+        c.activate();
+
+        Listener listener = new Listener();
+        c.submit(listener);
+
+        // Make sure the listener is suspended, so the event wakes it up.
+        c.awaitQuiescence();
+
+        // The event does not come from one of our activities, so the listener must run on the executor thread, not on ours.
+        c.send(new Event(listener.identifier(), listener.identifier(), "hello"));
+        c.awaitQuiescence();
+
+        assertNotNull(listener.thread);
+        assertNotSame(Thread.currentThread(), listener.thread);
+
+        c.done();
+    }
+
+    @Test
+    public void testHandoffMultipleExecutors() throws Exception {
+        assertEquals(1000 * 17, runTest(16, 1000, 4, 8));
+    }
+}
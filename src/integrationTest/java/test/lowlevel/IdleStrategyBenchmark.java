@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Properties;
+
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+/**
+ * Compares the "sleep" and "spin" idle strategies on a fine-grained divide-and-conquer run. For each strategy it prints the
+ * wall clock time of a run and, if the JVM supports it, the CPU time the process used during that run, to show both sides of the
+ * trade-off.
+ *
+ * This is not a unit test. Run it with
+ * <code>java test.lowlevel.IdleStrategyBenchmark [executors] [depth] [repeat]</code>.
+ */
+public class IdleStrategyBenchmark {
+
+    private static final String[] STRATEGIES = { "sleep", "spin" };
+
+    private static long cpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+
+        return -1;
+    }
+
+    private static void run(String strategy, int executors, int depth) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put("ibis.constellation.idle.strategy", strategy);
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        long cpu = cpuTime();
+        long start = System.nanoTime();
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, depth));
+
+        long result = (Long) a.waitForEvent().getData();
+
+        c.done();
+
+        long wall = System.nanoTime() - start;
+        cpu = cpu < 0 ? -1 : cpuTime() - cpu;
+
+        System.out.printf("%-6s D&C(2, %d) = %d: wall %8.1f ms, cpu %8.1f ms\n", strategy, depth, result, wall / 1e6,
+                cpu < 0 ? Double.NaN : cpu / 1e6);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int executors = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int repeat = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        for (int i = 0; i < repeat; i++) {
+            for (String s : STRATEGIES) {
+                run(s, executors, depth);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+public class InlineTest {
+
+    private static final int COUNT = 8;
+
+    // Set while the spawner submits its children.
+    private static volatile boolean spawning;
+
+    // Counts the children that ran while their spawner was still submitting.
+    private static final AtomicInteger inlined = new AtomicInteger();
+
+    /**
+     * Submits the children.
+     */
+    private static class Spawner extends Activity {
+
+        private static final long serialVersionUID = -1484622377519640513L;
+
+        Spawner() {
+            super(new Context("DC"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            spawning = true;
+
+            for (int i = 0; i < COUNT; i++) {
+                try {
+                    c.submit(new Child());
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            spawning = false;
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Child extends Activity {
+
+        private static final long serialVersionUID = 6603519337924001127L;
+
+        Child() {
+            super(new Context("DC"), true, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            if (spawning) {
+                inlined.incrementAndGet();
+            }
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Submits children from its cleanup, which tell it they are done while it is finishing.
+     */
+    private static class Parent extends Activity {
+
+        private static final long serialVersionUID = 2811694472410652238L;
+
+        Parent() {
+            super(new Context("DC"), false, true);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    c.submit(new Reporter(identifier()));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+        }
+    }
+
+    private static class Reporter extends Activity {
+
+        private static final long serialVersionUID = -4390286101634517829L;
+
+        private final ActivityIdentifier parent;
+
+        Reporter(ActivityIdentifier parent) {
+            super(new Context("DC"), true, false);
+            this.parent = parent;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            c.send(new Event(identifier(), parent, null));
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static Constellation createConstellation(int threshold, int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_INLINE_THRESHOLD, Integer.toString(threshold));
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+        return c;
+    }
+
+    private static void fib(int executors) throws Exception {
+
+        Constellation c = createConstellation(4, executors);
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+
+        c.done();
+    }
+
+    @Test
+    public void fibOnOne() throws Exception {
+        fib(1);
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+        fib(4);
+    }
+
+    @Test
+    public void childRunsInline() throws Exception {
+
+        Constellation c = createConstellation(2, 1);
+
+        inlined.set(0);
+
+        c.submit(new Spawner());
+        c.awaitQuiescence();
+
+        // The first two children are queued, the others find enough work queued and run right away.
+        assertEquals(COUNT - 2, inlined.get());
+
+        c.done();
+    }
+
+    @Test(timeout = 10000)
+    public void submitFromCleanup() throws Exception {
+
+        Constellation c = createConstellation(1, 1);
+
+        // The second child would run inline, but must wait until its parent is gone, as it cannot get events while it finishes.
+        c.submit(new Parent());
+        c.awaitQuiescence();
+
+        c.done();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+public class LockFreeQueueTest {
+
+    // The threads the recorders ran on, and their numbers, in the order they ran.
+    private static final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+    private static final List<Integer> numbers = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private static volatile Thread owner;
+
+    /**
+     * Submits numbered recorders to its own queue, oldest first.
+     */
+    private static class Spawner extends Activity {
+
+        private static final long serialVersionUID = 4121876934560817193L;
+
+        private final int count;
+
+        Spawner(int count) {
+            super(new Context("DC"), false, false);
+            this.count = count;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            owner = Thread.currentThread();
+
+            for (int i = 0; i < count; i++) {
+                try {
+                    c.submit(new Recorder(i));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Recorder extends Activity {
+
+        private static final long serialVersionUID = -6130624893146577185L;
+
+        private final int number;
+
+        Recorder(int number) {
+            // A sorted queue would hand out the biggest to the thief instead.
+            super(new Context("DC", number), true, false);
+            this.number = number;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            synchronized (threads) {
+                threads.add(Thread.currentThread());
+                numbers.add(number);
+            }
+
+            // Give the thief time to come by.
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static Constellation createConstellation(int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+        config.setLockFreeQueue(true);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+        return c;
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+
+        Constellation c = createConstellation(4);
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+
+        c.done();
+    }
+
+    @Test
+    public void thievesTakeTheOldest() throws Exception {
+
+        Constellation c = createConstellation(2);
+
+        threads.clear();
+        numbers.clear();
+
+        c.submit(new Spawner(64));
+        c.awaitQuiescence();
+
+        // The owner runs the newest recorders and the thief the oldest ones, so they meet somewhere in the middle.
+        int ownerMin = Integer.MAX_VALUE;
+        int thiefMax = Integer.MIN_VALUE;
+
+        for (int i = 0; i < threads.size(); i++) {
+            if (threads.get(i) == owner) {
+                ownerMin = Math.min(ownerMin, numbers.get(i));
+            } else {
+                thiefMax = Math.max(thiefMax, numbers.get(i));
+            }
+        }
+
+        assertEquals(64, threads.size());
+        assertFalse("Nothing was stolen", thiefMax == Integer.MIN_VALUE);
+        assertTrue("The thief took " + thiefMax + ", the owner " + ownerMin, thiefMax < ownerMin);
+
+        c.done();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * Offloads a task that waits until a latch is released, and then submits the activity that releases it. If the waiting task ran
+ * on the executor itself, a single executor would never get to run the releasing activity. Sends the result of the task to the
+ * parent.
+ */
+public class Offload extends Activity {
+
+    private static final long serialVersionUID = -3356920840184734208L;
+
+    private final ActivityIdentifier parent;
+
+    private final boolean fail;
+
+    public Offload(ActivityIdentifier parent, boolean fail) {
+        super(new Context("DC"), false, true);
+        this.parent = parent;
+        this.fail = fail;
+    }
+
+    @Override
+    public int initialize(Constellation c) {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        c.offload(identifier(), new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (!latch.await(60, TimeUnit.SECONDS)) {
+                    return "timeout";
+                }
+                if (fail) {
+                    throw new Exception("failed");
+                }
+                return "released";
+            }
+        });
+
+        try {
+            c.submit(new Release(latch));
+        } catch (NoSuitableExecutorException e) {
+            System.err.println("Should not happen: " + e);
+            e.printStackTrace(System.err);
+        }
+
+        return SUSPEND;
+    }
+
+    @Override
+    public int process(Constellation c, Event e) {
+        c.send(new Event(identifier(), parent, e.getData()));
+        return FINISH;
+    }
+
+    @Override
+    public void cleanup(Constellation c) {
+        // empty!
+    }
+
+    /**
+     * Releases a latch.
+     */
+    public static class Release extends Activity {
+
+        private static final long serialVersionUID = 7329107361950841256L;
+
+        private final transient CountDownLatch latch;
+
+        public Release(CountDownLatch latch) {
+            super(new Context("DC"), false, false);
+            this.latch = latch;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            latch.countDown();
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty!
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.util.SingleEventCollector;
+
+public class OffloadTest {
+
+    private Object runTest(int executors, String threads, boolean fail) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_OFFLOAD_THREADS, threads);
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, executors);
+        c.activate();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+
+        c.submit(a);
+        c.submit(new Offload(a.identifier(), fail));
+
+        Object result = a.waitForEvent().getData();
+
+        c.done();
+        return result;
+    }
+
+    @Test
+    public void testSingleExecutor() throws Exception {
+        assertEquals("released", runTest(1, "auto", false));
+    }
+
+    @Test
+    public void testMultipleExecutors() throws Exception {
+        assertEquals("released", runTest(2, "cached", false));
+    }
+
+    @Test
+    public void testException() throws Exception {
+        assertTrue(runTest(1, "cached", true) instanceof Exception);
+    }
+
+    @Test
+    public void testOffloadFromApplication() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"));
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, 2);
+        c.activate();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+
+        c.offload(a.identifier(), new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 42;
+            }
+        });
+
+        assertEquals(42, a.waitForEvent().getData());
+
+        c.done();
+    }
+}
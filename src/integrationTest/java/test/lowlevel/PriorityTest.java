@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+public class PriorityTest {
+
+    // The priorities of the recorders, in the order they ran.
+    private static final List<Integer> priorities = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Submits recorders with different priorities to its own executor, which is the only one that can run them.
+     */
+    private static class Spawner extends Activity {
+
+        private static final long serialVersionUID = -2491532850407151337L;
+
+        private final int count;
+
+        Spawner(int count) {
+            super(new Context("PRIO"), false, false);
+            this.count = count;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            // Interleave low and high priorities, so the order of submission differs from the order of priority.
+            for (int i = 0; i < count; i++) {
+                try {
+                    c.submit(new Recorder(i % 2 == 0 ? i : -i));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Recorder extends Activity {
+
+        private static final long serialVersionUID = 6911306476104151318L;
+
+        Recorder(int priority) {
+            super(new Context("PRIO"), true, false, priority);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            priorities.add(getPriority());
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    // The priority of the first activity the thief stole.
+    private static volatile int stolenPriority;
+
+    private static volatile Thread thief;
+
+    private static CountDownLatch blocking;
+    private static CountDownLatch submitted;
+    private static CountDownLatch stolen;
+
+    /**
+     * Keeps the thief busy until both owners have queued their work.
+     */
+    private static class Blocker extends Activity {
+
+        private static final long serialVersionUID = -7420157212946355870L;
+
+        Blocker() {
+            super(new Context("T"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            thief = Thread.currentThread();
+            blocking.countDown();
+            await(submitted);
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Queues work of the specified priority at its owner, and keeps the owner busy until the thief has stolen something.
+     */
+    private static class Owner extends Activity {
+
+        private static final long serialVersionUID = 1263304783311981125L;
+
+        private final int priority;
+
+        Owner(Context context, int priority) {
+            super(context, false, false);
+            this.priority = priority;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            try {
+                c.submit(new Stealable(priority));
+            } catch (NoSuitableExecutorException e) {
+                throw new Error(e);
+            }
+
+            submitted.countDown();
+            await(stolen);
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Stealable extends Activity {
+
+        private static final long serialVersionUID = -2908134652717331954L;
+
+        Stealable(int priority) {
+            super(new Context("DC"), true, false, priority);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            if (Thread.currentThread() == thief && stolen.getCount() > 0) {
+                stolenPriority = getPriority();
+                stolen.countDown();
+            }
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static ConstellationConfiguration config(Context... contexts) {
+        return new ConstellationConfiguration(contexts.length == 1 ? contexts[0] : new OrContext(contexts), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_QUEUE_PRIORITY, "true");
+
+        // The first executor also runs the recorders, which the others cannot steal.
+        Constellation c = ConstellationFactory.createConstellation(p, config(new Context("DC"), new Context("PRIO")),
+                config(new Context("DC")), config(new Context("DC")), config(new Context("DC")));
+        c.activate();
+
+        priorities.clear();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+        c.submit(new Spawner(64));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+        c.awaitQuiescence();
+
+        assertEquals(64, priorities.size());
+
+        for (int i = 1; i < priorities.size(); i++) {
+            assertTrue("Priority " + priorities.get(i) + " ran after " + priorities.get(i - 1),
+                    priorities.get(i - 1) > priorities.get(i));
+        }
+
+        c.done();
+    }
+
+    @Test
+    public void thiefStealsMostUrgent() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_QUEUE_PRIORITY, "true");
+
+        // Submitted activities go to the queues of the owners that their peers steal from directly.
+        p.put(ConstellationProperties.S_QUEUED_JOB_LIMIT, "0");
+
+        Constellation c = ConstellationFactory.createConstellation(p, config(new Context("T"), new Context("DC")),
+                config(new Context("LOW"), new Context("DC")), config(new Context("HIGH"), new Context("DC")));
+        c.activate();
+
+        blocking = new CountDownLatch(1);
+        submitted = new CountDownLatch(2);
+        stolen = new CountDownLatch(1);
+
+        // The thief should not steal anything before both owners have queued their work.
+        c.submit(new Blocker());
+        await(blocking);
+
+        c.submit(new Owner(new Context("LOW"), -10));
+        c.submit(new Owner(new Context("HIGH"), 10));
+        c.awaitQuiescence();
+
+        assertEquals(0, stolen.getCount());
+        assertEquals(10, stolenPriority);
+
+        c.done();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.util.MultiEventCollector;
+
+public class QuiescenceTest {
+
+    /**
+     * Tries to wait for quiescence from within an activity, and sends whether that was refused to its parent.
+     */
+    private static class AwaitFromActivity extends Activity {
+
+        private static final long serialVersionUID = 4385062213470937513L;
+
+        private final ActivityIdentifier parent;
+
+        AwaitFromActivity(ActivityIdentifier parent) {
+            super(new Context("DC"), false, false);
+            this.parent = parent;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            boolean refused = false;
+
+            try {
+                c.awaitQuiescence();
+            } catch (IllegalStateException e) {
+                refused = true;
+            } catch (InterruptedException e) {
+                // ignore
+            }
+
+            c.send(new Event(identifier(), parent, refused));
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static Constellation createConstellation(int executors) throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        Constellation c = ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("DC")), executors);
+        c.activate();
+        return c;
+    }
+
+    private static long sum(MultiEventCollector a) {
+        long result = 0;
+
+        for (Event e : a.waitForEvents()) {
+            result += (Long) e.getData();
+        }
+
+        return result;
+    }
+
+    private MultiEventCollector runStage(Constellation c, int activities, int depth) throws Exception {
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), activities);
+        c.submit(a);
+
+        Activity[] batch = new Activity[activities];
+
+        for (int i = 0; i < activities; i++) {
+            batch[i] = new DivideAndConquerClean(a.identifier(), 2, depth);
+        }
+
+        c.submit(batch);
+
+        // No waiting for the collector, once Constellation is quiescent it must have all its events.
+        c.awaitQuiescence();
+
+        assertTrue(a.isFinished());
+        return a;
+    }
+
+    private void pipeline(int executors) throws Exception {
+
+        Constellation c = createConstellation(executors);
+
+        // Each stage is only submitted when the previous one is done.
+        assertEquals(100 * 1023, sum(runStage(c, 100, 9)));
+        assertEquals(1000 * 15, sum(runStage(c, 1000, 3)));
+
+        c.done();
+    }
+
+    @Test
+    public void pipelineOnOne() throws Exception {
+        pipeline(1);
+    }
+
+    @Test
+    public void pipelineOnFour() throws Exception {
+        pipeline(4);
+    }
+
+    @Test
+    public void idle() throws Exception {
+
+        Constellation c = createConstellation(2);
+
+        // Nothing was submitted, so this returns right away.
+        c.awaitQuiescence();
+
+        c.done();
+    }
+
+    @Test
+    public void offload() throws Exception {
+
+        Constellation c = createConstellation(2);
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 10);
+        c.submit(a);
+
+        for (int i = 0; i < 10; i++) {
+            c.submit(new Offload(a.identifier(), false));
+        }
+
+        // The offloaded tasks count as work until they have sent their result.
+        c.awaitQuiescence();
+
+        assertTrue(a.isFinished());
+
+        for (Event e : a.waitForEvents()) {
+            assertEquals("released", e.getData());
+        }
+
+        c.done();
+    }
+
+    @Test
+    public void fromActivity() throws Exception {
+
+        Constellation c = createConstellation(2);
+
+        MultiEventCollector a = new MultiEventCollector(new Context("DC"), 1);
+        c.submit(a);
+        c.submit(new AwaitFromActivity(a.identifier()));
+
+        assertEquals(Boolean.TRUE, a.waitForEvents()[0].getData());
+
+        c.done();
+    }
+}
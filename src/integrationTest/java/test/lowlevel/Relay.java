@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * Sets up a chain of activities, and passes a number of tokens along it, one at a time. Every stage forwards each token to the
+ * next stage, and the last stage returns it to the start of the chain, which then sends the next token. When all tokens have
+ * made the round trip, the number of hops is sent to the parent.
+ */
+public class Relay extends Activity {
+
+    private static final long serialVersionUID = 2184762059814730151L;
+
+    private final ActivityIdentifier parent;
+
+    private final int length;
+    private final int tokens;
+
+    private ActivityIdentifier first;
+
+    private int returned = 0;
+
+    public Relay(ActivityIdentifier parent, int length, int tokens) {
+        super(new Context("DC"), true);
+        this.parent = parent;
+        this.length = length;
+        this.tokens = tokens;
+    }
+
+    @Override
+    public int initialize(Constellation c) {
+
+        ActivityIdentifier next = identifier();
+
+        try {
+            for (int i = 0; i < length; i++) {
+                next = c.submit(new Stage(next, tokens));
+            }
+        } catch (NoSuitableExecutorException e) {
+            System.err.println("Should not happen: " + e);
+            e.printStackTrace(System.err);
+        }
+
+        first = next;
+
+        c.send(new Event(identifier(), first, returned));
+        return SUSPEND;
+    }
+
+    @Override
+    public int process(Constellation c, Event e) {
+
+        returned++;
+
+        if (returned < tokens) {
+            c.send(new Event(identifier(), first, returned));
+            return SUSPEND;
+        }
+
+        c.send(new Event(identifier(), parent, (long) returned * (length + 1)));
+        return FINISH;
+    }
+
+    @Override
+    public void cleanup(Constellation c) {
+        // empty!
+    }
+
+    /**
+     * Forwards every token to the next stage, and finishes after the specified number of tokens.
+     */
+    public static class Stage extends Activity {
+
+        private static final long serialVersionUID = -6610495718221953020L;
+
+        private final ActivityIdentifier next;
+        private final int tokens;
+
+        private int seen = 0;
+
+        public Stage(ActivityIdentifier next, int tokens) {
+            super(new Context("DC"), true);
+            this.next = next;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+
+            if (((Integer) e.getData()).intValue() != seen) {
+                throw new IllegalStateException("Got token " + e.getData() + " while expecting " + seen);
+            }
+
+            c.send(new Event(identifier(), next, e.getData()));
+
+            seen++;
+            return seen < tokens ? SUSPEND : FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty!
+        }
+    }
+}
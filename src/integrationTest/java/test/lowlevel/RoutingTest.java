@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationIdentifier;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.OrContext;
+import ibis.constellation.util.MultiEventCollector;
+
+public class RoutingTest {
+
+    // Tells the collector on which executor it ran.
+    private static class Where extends Activity {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ActivityIdentifier collector;
+
+        Where(AbstractContext context, ActivityIdentifier collector) {
+            super(context, false, false);
+            this.collector = collector;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            c.send(new Event(identifier(), collector, c.identifier()));
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // nothing
+        }
+    }
+
+    private static Constellation create() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+
+        // Ranks 0 and 1 run A, rank 2 runs B, and rank 3 runs both.
+        return ConstellationFactory.createConstellation(p, new ConstellationConfiguration(new Context("A")),
+                new ConstellationConfiguration(new Context("A")), new ConstellationConfiguration(new Context("B")),
+                new ConstellationConfiguration(new OrContext(new Context("A"), new Context("B"))),
+                new ConstellationConfiguration(new Context("collector")));
+    }
+
+    private static Set<ConstellationIdentifier> runOn(AbstractContext context, int count, boolean bulk) throws Exception {
+
+        Constellation c = create();
+        c.activate();
+
+        MultiEventCollector m = new MultiEventCollector(new Context("collector"), count);
+        c.submit(m);
+
+        Activity[] activities = new Activity[count];
+
+        for (int i = 0; i < count; i++) {
+            activities[i] = new Where(context, m.identifier());
+        }
+
+        if (bulk) {
+            c.submit(activities);
+        } else {
+            for (Activity a : activities) {
+                c.submit(a);
+            }
+        }
+
+        Set<ConstellationIdentifier> result = new HashSet<ConstellationIdentifier>();
+
+        for (Event e : m.waitForEvents()) {
+            result.add((ConstellationIdentifier) e.getData());
+        }
+
+        c.done();
+        return result;
+    }
+
+    @Test
+    public void routeByName() throws Exception {
+        // Only rank 2 and 3 can run B, and they can't steal from the others.
+        assertTrue(runOn(new Context("B"), 100, false).size() <= 2);
+    }
+
+    @Test
+    public void routeByNameBulk() throws Exception {
+        assertTrue(runOn(new Context("B"), 100, true).size() <= 2);
+    }
+
+    @Test
+    public void routeOrContext() throws Exception {
+        assertTrue(runOn(new OrContext(new Context("B"), new Context("X")), 100, false).size() <= 2);
+    }
+
+    @Test(expected = NoSuitableExecutorException.class)
+    public void noRoute() throws Exception {
+
+        Constellation c = create();
+        c.activate();
+
+        try {
+            c.submit(new Where(new Context("C"), null));
+        } finally {
+            c.done();
+        }
+    }
+}
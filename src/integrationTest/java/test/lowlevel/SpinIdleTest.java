@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+public class SpinIdleTest {
+
+    private static final int COUNT = 8;
+
+    private static volatile Thread owner;
+    private static volatile Thread thief;
+
+    private static CountDownLatch probed;
+    private static CountDownLatch blocking;
+    private static CountDownLatch submitted;
+    private static CountDownLatch stolen;
+
+    /**
+     * Tells us which thread is the thief, so we can wait until it has failed to steal and is waiting for its steal deadline.
+     */
+    private static class Probe extends Activity {
+
+        private static final long serialVersionUID = 3360912297018540237L;
+
+        Probe() {
+            super(new Context("T"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            thief = Thread.currentThread();
+            probed.countDown();
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Keeps the thief busy until the owner has submitted its work. The thief runs it right after another activity, so the thief
+     * is not registered as idle while it waits, and nobody wakes it up when the work arrives.
+     */
+    private static class Blocker extends Activity {
+
+        private static final long serialVersionUID = -6021432530716227880L;
+
+        private final boolean first;
+
+        Blocker(boolean first) {
+            super(new Context("T"), false, false);
+            this.first = first;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            if (first) {
+                try {
+                    c.submit(new Blocker(false));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            } else {
+                blocking.countDown();
+                await(submitted);
+            }
+
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Submits work on the owner, and keeps the owner busy until the thief has taken some of it.
+     */
+    private static class Spawner extends Activity {
+
+        private static final long serialVersionUID = 4623318797450186102L;
+
+        Spawner() {
+            super(new Context("O"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            owner = Thread.currentThread();
+            await(blocking);
+
+            for (int i = 0; i < COUNT; i++) {
+                try {
+                    c.submit(new Recorder());
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            submitted.countDown();
+            await(stolen);
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Recorder extends Activity {
+
+        private static final long serialVersionUID = 1837261739372011346L;
+
+        Recorder() {
+            super(new Context("DC"), true, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            if (Thread.currentThread() != owner) {
+                stolen.countDown();
+            }
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static void awaitParked(Thread t) {
+
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (t.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    private static ConstellationConfiguration config(Context own) {
+        return new ConstellationConfiguration(new OrContext(own, new Context("DC")), StealStrategy.SMALLEST, StealStrategy.BIGGEST,
+                StealStrategy.BIGGEST);
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_IDLE_STRATEGY, "spin");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, 4);
+        c.activate();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+
+        c.done();
+    }
+
+    @Test
+    public void thiefFindsWorkBeforeStealDelay() throws Exception {
+
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_IDLE_STRATEGY, "spin");
+
+        // Steal requests go out once a minute, so the thief only finds the work in time if it looks for it while it spins.
+        p.put(ConstellationProperties.S_STEAL_DELAY, "60000");
+
+        // Submitted activities go to the queues of the owner that its peers steal from directly.
+        p.put(ConstellationProperties.S_QUEUED_JOB_LIMIT, "0");
+
+        Constellation c = ConstellationFactory.createConstellation(p, config(new Context("O")), config(new Context("T")));
+        c.activate();
+
+        probed = new CountDownLatch(1);
+        blocking = new CountDownLatch(1);
+        submitted = new CountDownLatch(1);
+        stolen = new CountDownLatch(1);
+
+        c.submit(new Probe());
+        await(probed);
+        awaitParked(thief);
+
+        c.submit(new Blocker(true));
+        c.submit(new Spawner());
+        c.awaitQuiescence();
+
+        assertTrue("Thief did not find the work", stolen.getCount() == 0);
+
+        c.done();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.Constellation;
+import ibis.constellation.ConstellationConfiguration;
+import ibis.constellation.ConstellationFactory;
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.util.SingleEventCollector;
+
+public class StealHalfTest {
+
+    private static final int COUNT = 16;
+
+    // The numbers of the recorders the owner ran, in the order it ran them.
+    private static final List<Integer> owned = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private static volatile Thread owner;
+
+    private static CountDownLatch submitted;
+    private static CountDownLatch stolen;
+    private static CountDownLatch ownerDone;
+
+    /**
+     * Keeps the thief busy until the owner has submitted all recorders.
+     */
+    private static class Blocker extends Activity {
+
+        private static final long serialVersionUID = 2098353157204917634L;
+
+        Blocker() {
+            super(new Context("T"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            await(submitted);
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    /**
+     * Submits the recorders on the owner, and keeps the owner busy until the thief has taken its share.
+     */
+    private static class Spawner extends Activity {
+
+        private static final long serialVersionUID = -3960962226066542315L;
+
+        Spawner() {
+            super(new Context("O"), false, false);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            owner = Thread.currentThread();
+
+            for (int i = 1; i <= COUNT; i++) {
+                try {
+                    c.submit(new Recorder(i));
+                } catch (NoSuitableExecutorException e) {
+                    throw new Error(e);
+                }
+            }
+
+            submitted.countDown();
+            await(stolen);
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static class Recorder extends Activity {
+
+        private static final long serialVersionUID = 5179404227604437117L;
+
+        private final int number;
+
+        Recorder(int number) {
+            super(new Context("DC", number), true, false);
+            this.number = number;
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+
+            if (Thread.currentThread() == owner) {
+                owned.add(number);
+
+                if (owned.size() == COUNT / 2) {
+                    ownerDone.countDown();
+                }
+            } else if (stolen.getCount() > 0) {
+                // Keep the thief from stealing more until the owner has run what it kept.
+                stolen.countDown();
+                await(ownerDone);
+            }
+
+            return FINISH;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static Properties properties() {
+        Properties p = new Properties();
+        p.put("ibis.constellation.distributed", "false");
+        p.put(ConstellationProperties.S_STEAL_HALF, "true");
+        p.put(ConstellationProperties.S_STEAL_SIZE, Integer.toString(COUNT));
+        return p;
+    }
+
+    private static ConstellationConfiguration config(Context own) {
+        return new ConstellationConfiguration(new OrContext(own, new Context("DC")), StealStrategy.SMALLEST, StealStrategy.BIGGEST,
+                StealStrategy.BIGGEST);
+    }
+
+    @Test
+    public void fibOnFour() throws Exception {
+
+        Properties p = properties();
+        p.put(ConstellationProperties.S_STEAL_SIZE, "8");
+
+        ConstellationConfiguration config = new ConstellationConfiguration(new Context("DC"), StealStrategy.SMALLEST,
+                StealStrategy.BIGGEST, StealStrategy.BIGGEST);
+
+        Constellation c = ConstellationFactory.createConstellation(p, config, 4);
+        c.activate();
+
+        SingleEventCollector a = new SingleEventCollector(new Context("DC"));
+        c.submit(a);
+        c.submit(new DivideAndConquerClean(a.identifier(), 2, 13));
+
+        assertEquals(16383L, a.waitForEvent().getData());
+
+        c.done();
+    }
+
+    @Test
+    public void thiefTakesHalf() throws Exception {
+
+        Properties p = properties();
+
+        // Submitted activities go to the queues of the owner that its peers steal from directly.
+        p.put(ConstellationProperties.S_QUEUED_JOB_LIMIT, "0");
+
+        Constellation c = ConstellationFactory.createConstellation(p, config(new Context("O")), config(new Context("T")));
+        c.activate();
+
+        owned.clear();
+        submitted = new CountDownLatch(1);
+        stolen = new CountDownLatch(1);
+        ownerDone = new CountDownLatch(1);
+
+        c.submit(new Blocker());
+        c.submit(new Spawner());
+        c.awaitQuiescence();
+
+        // The thief took the biggest half in one steal, so the owner kept the smallest half, which it runs smallest first.
+        assertTrue("Owner ran " + owned, owned.size() >= COUNT / 2);
+
+        for (int i = 0; i < COUNT / 2; i++) {
+            assertEquals("Owner ran " + owned, i + 1, (int) owned.get(i));
+        }
+
+        c.done();
+    }
+}
@@ -60,9 +60,15 @@ public abstract class Activity implements Serializable {
      */
     public static final int SUSPEND = 1;
 
+    /**
+     * The priority of activities created without an explicit priority.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
     private final AbstractContext context;
     private final boolean mayBeStolen;
     private final boolean expectsEvents;
+    private final int priority;
 
     private ActivityIdentifier identifier;
 
@@ -78,6 +84,27 @@ public abstract class Activity implements Serializable {
      *            if this Activity expects events
      */
     public Activity(AbstractContext context, boolean mayBeStolen, boolean expectsEvents) {
+        this(context, mayBeStolen, expectsEvents, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Create an Activity with a specified context and priority, and indicate if this Activity may be stolen by other
+     * Constellations, and if it expects to receive Events.
+     *
+     * When priority scheduling is enabled (see {@link ConstellationProperties#S_QUEUE_PRIORITY}), activities with a higher
+     * priority are run and handed out to thieves before activities with a lower priority, independent of their context. A
+     * deadline can be expressed as a priority as well, by giving earlier deadlines a higher priority.
+     *
+     * @param context
+     *            the context in which this activity should be run.
+     * @param mayBeStolen
+     *            if this activity may be stolen by other Constellations
+     * @param expectsEvents
+     *            if this Activity expects events
+     * @param priority
+     *            the priority of this Activity, higher is more urgent
+     */
+    public Activity(AbstractContext context, boolean mayBeStolen, boolean expectsEvents, int priority) {
 
         if (context == null) {
             throw new IllegalArgumentException("Activity must have a context");
@@ -86,6 +113,7 @@ public abstract class Activity implements Serializable {
         this.context = context;
         this.mayBeStolen = mayBeStolen;
         this.expectsEvents = expectsEvents;
+        this.priority = priority;
     }
 
     /**
@@ -158,6 +186,15 @@ public abstract class Activity implements Serializable {
         return mayBeStolen;
     }
 
+    /**
+     * Returns the priority of this Activity. Activities created without an explicit priority have {@link #DEFAULT_PRIORITY}.
+     *
+     * @return the priority of this Activity.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
     /**
      * Returns if this Activity expects {@link Event}s.
      *
@@ -16,6 +16,8 @@
  */
 package ibis.constellation;
 
+import java.util.concurrent.Callable;
+
 /**
  * Main interface to Constellation.
  *
@@ -34,14 +36,36 @@ public interface Constellation {
      * match, an executor that can be stolen from. In some cases, the system can detect that no suitable executor can be found. In
      * those cases, it throws an exception.
      *
+     * If a limit on the number of outstanding activities is configured (see {@link ConstellationProperties#S_BACKPRESSURE_LIMIT})
+     * and this limit is reached, the submission either blocks, is rejected with a {@link SubmitRejectedException}, or is refused
+     * by returning <code>null</code>, depending on the configured mode.
+     *
      * @param activity
      *            the Activity to submit
      * @exception NoSuitableExecutorException
      *                is thrown when the system has detected that no suitable executor can be found.
-     * @return ActivityIdentifier that can be used to refer to the submitted Activity.
+     * @return ActivityIdentifier that can be used to refer to the submitted Activity, or <code>null</code> if the activity was
+     *         not submitted and should be submitted again later.
      */
     public ActivityIdentifier submit(Activity activity) throws NoSuitableExecutorException;
 
+    /**
+     * Submit a number of activities.
+     *
+     * This has the same effect as submitting the activities one by one, but is cheaper when many activities are submitted at
+     * once, for instance by the application when it starts. Which executors may run an activity is determined only once for
+     * every distinct context, and the activities are spread over those executors in chunks.
+     *
+     * @param activities
+     *            the Activities to submit
+     * @exception NoSuitableExecutorException
+     *                is thrown when the system has detected that no suitable executor can be found for one of the activities.
+     *                Activities before it in the array may have been submitted already.
+     * @return the ActivityIdentifiers of the submitted activities, in the same order as the activities. An entry is
+     *         <code>null</code> if the activity was not submitted and should be submitted again later.
+     */
+    public ActivityIdentifier[] submit(Activity[] activities) throws NoSuitableExecutorException;
+
     /**
      * Send an event.
      *
@@ -50,6 +74,75 @@ public interface Constellation {
      */
     public void send(Event e);
 
+    /**
+     * Send a number of events.
+     *
+     * This has the same effect as sending the events one by one, but is cheaper when many events are sent at once, for instance
+     * when an activity notifies all its children. Events to activities on the same executor are delivered together, and events
+     * to activities on the same remote node are sent in a single message. Events to the same target activity are delivered in
+     * the order in which they appear in the array.
+     *
+     * @param events
+     *            the Events to send.
+     */
+    public void send(Event[] events);
+
+    /**
+     * Runs a task that may block, such as I/O or waiting for something outside Constellation, on a thread of its own.
+     *
+     * An activity that blocks in one of its methods holds up its executor, which then cannot run other activities, deliver
+     * events, or hand out work to thieves. Instead, it can offload the blocking part with this method, and suspend. When the task
+     * is done, its result is sent to the target activity as an event, with the target as source. If the task throws an exception,
+     * the exception is sent instead.
+     *
+     * The tasks run on virtual threads when the JVM supports them, and on threads from a cached thread pool otherwise (see
+     * {@link ConstellationProperties#S_OFFLOAD_THREADS}). A task must not call methods of this Constellation.
+     *
+     * @param target
+     *            the activity to send the result to, which must expect events.
+     * @param task
+     *            the task to run.
+     */
+    public void offload(ActivityIdentifier target, Callable<?> task);
+
+    /**
+     * Waits until Constellation is quiescent: no activity is queued or running, no event is on its way to an activity, and no
+     * offloaded task is running, anywhere in the pool. Suspended activities may remain, but as nothing is left that could send
+     * them an event, they will not run again unless the application submits new work or sends new events.
+     *
+     * This allows the application to wait for a batch of activities without a collector activity, for instance before submitting
+     * the next stage of a pipeline. In a distributed Constellation, quiescence is detected by the master, which collects the work
+     * counters of all nodes in waves, so it is only detected for the nodes that have joined the pool. This method must not be
+     * called by an activity, as the activity itself keeps Constellation from becoming quiescent.
+     *
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting.
+     * @throws IllegalStateException
+     *             if this method is called by an executor thread.
+     */
+    public void awaitQuiescence() throws InterruptedException;
+
+    /**
+     * Cancels an activity, for instance because the search it was part of has found its answer. A queued activity is removed
+     * from its queue, and a suspended activity is dropped together with the events that are waiting for it. A running activity is
+     * not interrupted, but it is cancelled as soon as it returns from {@link Activity#initialize}, {@link Activity#process} or
+     * {@link Activity#cleanup}. An activity that has moved to another node is followed there. A cancelled activity does not run
+     * again, and its cleanup is not called. Events sent to it are dropped.
+     *
+     * If <code>cascade</code> is <code>true</code>, all activities submitted by a cancelled activity are cancelled as well, on
+     * every node, and so on. As these may have moved anywhere, cascading cancellation is sent to all nodes of the pool.
+     *
+     * Cancellation is asynchronous: this method returns before the activities have been removed. Cancelled activities count as
+     * completed work, so {@link #awaitQuiescence()} returns once all remaining work has either been done or cancelled. The number
+     * of cancelled activities is shown in the statistics.
+     *
+     * @param activity
+     *            the activity to cancel.
+     * @param cascade
+     *            whether to also cancel the activities submitted by the cancelled activities.
+     */
+    public void cancel(ActivityIdentifier activity, boolean cascade);
+
     /**
      * Activate this Constellation implementation.
      *
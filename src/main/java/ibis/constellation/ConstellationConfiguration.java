@@ -45,6 +45,8 @@ public class ConstellationConfiguration {
     private StealStrategy constellationStealStrategy;
     private StealStrategy remoteStealStrategy;
 
+    private boolean lockFreeQueue = false;
+
     /**
      * Constructs a <code>ConstellationConfiguration</code> with the specified parameters. Executors with this configuration will
      * behave as described by the parameter section below.
@@ -251,4 +253,28 @@ public class ConstellationConfiguration {
     public void setStealsFrom(StealPool stealsFrom) {
         this.stealsFrom = stealsFrom;
     }
+
+    /**
+     * Returns whether executors of this <code>ConstellationConfiguration</code> use a lock-free work-stealing deque for their
+     * fresh activities.
+     *
+     * @return whether a lock-free queue is used.
+     */
+    public boolean isLockFreeQueue() {
+        return lockFreeQueue;
+    }
+
+    /**
+     * Selects whether executors of this <code>ConstellationConfiguration</code> should use a lock-free work-stealing deque for
+     * their fresh activities, instead of a queue sorted on context. Other executors can then steal from them without blocking
+     * them. The deque is only used when the context is a single {@link Context} with an unbounded range. Steal strategies are
+     * followed as far as the order of the deque allows: the executor itself gets the most recently submitted activity with
+     * {@link StealStrategy#SMALLEST} and the oldest one otherwise, and thieves always get the oldest one.
+     *
+     * @param lockFreeQueue
+     *            whether a lock-free queue should be used.
+     */
+    public void setLockFreeQueue(boolean lockFreeQueue) {
+        this.lockFreeQueue = lockFreeQueue;
+    }
 }
@@ -159,6 +159,15 @@ public class ConstellationProperties extends Properties {
     /** Value of the "steal.size" property. */
     public final int REMOTESTEAL_SIZE;
 
+    /**
+     * The "steal.half" property is a boolean property indicating whether a steal should take half of the matching activities of
+     * the victim, up to the steal size, instead of simply as many as the steal size. The default is "false".
+     */
+    public static final String S_STEAL_HALF = S_STEAL_PREFIX + "half";
+
+    /** Value of the "steal.half" property. */
+    public final boolean STEAL_HALF;
+
     /**
      * The "steal.ignoreEmptyReplies" property is a boolean property determining whether empty steal replies should be given or
      * not. The default is "false".
@@ -208,6 +217,161 @@ public class ConstellationProperties extends Properties {
     /** Value of the "queue.limit" property. */
     public final int QUEUED_JOB_LIMIT;
 
+    /**
+     * The "queue.priority" property is a boolean property indicating whether the queues of the executors should order activities
+     * on their priority (see {@link Activity#getPriority()}) first, and only then on their context. Activities with a higher
+     * priority are then run first, and are handed out first to both local and remote thieves. The default is "false".
+     */
+    public static final String S_QUEUE_PRIORITY = S_PREFIX + "queue.priority";
+
+    /** Value of the "queue.priority" property. */
+    public final boolean QUEUE_PRIORITY;
+
+    /**
+     * The "event.queue.capacity" property is an integer property, specifying the initial capacity of the event queue of an
+     * activity that expects events. The queue grows when more events are pending, and shrinks back when the activity suspends
+     * while using only a small part of it. The default value is "4".
+     */
+    public static final String S_EVENT_QUEUE_CAPACITY = S_PREFIX + "event.queue.capacity";
+
+    /** Value of the "event.queue.capacity" property. */
+    public final int EVENT_QUEUE_CAPACITY;
+
+    /**
+     * The "event.handoff.depth" property is an integer property. When it is larger than 0, an activity that is woken up by an
+     * event sent by another activity on the same executor is run right away, on top of the sender, instead of being queued. This
+     * cuts the latency of chains of activities passing events to each other. The value limits how deeply such hand-offs may be
+     * nested, as each one grows the stack. The default value is "0", which disables direct hand-off.
+     */
+    public static final String S_EVENT_HANDOFF_DEPTH = S_PREFIX + "event.handoff.depth";
+
+    /** Value of the "event.handoff.depth" property. */
+    public final int EVENT_HANDOFF_DEPTH;
+
+    private static final String S_INLINE_PREFIX = S_PREFIX + "inline.";
+
+    /**
+     * The "inline.threshold" property is an integer property. When it is larger than 0, an activity that submits a child while
+     * its executor already has at least this many fresh activities queued, runs the child right away instead of queueing it,
+     * provided the child may be stolen and matches the context of the executor. Such a child would most likely not be stolen
+     * anyway, so this saves the cost of queueing it, and delivers its result to the parent without a trip through the queues.
+     * The default value is "0", which disables inline execution.
+     */
+    public static final String S_INLINE_THRESHOLD = S_INLINE_PREFIX + "threshold";
+
+    /** Value of the "inline.threshold" property. */
+    public final int INLINE_THRESHOLD;
+
+    /**
+     * The "inline.depth" property is an integer property, limiting how deeply inline executions of children (see
+     * {@link #S_INLINE_THRESHOLD}) may be nested, as each one grows the stack. The default value is "64".
+     */
+    public static final String S_INLINE_DEPTH = S_INLINE_PREFIX + "depth";
+
+    /** Value of the "inline.depth" property. */
+    public final int INLINE_DEPTH;
+
+    /**
+     * The "offload.threads" property is a string property defining which threads run the tasks offloaded with
+     * {@link Constellation#offload(ActivityIdentifier, java.util.concurrent.Callable)}. There are three options: <br>
+     * "virtual" indicates: a virtual thread per task, or a cached thread pool if the JVM does not support virtual threads <br>
+     * "cached" indicates: a cached thread pool, even if the JVM supports virtual threads <br>
+     * "auto" indicates: the same as "virtual", without the warning when virtual threads are not supported <br>
+     * The default value is: "auto".
+     */
+    public static final String S_OFFLOAD_THREADS = S_PREFIX + "offload.threads";
+
+    /** Value of the "offload.threads" property. */
+    public final String OFFLOAD_THREADS;
+
+    /**
+     * The "tombstone.batch" property is an integer property. When a stolen or relocated activity that expects events is done, the
+     * constellations it passed through are told so, so they can forget where they sent it. These tombstones are collected, and
+     * sent when this many are pending, or when the executor runs out of work. The default value is "64".
+     */
+    public static final String S_TOMBSTONE_BATCH = S_PREFIX + "tombstone.batch";
+
+    /** Value of the "tombstone.batch" property. */
+    public final int TOMBSTONE_BATCH;
+
+    private static final String S_IDLE_PREFIX = S_PREFIX + "idle.";
+
+    /**
+     * The "idle.strategy" property is a string property defining what an executor does when it has no work and its steal attempt
+     * failed. There are two strategies: <br>
+     * "sleep" indicates: wait until the steal delay has passed, or until new work or a message arrives <br>
+     * "spin" indicates: busy-spin for "idle.spins" attempts, then yield for "idle.yields" attempts, and then park for an
+     * exponentially growing time between "idle.park.min" and "idle.park.max". The executor tries to steal from its local peers
+     * after each attempt, but steal requests to other workers or nodes are still only sent once per steal delay. <br>
+     * The default value is: "sleep".
+     */
+    public static final String S_IDLE_STRATEGY = S_IDLE_PREFIX + "strategy";
+
+    /** Value of the "idle.strategy" property. */
+    public final String IDLE_STRATEGY;
+
+    /**
+     * The "idle.spins" property is an integer property, specifying the number of busy-spinning steal attempts of the "spin" idle
+     * strategy. The default is "100".
+     */
+    public static final String S_IDLE_SPINS = S_IDLE_PREFIX + "spins";
+
+    /** Value of the "idle.spins" property. */
+    public final int IDLE_SPINS;
+
+    /**
+     * The "idle.yields" property is an integer property, specifying the number of steal attempts of the "spin" idle strategy
+     * that yield the processor before the executor starts to park. The default is "10".
+     */
+    public static final String S_IDLE_YIELDS = S_IDLE_PREFIX + "yields";
+
+    /** Value of the "idle.yields" property. */
+    public final int IDLE_YIELDS;
+
+    /**
+     * The "idle.park.min" property is an integer property, specifying the first park time of the "spin" idle strategy, in
+     * nanoseconds. The default is "1000".
+     */
+    public static final String S_IDLE_PARK_MIN = S_IDLE_PREFIX + "park.min";
+
+    /** Value of the "idle.park.min" property. */
+    public final int IDLE_PARK_MIN;
+
+    /**
+     * The "idle.park.max" property is an integer property, specifying the maximum park time of the "spin" idle strategy, in
+     * nanoseconds. The default is "1000000".
+     */
+    public static final String S_IDLE_PARK_MAX = S_IDLE_PREFIX + "park.max";
+
+    /** Value of the "idle.park.max" property. */
+    public final int IDLE_PARK_MAX;
+
+    private static final String S_BACKPRESSURE_PREFIX = S_PREFIX + "backpressure.";
+
+    /**
+     * The "backpressure.limit" property is an integer property, specifying the maximum number of activities that may be
+     * outstanding (submitted or stolen, but not yet finished) on this node. When this limit is reached, further submissions are
+     * handled according to the "backpressure.mode" property. The default is "0", meaning no limit.
+     */
+    public static final String S_BACKPRESSURE_LIMIT = S_BACKPRESSURE_PREFIX + "limit";
+
+    /** Value of the "backpressure.limit" property. */
+    public final int BACKPRESSURE_LIMIT;
+
+    /**
+     * The "backpressure.mode" property is a string property defining what happens to a submission when the
+     * "backpressure.limit" is reached. There are three modes: <br>
+     * "block" indicates: wait until enough activities have finished <br>
+     * "fail" indicates: throw a {@link SubmitRejectedException} <br>
+     * "retry" indicates: do not submit the activity, and return <code>null</code> from {@link Constellation#submit(Activity)}
+     * <br>
+     * The default value is: "block".
+     */
+    public static final String S_BACKPRESSURE_MODE = S_BACKPRESSURE_PREFIX + "mode";
+
+    /** Value of the "backpressure.mode" property. */
+    public final String BACKPRESSURE_MODE;
+
     /**
      * Creates a <code>ConstellationProperties</code> object using the specified properties.
      *
@@ -233,9 +397,24 @@ public class ConstellationProperties extends Properties {
         STEAL_IGNORE_EMPTY_REPLIES = getBooleanProperty(S_STEAL_IGNORE_EMPTY_REPLIES, false);
         STEAL_SIZE = getIntProperty(S_STEAL_SIZE, 1);
         REMOTESTEAL_SIZE = getIntProperty(S_REMOTESTEAL_SIZE, 1);
+        STEAL_HALF = getBooleanProperty(S_STEAL_HALF, false);
         STEALSTRATEGY = getProperty(S_STEALSTRATEGY, "pool");
         REMOTESTEAL_TIMEOUT = getIntProperty(S_REMOTESTEAL_TIMEOUT, 5000);
         QUEUED_JOB_LIMIT = getIntProperty(S_QUEUED_JOB_LIMIT, 100);
+        QUEUE_PRIORITY = getBooleanProperty(S_QUEUE_PRIORITY, false);
+        EVENT_QUEUE_CAPACITY = getIntProperty(S_EVENT_QUEUE_CAPACITY, 4);
+        EVENT_HANDOFF_DEPTH = getIntProperty(S_EVENT_HANDOFF_DEPTH, 0);
+        INLINE_THRESHOLD = getIntProperty(S_INLINE_THRESHOLD, 0);
+        INLINE_DEPTH = getIntProperty(S_INLINE_DEPTH, 64);
+        OFFLOAD_THREADS = getProperty(S_OFFLOAD_THREADS, "auto");
+        TOMBSTONE_BATCH = getIntProperty(S_TOMBSTONE_BATCH, 64);
+        IDLE_STRATEGY = getProperty(S_IDLE_STRATEGY, "sleep");
+        IDLE_SPINS = getIntProperty(S_IDLE_SPINS, 100);
+        IDLE_YIELDS = getIntProperty(S_IDLE_YIELDS, 10);
+        IDLE_PARK_MIN = getIntProperty(S_IDLE_PARK_MIN, 1000);
+        IDLE_PARK_MAX = getIntProperty(S_IDLE_PARK_MAX, 1000000);
+        BACKPRESSURE_LIMIT = getIntProperty(S_BACKPRESSURE_LIMIT, 0);
+        BACKPRESSURE_MODE = getProperty(S_BACKPRESSURE_MODE, "block");
         if (logger.isInfoEnabled()) {
             logger.info("MASTER = " + MASTER);
             logger.info("CLOSED = " + CLOSED);
@@ -253,9 +432,30 @@ public class ConstellationProperties extends Properties {
             logger.info("STEAL_IGNORE_EMPTY_REPLIES = " + STEAL_IGNORE_EMPTY_REPLIES);
             logger.info("STEAL_SIZE = " + STEAL_SIZE);
             logger.info("REMOTESTEAL_SIZE = " + REMOTESTEAL_SIZE);
+            logger.info("STEAL_HALF = " + STEAL_HALF);
             logger.info("STEALSTRATEGY = " + STEALSTRATEGY);
             logger.info("REMOTESTEAL_TIMEOUT = " + REMOTESTEAL_TIMEOUT);
             logger.info("QUEUED_JOB_LIMIT = " + QUEUED_JOB_LIMIT);
+            logger.info("QUEUE_PRIORITY = " + QUEUE_PRIORITY);
+            logger.info("EVENT_QUEUE_CAPACITY = " + EVENT_QUEUE_CAPACITY);
+            logger.info("EVENT_HANDOFF_DEPTH = " + EVENT_HANDOFF_DEPTH);
+            logger.info("INLINE_THRESHOLD = " + INLINE_THRESHOLD);
+            if (INLINE_THRESHOLD > 0) {
+                logger.info("INLINE_DEPTH = " + INLINE_DEPTH);
+            }
+            logger.info("OFFLOAD_THREADS = " + OFFLOAD_THREADS);
+            logger.info("TOMBSTONE_BATCH = " + TOMBSTONE_BATCH);
+            logger.info("IDLE_STRATEGY = " + IDLE_STRATEGY);
+            if (IDLE_STRATEGY.equalsIgnoreCase("spin")) {
+                logger.info("IDLE_SPINS = " + IDLE_SPINS);
+                logger.info("IDLE_YIELDS = " + IDLE_YIELDS);
+                logger.info("IDLE_PARK_MIN = " + IDLE_PARK_MIN);
+                logger.info("IDLE_PARK_MAX = " + IDLE_PARK_MAX);
+            }
+            logger.info("BACKPRESSURE_LIMIT = " + BACKPRESSURE_LIMIT);
+            if (BACKPRESSURE_LIMIT > 0) {
+                logger.info("BACKPRESSURE_MODE = " + BACKPRESSURE_MODE);
+            }
         }
     }
 
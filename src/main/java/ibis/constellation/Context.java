@@ -16,6 +16,11 @@
  */
 package ibis.constellation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import ibis.constellation.impl.util.NameRegistry;
+
 /**
  * A <code>Context</code> represents a single context, associated with an executor or activity, and determines either a specific
  * type of activity that can be executed by an executor, or vice versa. A <code>Context</code> is characterized by a name,
@@ -34,6 +39,9 @@ public class Context extends AbstractContext {
     private final long rangeStart;
     private final long rangeEnd;
 
+    // Identifier of the name within this process, so it is not sent along.
+    private transient int nameId;
+
     public Context(String name, long rangeStart, long rangeEnd) {
 
         if (name == null) {
@@ -47,6 +55,7 @@ public class Context extends AbstractContext {
         this.name = name;
         this.rangeStart = rangeStart;
         this.rangeEnd = rangeEnd;
+        this.nameId = NameRegistry.CONTEXT_NAMES.intern(name);
     }
 
     public Context(String name, long rank) {
@@ -66,6 +75,16 @@ public class Context extends AbstractContext {
         return name;
     }
 
+    /**
+     * Returns an integer identifier of the context name, which is unique for the name within this process. This is used to match
+     * contexts quickly.
+     *
+     * @return the identifier of the context name.
+     */
+    public int getNameId() {
+        return nameId;
+    }
+
     public long getRangeStart() {
         return rangeStart;
     }
@@ -98,6 +117,11 @@ public class Context extends AbstractContext {
         return name.hashCode() ^ (int) ((rangeEnd ^ (rangeEnd >>> 32)) ^ (rangeStart ^ (rangeStart >>> 32)));
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nameId = NameRegistry.CONTEXT_NAMES.intern(name);
+    }
+
     @Override
     public String toString() {
         return "Context(" + getName() + ", " + rangeStart + "-" + rangeEnd + ")";
@@ -16,6 +16,8 @@
  */
 package ibis.constellation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -24,6 +26,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Executor;
 
+import ibis.constellation.impl.util.NameRegistry;
+
 /**
  * A <code>StealPool</code> is one of the mechanisms to determine the activities that are to be executed by an {@link Executor}.
  * Each executor has two steal pools associated with it: the one it belongs to and the one it can steal from. In addition, an
@@ -38,6 +42,12 @@ public final class StealPool implements Serializable {
     private final String tag;
     private final StealPool[] set;
 
+    // Bitset of the identifiers of the member tags within this process, used for fast overlap checks. Recomputed on
+    // deserialization.
+    private transient long[] bits;
+    private transient boolean world;
+    private transient boolean none;
+
     /**
      * An executor that belongs to the <code>WORLD</code> steal pool generates activities that can in principle be stolen by any
      * other executor. An executor that can steal from this steal pool can steal from any pool, except <code>NONE</code>.
@@ -81,6 +91,7 @@ public final class StealPool implements Serializable {
             }
         });
         tag = null;
+        init();
     }
 
     /**
@@ -97,6 +108,43 @@ public final class StealPool implements Serializable {
         }
         this.tag = tag;
         this.set = null;
+        init();
+    }
+
+    private void init() {
+
+        if (set == null) {
+            world = tag.equals("WORLD");
+            none = tag.equals("NONE");
+
+            int id = NameRegistry.POOL_TAGS.intern(tag);
+            bits = new long[(id >>> 6) + 1];
+            bits[id >>> 6] = 1L << id;
+            return;
+        }
+
+        world = false;
+        none = false;
+
+        int length = 0;
+
+        for (StealPool s : set) {
+            length = Math.max(length, s.bits.length);
+        }
+
+        bits = new long[length];
+
+        for (StealPool s : set) {
+            for (int i = 0; i < s.bits.length; i++) {
+                bits[i] |= s.bits[i];
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // The members of a set have been read completely at this point, so their bits are available.
+        init();
     }
 
     /**
@@ -196,44 +244,15 @@ public final class StealPool implements Serializable {
             return true;
         }
 
-        if (set != null) {
-            if (other.set != null) {
-                return setOverlap(set, other.set);
-            }
-            return setContains(set, other.tag);
-        }
-        if (other.set != null) {
-            return setContains(other.set, tag);
-        }
-        return tag.equals(other.tag);
-    }
+        long[] otherBits = other.bits;
+        int length = Math.min(bits.length, otherBits.length);
 
-    private static boolean setContains(StealPool[] set, String tag) {
-        for (StealPool s : set) {
-            int cmp = tag.compareTo(s.tag);
-            if (cmp == 0) {
+        for (int i = 0; i < length; i++) {
+            if ((bits[i] & otherBits[i]) != 0) {
                 return true;
             }
-            if (cmp < 0) {
-                break;
-            }
         }
-        return false;
-    }
 
-    private static boolean setOverlap(StealPool[] set1, StealPool[] set2) {
-        int i = 0;
-        int oi = 0;
-        while (i < set1.length && oi < set2.length) {
-            int cmp = set1[i].tag.compareTo(set2[oi].tag);
-            if (cmp < 0) {
-                i++;
-            } else if (cmp > 0) {
-                oi++;
-            } else {
-                return true;
-            }
-        }
         return false;
     }
 
@@ -253,7 +272,7 @@ public final class StealPool implements Serializable {
      * @return if this steal pool is the {@link #WORLD} steal pool.
      */
     public boolean isWorld() {
-        return this.equals(WORLD);
+        return world;
     }
 
     /**
@@ -262,7 +281,7 @@ public final class StealPool implements Serializable {
      * @return if this steal pool is the {@link #NONE} steal pool.
      */
     public boolean isNone() {
-        return this.equals(NONE);
+        return none;
     }
 
     /**
@@ -287,8 +306,10 @@ public final class StealPool implements Serializable {
      * @return a random member steal pool.
      */
     public StealPool randomlySelectPool(Random random) {
-        StealPool[] tmp = set();
-        return tmp[random.nextInt(tmp.length)];
+        if (set == null) {
+            return this;
+        }
+        return set[random.nextInt(set.length)];
     }
 
     @Override
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation;
+
+/**
+ * This exception gets thrown when an activity is submitted while the node has reached its limit of outstanding activities, and
+ * the "backpressure.mode" property is set to "fail". See {@link ConstellationProperties#S_BACKPRESSURE_LIMIT}.
+ *
+ * The activity is not submitted, so the submission can be tried again later.
+ */
+public class SubmitRejectedException extends NoSuitableExecutorException {
+
+    private static final long serialVersionUID = -2750218473628914307L;
+
+    /**
+     * Creates a SubmitRejectedException.
+     *
+     * @param s
+     *            describes the reason.
+     */
+    public SubmitRejectedException(String s) {
+        super(s);
+    }
+}
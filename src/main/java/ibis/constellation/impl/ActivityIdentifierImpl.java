@@ -16,7 +16,12 @@
  */
 package ibis.constellation.impl;
 
-import java.io.Serializable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 import ibis.constellation.Activity;
 import ibis.constellation.ActivityIdentifier;
@@ -24,29 +29,73 @@ import ibis.constellation.ActivityIdentifier;
 /**
  * An <code>ActivityIdentifierImpl</code> uniquely identifies an {@link Activity} instance.
  *
+ * The identifier is packed into two longs: the first holds the node identification (upper 32 bits) and local identification
+ * (lower 32 bits) of the constellation that created the activity, the second holds the sequence number of the activity on that
+ * constellation, with the top bit set if the activity expects events. On the wire, it is always encoded in
+ * {@link #ENCODED_SIZE} bytes.
+ *
  * @version 1.0
  * @since 1.0
  */
-public final class ActivityIdentifierImpl implements ActivityIdentifier, Serializable {
+public final class ActivityIdentifierImpl implements ActivityIdentifier, Externalizable {
+
+    private static final long serialVersionUID = -2871503469402876582L;
+
+    /** The number of bytes written by {@link #writeTo(DataOutput)}. */
+    public static final int ENCODED_SIZE = 16;
+
+    // Set in the sequence word if the activity expects events.
+    private static final long EVENTS_FLAG = Long.MIN_VALUE;
 
-    /* Generated */
-    private static final long serialVersionUID = 4785081436543353644L;
+    private long origin;
+    private long sequence;
 
-    // The globally unique UUID for this activity is "CID:AID"
-    // "CID" is the id of the Constellation on which this Activity was
-    // created,
-    // "AID" is the sequence number of this activity on that executor.
-    private ConstellationIdentifierImpl CID;
-    private long AID;
-    private boolean expectsEvents;
+    /**
+     * Creates an empty identifier, to be filled in by {@link #readExternal(ObjectInput)}. Only to be used by deserialization.
+     */
+    public ActivityIdentifierImpl() {
+        // empty
+    }
+
+    private ActivityIdentifierImpl(long origin, long sequence) {
+        this.origin = origin;
+        this.sequence = sequence;
+    }
 
     public static ActivityIdentifierImpl createActivityIdentifier(ConstellationIdentifierImpl cid, long aid,
             boolean expectsEvents) {
-        ActivityIdentifierImpl id = new ActivityIdentifierImpl();
-        id.CID = cid;
-        id.AID = aid;
-        id.expectsEvents = expectsEvents;
-        return id;
+        return createActivityIdentifier(packOrigin(cid), aid, expectsEvents);
+    }
+
+    /**
+     * Creates an activity identifier from a packed origin, as returned by {@link #packOrigin(ConstellationIdentifierImpl)}.
+     *
+     * @param origin
+     *            the packed origin
+     * @param aid
+     *            the sequence number of the activity
+     * @param expectsEvents
+     *            whether the activity expects events
+     * @return the activity identifier.
+     */
+    public static ActivityIdentifierImpl createActivityIdentifier(long origin, long aid, boolean expectsEvents) {
+
+        if (aid < 0) {
+            throw new IllegalArgumentException("Illegal activity sequence number: " + aid);
+        }
+
+        return new ActivityIdentifierImpl(origin, expectsEvents ? aid | EVENTS_FLAG : aid);
+    }
+
+    /**
+     * Packs the node identification and local identification of the specified constellation identifier into a single long.
+     *
+     * @param cid
+     *            the constellation identifier
+     * @return the packed origin.
+     */
+    public static long packOrigin(ConstellationIdentifierImpl cid) {
+        return ((long) cid.getNodeId() << 32) | (cid.getLocalId() & 0xFFFFFFFFL);
     }
 
     /**
@@ -55,37 +104,112 @@ public final class ActivityIdentifierImpl implements ActivityIdentifier, Seriali
      * @return whether this activity expects events.
      */
     public boolean expectsEvents() {
-        return expectsEvents;
+        return (sequence & EVENTS_FLAG) != 0;
     }
 
     /**
-     * Returns the constellation identifier that created this activity.
+     * Returns the constellation identifier that created this activity. As the identifier is stored in packed form, a new
+     * constellation identifier object is returned on each call.
      *
      * @return the constellation identifier.
      */
     public ConstellationIdentifierImpl getOrigin() {
-        return CID;
+        return new ConstellationIdentifierImpl(getNodeId(), getLocalId());
     }
 
     /**
-     * Checks if this activity identifier is actually generated by a constellation. If not, it throws an
-     * {@link IllegalArgumentException}.
+     * Returns whether this activity was created by the specified constellation. Unlike comparing with {@link #getOrigin()}, this
+     * does not allocate.
      *
-     * @throws IllegalArgumentException
-     *             is thrown when this activity identifier is not generated by constellation.
+     * @param cid
+     *            the constellation identifier
+     * @return whether the specified constellation created this activity.
      */
-    public final void checkActivityIdentifier() {
-        if (CID == null) {
-            throw new IllegalArgumentException("Illegal activity identifier");
-        }
+    public boolean isFrom(ConstellationIdentifierImpl cid) {
+        return cid != null && getNodeId() == cid.getNodeId() && getLocalId() == cid.getLocalId();
+    }
+
+    /**
+     * Returns the node identification of the constellation that created this activity.
+     *
+     * @return the node identification.
+     */
+    public int getNodeId() {
+        return (int) (origin >>> 32);
+    }
+
+    /**
+     * Returns the local identification of the constellation that created this activity.
+     *
+     * @return the local identification.
+     */
+    public int getLocalId() {
+        return (int) origin;
+    }
+
+    /**
+     * Returns the identification of the constellation that created this activity, packed into a single long, with the node
+     * identification in the upper 32 bits and the local identification in the lower 32 bits. Together with
+     * {@link #getSequenceNumber()}, it uniquely identifies the activity.
+     *
+     * @return the packed origin.
+     */
+    public long getPackedOrigin() {
+        return origin;
+    }
+
+    /**
+     * Returns the sequence number of this activity on the constellation that created it.
+     *
+     * @return the sequence number.
+     */
+    public long getSequenceNumber() {
+        return sequence & ~EVENTS_FLAG;
+    }
+
+    /**
+     * Writes this identifier to the specified output, in exactly {@link #ENCODED_SIZE} bytes.
+     *
+     * @param out
+     *            the output to write to
+     * @throws IOException
+     *             is thrown when writing fails.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(origin);
+        out.writeLong(sequence);
+    }
+
+    /**
+     * Reads an identifier written by {@link #writeTo(DataOutput)} from the specified input.
+     *
+     * @param in
+     *            the input to read from
+     * @return the identifier.
+     * @throws IOException
+     *             is thrown when reading fails.
+     */
+    public static ActivityIdentifierImpl readFrom(DataInput in) throws IOException {
+        long origin = in.readLong();
+        long sequence = in.readLong();
+        return new ActivityIdentifierImpl(origin, sequence);
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        writeTo(out);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        origin = in.readLong();
+        sequence = in.readLong();
     }
 
     @Override
     public int hashCode() {
-        final int PRIME = 31;
-        int result = CID.hashCode();
-        result = PRIME * result + (int) (AID ^ (AID >>> 32));
-        return result;
+        long h = origin * 31 + getSequenceNumber();
+        return (int) (h ^ (h >>> 32));
     }
 
     @Override
@@ -104,15 +228,13 @@ public final class ActivityIdentifierImpl implements ActivityIdentifier, Seriali
 
         final ActivityIdentifierImpl other = (ActivityIdentifierImpl) obj;
 
-        return (CID.equals(other.CID) && AID == other.AID);
+        // The flag is the same for every copy of an identifier, so it is not compared.
+        return origin == other.origin && ((sequence ^ other.sequence) & ~EVENTS_FLAG) == 0;
     }
 
     @Override
     public String toString() {
-        if (CID == null) {
-            return "AID:-1";
-        }
-        return "AID:" + Integer.toHexString(CID.getNodeId()) + ":" + Integer.toHexString(CID.getLocalId()) + ":"
-                + Long.toHexString(AID);
+        return "AID:" + Integer.toHexString(getNodeId()) + ":" + Integer.toHexString(getLocalId()) + ":"
+                + Long.toHexString(getSequenceNumber());
     }
 }
@@ -18,6 +18,7 @@ package ibis.constellation.impl;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -28,6 +29,7 @@ import ibis.constellation.Activity;
 import ibis.constellation.Constellation;
 import ibis.constellation.Event;
 import ibis.constellation.impl.util.CircularBuffer;
+import ibis.constellation.impl.util.SortedRangeList;
 import ibis.constellation.util.ByteBuffers;
 
 public class ActivityRecord implements Serializable, ByteBuffers {
@@ -42,6 +44,9 @@ public class ActivityRecord implements Serializable, ByteBuffers {
     private static final int DONE = 5;
     private static final int ERROR = Integer.MAX_VALUE;
 
+    /** The default initial capacity of the event queue. */
+    public static final int DEFAULT_EVENT_QUEUE_CAPACITY = 4;
+
     private final Activity activity;
     private final ActivityIdentifierImpl identifier;
 
@@ -49,50 +54,53 @@ public class ActivityRecord implements Serializable, ByteBuffers {
 
     private final boolean mayBeStolen;
 
-    private final CircularBuffer<EventWrapper> queue;
+    private final int priority;
+
+    private final CircularBuffer<Event> queue;
     private int state = INITIALIZING;
 
     private boolean stolen = false;
     private boolean relocated = false;
     private boolean remote = false;
+    private boolean cancelled = false;
 
-    private static class EventWrapper implements ByteBuffers, Serializable {
+    // The activity that submitted this one, if any, so cancelling it can cascade to this one.
+    private ActivityIdentifierImpl parent;
 
-        private static final long serialVersionUID = 1051677223714686496L;
+    // The number of times this activity has left a constellation, used to order location updates.
+    private int moves = 0;
 
-        public final Event event;
+    // The constellations that remember where this activity went when it left them, so they can be told when it is done. Only
+    // kept for activities that expect events, as no-one needs to find the others.
+    private ConstellationIdentifierImpl[] hops;
+    private int hopCount;
 
-        public EventWrapper(Event event) {
-            this.event = event;
-        }
+    // The initial capacity of the event queue, which it shrinks back to when it is no longer needed.
+    private final int initialCapacity;
 
-        @Override
-        public void pushByteBuffers(List<ByteBuffer> list) {
-            Object tmp = event.getData();
+    // The largest number of events queued since the activity was last idle.
+    private int peakEvents;
 
-            if (tmp != null && tmp instanceof ByteBuffers) {
-                ((ByteBuffers) tmp).pushByteBuffers(list);
-            }
-        }
+    // Nodes of the work queue lists this record is linked into, one per context of an OrContext. Only used for OrContexts.
+    private transient SortedRangeList.Node[] queueNodes;
 
-        @Override
-        public void popByteBuffers(List<ByteBuffer> list) {
-            Object tmp = event.getData();
+    // The units of work completed by the last run, see Quiescence.
+    private transient int completedWork;
 
-            if (tmp != null && tmp instanceof ByteBuffers) {
-                ((ByteBuffers) tmp).popByteBuffers(list);
-            }
-        }
+    ActivityRecord(Activity activity, ActivityIdentifierImpl id) {
+        this(activity, id, DEFAULT_EVENT_QUEUE_CAPACITY);
     }
 
-    ActivityRecord(Activity activity, ActivityIdentifierImpl id) {
+    ActivityRecord(Activity activity, ActivityIdentifierImpl id, int eventQueueCapacity) {
         this.activity = activity;
         this.identifier = id;
         this.context = activity.getContext();
         this.mayBeStolen = activity.mayBeStolen();
+        this.priority = activity.getPriority();
+        this.initialCapacity = Math.max(1, eventQueueCapacity);
 
         if (activity.expectsEvents()) {
-            queue = new CircularBuffer<EventWrapper>(4);
+            queue = new CircularBuffer<Event>(initialCapacity);
         } else {
             queue = null;
         }
@@ -113,7 +121,11 @@ public class ActivityRecord implements Serializable, ByteBuffers {
                     "Cannot deliver an event to a finished activity! " + activity + " (event from " + e.getSource() + ")");
         }
 
-        queue.insertLast(new EventWrapper(e));
+        queue.insertLast(e);
+
+        if (queue.size() > peakEvents) {
+            peakEvents = queue.size();
+        }
     }
 
     public Event dequeue() {
@@ -122,11 +134,19 @@ public class ActivityRecord implements Serializable, ByteBuffers {
             throw new IllegalStateException("Activity does not expect events");
         }
 
-        if (queue.size() == 0) {
-            return null;
+        return queue.removeFirst();
+    }
+
+    // Called when the activity suspends without pending events. If the queue has used at most a quarter of its capacity since
+    // the last time, we halve it, so a burst of events does not pin a large queue forever, while a steady stream of events does
+    // not cause it to be resized over and over.
+    private void shrinkQueue() {
+
+        if (queue != null && queue.capacity() > initialCapacity && 4 * peakEvents <= queue.capacity()) {
+            queue.setCapacity(Math.max(initialCapacity, queue.capacity() / 2));
         }
 
-        return queue.removeFirst().event;
+        peakEvents = 0;
     }
 
     public int pendingEvents() {
@@ -138,6 +158,25 @@ public class ActivityRecord implements Serializable, ByteBuffers {
         return queue.size();
     }
 
+    private int queuedEvents() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Returns the number of units of work that the last run of this activity completed, and resets it. See {@link Quiescence}.
+     *
+     * @return the number of completed units of work.
+     */
+    int takeCompletedWork() {
+        int result = completedWork;
+        completedWork = 0;
+        return result;
+    }
+
+    int eventQueueCapacity() {
+        return queue == null ? 0 : queue.capacity();
+    }
+
     public ActivityIdentifierImpl identifier() {
         return identifier;
     }
@@ -174,6 +213,66 @@ public class ActivityRecord implements Serializable, ByteBuffers {
         return relocated;
     }
 
+    /**
+     * Returns the number of times this activity has been relocated or stolen.
+     *
+     * @return the number of moves.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Registers that this activity is about to leave the specified constellation.
+     *
+     * @param from
+     *            the constellation the activity leaves
+     * @return the new number of moves.
+     */
+    public int addMove(ConstellationIdentifierImpl from) {
+
+        if (identifier.expectsEvents() && !hasHop(from)) {
+            if (hops == null) {
+                hops = new ConstellationIdentifierImpl[2];
+            } else if (hopCount == hops.length) {
+                hops = Arrays.copyOf(hops, 2 * hopCount);
+            }
+            hops[hopCount++] = from;
+        }
+
+        return ++moves;
+    }
+
+    private boolean hasHop(ConstellationIdentifierImpl cid) {
+        for (int i = 0; i < hopCount; i++) {
+            if (hops[i].equals(cid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the constellations that this activity has left, and that may still remember where it went.
+     *
+     * @return the constellations, or <code>null</code> if there are none.
+     */
+    public ConstellationIdentifierImpl[] getHops() {
+        return hopCount == 0 ? null : Arrays.copyOf(hops, hopCount);
+    }
+
+    public SortedRangeList.Node[] getQueueNodes() {
+        return queueNodes;
+    }
+
+    public void setQueueNodes(SortedRangeList.Node[] nodes) {
+        queueNodes = nodes;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
     public boolean isRestrictedToLocal() {
         return !mayBeStolen;
     }
@@ -186,6 +285,57 @@ public class ActivityRecord implements Serializable, ByteBuffers {
         return (state == ERROR);
     }
 
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns whether this activity has run. Only activities that have run can have submitted other activities.
+     *
+     * @return whether this activity has started.
+     */
+    public boolean hasStarted() {
+        return state != INITIALIZING;
+    }
+
+    /**
+     * Cancels this activity, so it will not run (again). Its pending events are dropped.
+     *
+     * @return the number of units of work this activity held, see {@link Quiescence}, or -1 if it was already done.
+     */
+    int cancel() {
+
+        if (isDone()) {
+            return -1;
+        }
+
+        // A suspended activity holds no work, a runnable one holds its events, and an activity that still has to be initialized or
+        // cleaned up holds a unit of its own.
+        int units = queuedEvents();
+
+        if (state == INITIALIZING || state == FINISHING) {
+            units++;
+        }
+
+        if (queue != null) {
+            while (queue.size() > 0) {
+                queue.removeFirst();
+            }
+        }
+
+        state = DONE;
+        cancelled = true;
+        return units;
+    }
+
+    public ActivityIdentifierImpl getParent() {
+        return parent;
+    }
+
+    void setParent(ActivityIdentifierImpl parent) {
+        this.parent = parent;
+    }
+
     public boolean isFresh() {
         return (state == INITIALIZING);
     }
@@ -225,9 +375,12 @@ public class ActivityRecord implements Serializable, ByteBuffers {
                         state = RUNNABLE;
                     } else {
                         state = SUSPENDED;
+                        shrinkQueue();
                     }
+                    completedWork = 1;
                 } else if (nextState == Activity.FINISH) {
                     // TODO: handle pending event here ?? Exception or warning ?
+                    // The activity keeps its unit of work until its cleanup is done.
                     state = FINISHING;
                 } else {
                     throw new IllegalStateException("Activity did not suspend or finish!");
@@ -250,9 +403,12 @@ public class ActivityRecord implements Serializable, ByteBuffers {
                         state = RUNNABLE;
                     } else {
                         state = SUSPENDED;
+                        shrinkQueue();
                     }
+                    completedWork = 1;
                 } else if (nextState == Activity.FINISH) {
                     // TODO: handle pending event here ?? Exception or warning ?
+                    // The unit of work of the event is kept until the cleanup is done.
                     state = FINISHING;
                 } else {
                     throw new IllegalStateException("Activity did not suspend or finish!");
@@ -263,6 +419,8 @@ public class ActivityRecord implements Serializable, ByteBuffers {
             case FINISHING:
                 activity.cleanup(c);
                 state = DONE;
+                // Events that arrived after the activity finished are dropped.
+                completedWork = 1 + queuedEvents();
                 break;
 
             case DONE:
@@ -278,6 +436,7 @@ public class ActivityRecord implements Serializable, ByteBuffers {
         } catch (Throwable e) {
             logger.error("Activity failed: ", e);
             state = ERROR;
+            completedWork = 1 + queuedEvents();
         }
 
     }
@@ -316,10 +475,17 @@ public class ActivityRecord implements Serializable, ByteBuffers {
         return context;
     }
 
+    // The events are queued as is, so we only look for byte buffers in their data when the record is sent.
     @Override
     public void pushByteBuffers(List<ByteBuffer> list) {
         if (queue != null) {
-            queue.pushByteBuffers(list);
+            for (int i = 0; i < queue.size(); i++) {
+                Object data = queue.get(i).getData();
+
+                if (data instanceof ByteBuffers) {
+                    ((ByteBuffers) data).pushByteBuffers(list);
+                }
+            }
         }
         if (activity != null && activity instanceof ByteBuffers) {
             ((ByteBuffers) activity).pushByteBuffers(list);
@@ -329,7 +495,13 @@ public class ActivityRecord implements Serializable, ByteBuffers {
     @Override
     public void popByteBuffers(List<ByteBuffer> list) {
         if (queue != null) {
-            queue.popByteBuffers(list);
+            for (int i = 0; i < queue.size(); i++) {
+                Object data = queue.get(i).getData();
+
+                if (data instanceof ByteBuffers) {
+                    ((ByteBuffers) data).popByteBuffers(list);
+                }
+            }
         }
         if (activity != null && activity instanceof ByteBuffers) {
             ((ByteBuffers) activity).popByteBuffers(list);
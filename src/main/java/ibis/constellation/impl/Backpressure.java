@@ -0,0 +1,346 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.io.PrintStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.SubmitRejectedException;
+
+/**
+ * A <code>Backpressure</code> object keeps track of the number of outstanding activities of a node, that is, activities that
+ * are submitted or stolen by this node but have not finished or left it yet. It is shared by all executors of the node.
+ *
+ * When the limit is reached, a submission blocks, fails, or is refused, depending on the mode. Executor threads need more care
+ * when blocking, as they may well be the ones that have to run the outstanding activities. Therefore, the last executor thread of
+ * the node that is not blocked yet is admitted anyway, overdrawing the budget. Likewise, a blocked executor thread is admitted if
+ * no activity finished during {@link #PROGRESS_TIMEOUT} milliseconds. While it is blocked, an executor thread keeps answering the
+ * steal requests of its peers, see {@link #acquire(boolean, Runnable)}, as they may need its queued work to make room.
+ */
+public class Backpressure {
+
+    private static final Logger logger = LoggerFactory.getLogger(Backpressure.class);
+
+    public static final int BLOCK = 0;
+    public static final int FAIL = 1;
+    public static final int RETRY = 2;
+
+    public static final long PROGRESS_TIMEOUT = 100;
+
+    // How often a blocked executor thread does the work it was given while it waits, in milliseconds.
+    public static final long SERVICE_INTERVAL = 1;
+
+    private final int limit;
+
+    private final int mode;
+
+    private final int executors;
+
+    private int blockedExecutors;
+
+    private int outstanding;
+
+    private int peak;
+
+    private int waiting;
+
+    private long released;
+
+    private long blocked;
+
+    private long rejected;
+
+    private long overdrawn;
+
+    public Backpressure(ConstellationProperties p, int executors) {
+        this(p.BACKPRESSURE_LIMIT, parseMode(p.BACKPRESSURE_MODE), executors);
+    }
+
+    public Backpressure(int limit, int mode, int executors) {
+        this.limit = limit;
+        this.mode = mode;
+        this.executors = executors;
+    }
+
+    private static int parseMode(String name) {
+        if (name.equalsIgnoreCase("block")) {
+            return BLOCK;
+        } else if (name.equalsIgnoreCase("fail")) {
+            return FAIL;
+        } else if (name.equalsIgnoreCase("retry")) {
+            return RETRY;
+        }
+        logger.error("Unknown backpressure mode: " + name);
+        throw new IllegalArgumentException("Unknown backpressure mode: " + name);
+    }
+
+    public boolean isEnabled() {
+        return limit > 0;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Acquires room for a new activity.
+     *
+     * @param executorThread
+     *            whether the caller is an executor thread of this node
+     * @return <code>false</code> if the activity should not be submitted, <code>true</code> otherwise.
+     * @throws SubmitRejectedException
+     *             if the limit is reached and the mode is {@link #FAIL}.
+     */
+    public boolean acquire(boolean executorThread) throws SubmitRejectedException {
+        return acquire(executorThread, null);
+    }
+
+    /**
+     * Acquires room for a new activity. If an executor thread has to wait, it runs <code>whileBlocked</code> every
+     * {@link #SERVICE_INTERVAL} milliseconds, without holding our lock, so it can keep doing the work its peers depend on.
+     *
+     * @param executorThread
+     *            whether the caller is an executor thread of this node
+     * @param whileBlocked
+     *            the work an executor thread does while it waits, or <code>null</code>
+     * @return <code>false</code> if the activity should not be submitted, <code>true</code> otherwise.
+     * @throws SubmitRejectedException
+     *             if the limit is reached and the mode is {@link #FAIL}.
+     */
+    public boolean acquire(boolean executorThread, Runnable whileBlocked) throws SubmitRejectedException {
+
+        if (limit <= 0) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (outstanding >= limit) {
+                if (mode == FAIL) {
+                    rejected++;
+                    throw new SubmitRejectedException("Limit of " + limit + " outstanding activities reached");
+                }
+
+                if (mode == RETRY) {
+                    rejected++;
+                    return false;
+                }
+
+                if (!executorThread || whileBlocked == null) {
+                    waitForRoom(executorThread);
+                    add();
+                    return true;
+                }
+            } else {
+                add();
+                return true;
+            }
+        }
+
+        waitForRoom(whileBlocked);
+        return true;
+    }
+
+    // Waits for room like waitForRoom(true), but runs the specified work in between. The work may need the locks of others, who
+    // may need ours while holding theirs, so we do not hold our lock while running it.
+    private void waitForRoom(Runnable whileBlocked) {
+
+        long seen;
+
+        synchronized (this) {
+            if (blockedExecutors + 1 >= executors) {
+                // Someone has to keep running the activities of this node.
+                overdrawn++;
+                add();
+                return;
+            }
+
+            blockedExecutors++;
+            blocked++;
+            waiting++;
+            seen = released;
+        }
+
+        long deadline = System.currentTimeMillis() + PROGRESS_TIMEOUT;
+
+        try {
+            for (;;) {
+                whileBlocked.run();
+
+                synchronized (this) {
+                    if (outstanding < limit) {
+                        add();
+                        return;
+                    }
+
+                    long now = System.currentTimeMillis();
+
+                    if (released != seen) {
+                        seen = released;
+                        deadline = now + PROGRESS_TIMEOUT;
+                    } else if (now >= deadline) {
+                        // No progress, so we may be holding up the node ourselves.
+                        overdrawn++;
+                        add();
+                        return;
+                    }
+
+                    try {
+                        wait(SERVICE_INTERVAL);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                waiting--;
+                blockedExecutors--;
+            }
+        }
+    }
+
+    private void waitForRoom(boolean executorThread) {
+
+        if (executorThread) {
+            if (blockedExecutors + 1 >= executors) {
+                // Someone has to keep running the activities of this node.
+                overdrawn++;
+                return;
+            }
+            blockedExecutors++;
+        }
+
+        blocked++;
+
+        long seen = released;
+
+        waiting++;
+
+        while (outstanding >= limit) {
+            try {
+                wait(executorThread ? PROGRESS_TIMEOUT : 0);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+
+            if (executorThread && outstanding >= limit) {
+                if (released == seen) {
+                    // No progress, so we may be holding up the node ourselves.
+                    overdrawn++;
+                    break;
+                }
+                seen = released;
+            }
+        }
+
+        waiting--;
+
+        if (executorThread) {
+            blockedExecutors--;
+        }
+    }
+
+    private void add() {
+        outstanding++;
+
+        if (outstanding > peak) {
+            peak = outstanding;
+        }
+    }
+
+    /**
+     * Registers activities that arrive from another node. This never blocks, as the activities are already on their way.
+     *
+     * @param count
+     *            the number of arriving activities
+     */
+    public void arrived(int count) {
+
+        if (limit <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                add();
+            }
+        }
+    }
+
+    /**
+     * Releases the room of activities that finished or left this node.
+     *
+     * @param count
+     *            the number of activities
+     */
+    public void release(int count) {
+
+        if (limit <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            outstanding -= count;
+            released += count;
+
+            if (waiting > 0) {
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized boolean isExhausted() {
+        return limit > 0 && outstanding >= limit;
+    }
+
+    public synchronized int getOutstanding() {
+        return outstanding;
+    }
+
+    public synchronized int getPeak() {
+        return peak;
+    }
+
+    public synchronized long getBlocked() {
+        return blocked;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getOverdrawn() {
+        return overdrawn;
+    }
+
+    public synchronized void printStatistics(PrintStream out) {
+        out.println(" Backpressure (node)");
+        out.println("   limit           : " + limit);
+        out.println("   outstanding     : " + outstanding);
+        out.println("   peak            : " + peak);
+        out.println("   blocked         : " + blocked);
+        out.println("   rejected        : " + rejected);
+        out.println("   overdrawn       : " + overdrawn);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.Arrays;
+
+/**
+ * A <code>CancelRequest</code> asks to cancel a number of activities, and, if it cascades, the activities they submitted. A
+ * request with a target follows the activities like an event would. A request without a target is sent to every constellation.
+ */
+public class CancelRequest extends AbstractMessage {
+
+    private static final long serialVersionUID = -6049165253908148624L;
+
+    public final ActivityIdentifierImpl[] activities;
+
+    public final boolean cascade;
+
+    public CancelRequest(final ConstellationIdentifierImpl source, final ConstellationIdentifierImpl target,
+            final ActivityIdentifierImpl[] activities, final boolean cascade) {
+
+        super(source, target);
+
+        if (activities == null || activities.length == 0) {
+            throw new IllegalArgumentException("CancelRequest must contain at least one activity");
+        }
+
+        this.activities = activities;
+        this.cascade = cascade;
+    }
+
+    /**
+     * Returns whether this request is sent to every constellation, rather than to a single one.
+     *
+     * @return whether this request is a broadcast.
+     */
+    public boolean isBroadcast() {
+        return target == null;
+    }
+
+    @Override
+    public String toString() {
+        return "CancelRequest: " + Arrays.toString(activities) + (cascade ? " (cascade)" : "");
+    }
+}
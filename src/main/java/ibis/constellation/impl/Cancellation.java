@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.impl.util.ConcurrentActivityIdentifierMap;
+
+/**
+ * A <code>Cancellation</code> remembers which activities have been cancelled on a node, so they can still be cancelled when they
+ * turn up later, for instance because they were in a steal reply, or because they were submitted by a cancelled activity. It is
+ * shared by all executors of the node.
+ *
+ * Only the targets of cancel requests and the cancelled activities that had started, and hence may have submitted others, are
+ * remembered. A cancel request reaches the activities that are queued or suspended anywhere, so an entry is only needed for the
+ * activities that are on their way somewhere. Therefore, like the forwarding entries that are dropped on a tombstone, entries
+ * are forgotten after a while: at least {@link #EXPIRY} milliseconds after they were added, and at most twice that.
+ */
+public class Cancellation {
+
+    // How long a cancelled activity is remembered at least, in milliseconds.
+    public static final long EXPIRY = 30000;
+
+    // The cancelled activities, mapped to whether the activities they submitted must be cancelled as well. New entries go into
+    // current, which replaces previous every EXPIRY milliseconds.
+    private volatile ConcurrentActivityIdentifierMap<Boolean> current = new ConcurrentActivityIdentifierMap<Boolean>();
+    private volatile ConcurrentActivityIdentifierMap<Boolean> previous = new ConcurrentActivityIdentifierMap<Boolean>();
+
+    private long rotated = System.currentTimeMillis();
+
+    private volatile boolean active;
+
+    public synchronized void add(ActivityIdentifierImpl id, boolean cascade) {
+
+        expire(System.currentTimeMillis());
+
+        if (cascade) {
+            current.put(id, Boolean.TRUE);
+        } else if (get(id) == null) {
+            current.put(id, Boolean.FALSE);
+        }
+
+        active = true;
+    }
+
+    public synchronized void add(CancelRequest r) {
+        for (ActivityIdentifierImpl id : r.activities) {
+            add(id, r.cascade);
+        }
+    }
+
+    /**
+     * Forgets the activities that have been remembered long enough.
+     */
+    public void expire() {
+        if (active) {
+            expire(System.currentTimeMillis());
+        }
+    }
+
+    synchronized void expire(long now) {
+
+        if (now - rotated < EXPIRY) {
+            return;
+        }
+
+        previous = current;
+        current = new ConcurrentActivityIdentifierMap<Boolean>();
+        rotated = now;
+
+        if (previous.size() == 0) {
+            active = false;
+        }
+    }
+
+    // Returns null if the activity is not remembered, or whether it cascades.
+    private Boolean get(ActivityIdentifierImpl id) {
+
+        Boolean result = current.get(id);
+
+        if (result == null || !result.booleanValue()) {
+            Boolean old = previous.get(id);
+
+            if (old != null) {
+                return old;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns whether any activity has been cancelled on this node, so others can skip the checks below.
+     *
+     * @return whether an activity has been cancelled.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isCancelled(ActivityIdentifierImpl id) {
+        return active && get(id) != null;
+    }
+
+    /**
+     * Returns whether the activities submitted by the specified activity must be cancelled.
+     *
+     * @param id
+     *            the activity, which may be <code>null</code>
+     * @return whether cancelling the activity cascades.
+     */
+    public boolean cascades(ActivityIdentifierImpl id) {
+        return id != null && active && Boolean.TRUE.equals(get(id));
+    }
+
+    /**
+     * Returns whether the specified activity must be cancelled, because it was cancelled itself, or its parent was cancelled with
+     * cascade.
+     *
+     * @param ar
+     *            the activity
+     * @return <code>null</code> if the activity must not be cancelled, or whether cancelling it must cascade.
+     */
+    public Boolean mustCancel(ActivityRecord ar) {
+
+        Boolean result = get(ar.identifier());
+
+        if (result != null) {
+            return result;
+        }
+
+        return cascades(ar.getParent()) ? Boolean.TRUE : null;
+    }
+}
@@ -47,7 +47,7 @@ public class ContextMatch {
         
         // In all other cases there is overlap in the range, so check if the name matches. 
         
-        boolean match = a.getName().equals(b.getName());
+        boolean match = a.getNameId() == b.getNameId();
         
    //     System.err.println((match ? "YES" : "NO") + " Match RangeContext " + a.getName() + " " + a.getRangeStart() + "-" + a.getRangeEnd() + " RankContext " + b.getName() + " " + b.getRangeStart() + "-" + b.getRangeEnd());
         
@@ -56,8 +56,8 @@ public class ContextMatch {
     
     public static boolean doMatch(OrContext a, Context b) {
         
-        for (Context c : a) {
-            if (doMatch(c, b)) { 
+        for (int i = 0; i < a.size(); i++) {
+            if (doMatch(a.get(i), b)) { 
                 return true;
             }
         }
@@ -67,11 +67,9 @@ public class ContextMatch {
     
     public static boolean doMatch(OrContext a, OrContext b) {
             
-        for (Context c1 : a) {
-            for (Context c2 : b) {
-                if (doMatch(c1, c2)) { 
-                    return true;
-                }
+        for (int i = 0; i < a.size(); i++) {
+            if (doMatch(b, a.get(i))) { 
+                return true;
             }
         }
         
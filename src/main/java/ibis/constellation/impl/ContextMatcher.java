@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+
+/**
+ * A <code>ContextMatcher</code> is a precompiled form of the context of an executor. It contains a bitset of the context name
+ * identifiers (see {@link Context#getNameId()}) and a table with the range for each of them. It gives the same results as
+ * {@link ContextMatch#match(AbstractContext, AbstractContext)}, but only needs a few integer comparisons per context.
+ */
+public class ContextMatcher {
+
+    private final AbstractContext context;
+
+    // Bitset of the name identifiers.
+    private final long[] names;
+
+    // Range table, one entry for each Context.
+    private final int[] ids;
+    private final long[] starts;
+    private final long[] ends;
+
+    // True if all ranges are unbounded, so only the names need to be checked.
+    private final boolean unbounded;
+
+    public ContextMatcher(AbstractContext context) {
+
+        if (context == null) {
+            throw new IllegalArgumentException("Context may not be null");
+        }
+
+        this.context = context;
+
+        Context[] tmp;
+
+        if (context instanceof Context) {
+            tmp = new Context[] { (Context) context };
+        } else {
+            OrContext o = (OrContext) context;
+            tmp = new Context[o.size()];
+
+            for (int i = 0; i < tmp.length; i++) {
+                tmp[i] = o.get(i);
+            }
+        }
+
+        ids = new int[tmp.length];
+        starts = new long[tmp.length];
+        ends = new long[tmp.length];
+
+        int max = 0;
+        boolean all = true;
+
+        for (int i = 0; i < tmp.length; i++) {
+            ids[i] = tmp[i].getNameId();
+            starts[i] = tmp[i].getRangeStart();
+            ends[i] = tmp[i].getRangeEnd();
+
+            max = Math.max(max, ids[i]);
+            all &= starts[i] == Long.MIN_VALUE && ends[i] == Long.MAX_VALUE;
+        }
+
+        names = new long[(max >>> 6) + 1];
+
+        for (int id : ids) {
+            names[id >>> 6] |= 1L << id;
+        }
+
+        unbounded = all;
+    }
+
+    /**
+     * Returns the context this matcher was compiled from.
+     *
+     * @return the context.
+     */
+    public AbstractContext getContext() {
+        return context;
+    }
+
+    public boolean match(Context c) {
+
+        int id = c.getNameId();
+
+        if (ids.length == 1) {
+            // Common case, no need for the bitset.
+            return id == ids[0] && starts[0] <= c.getRangeEnd() && c.getRangeStart() <= ends[0];
+        }
+
+        int word = id >>> 6;
+
+        if (word >= names.length || (names[word] & (1L << id)) == 0) {
+            return false;
+        }
+
+        if (unbounded) {
+            return true;
+        }
+
+        long start = c.getRangeStart();
+        long end = c.getRangeEnd();
+
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id && starts[i] <= end && start <= ends[i]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean match(AbstractContext c) {
+
+        if (c == null) {
+            return false;
+        }
+
+        if (c instanceof Context) {
+            return match((Context) c);
+        }
+
+        OrContext o = (OrContext) c;
+
+        for (int i = 0; i < o.size(); i++) {
+            if (match(o.get(i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
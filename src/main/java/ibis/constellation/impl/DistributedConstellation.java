@@ -19,6 +19,7 @@ package ibis.constellation.impl;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -354,6 +355,11 @@ public class DistributedConstellation {
             return subConstellation.performSubmit(activity);
         }
 
+        @Override
+        public ActivityIdentifier[] submit(Activity[] activities) throws NoSuitableExecutorException {
+            return subConstellation.performSubmit(activities);
+        }
+
         @Override
         public void send(Event e) {
             if (!((ActivityIdentifierImpl) e.getTarget()).expectsEvents()) {
@@ -364,11 +370,37 @@ public class DistributedConstellation {
             // 'e.getTarget()'.
             subConstellation.performSend(e);
         }
-        //
-        // @Override
-        // public void cancel(ActivityIdentifierImpl aid) {
-        // // ignored!
-        // }
+
+        @Override
+        public void send(Event[] events) {
+            for (Event e : events) {
+                if (!((ActivityIdentifierImpl) e.getTarget()).expectsEvents()) {
+                    throw new IllegalArgumentException("Target activity " + e.getTarget() + "  does not expect an event!");
+                }
+            }
+
+            subConstellation.performSend(events);
+        }
+
+        @Override
+        public void offload(ActivityIdentifier target, Callable<?> task) {
+            if (!((ActivityIdentifierImpl) target).expectsEvents()) {
+                throw new IllegalArgumentException("Target activity " + target + "  does not expect an event!");
+            }
+
+            subConstellation.getOffloadPool().submit(subConstellation, (ActivityIdentifierImpl) target, task);
+        }
+
+        @Override
+        public void awaitQuiescence() throws InterruptedException {
+            Quiescence.checkCaller();
+            pool.awaitQuiescence();
+        }
+
+        @Override
+        public void cancel(ActivityIdentifier activity, boolean cascade) {
+            subConstellation.performCancel((ActivityIdentifierImpl) activity, cascade);
+        }
 
         @Override
         public boolean activate() {
@@ -626,6 +658,48 @@ public class DistributedConstellation {
         subConstellation.deliverEventMessage(re);
     }
 
+    /**
+     * Deals with a batch of events delivered by the network (i.e. another node).
+     *
+     * The events are dealt with by passing them on to the sub-constellation below.
+     *
+     * @param b
+     *            the event batch.
+     */
+    public void deliverRemoteEvents(EventBatch b) {
+        subConstellation.deliverEventMessages(b.messages);
+    }
+
+    /**
+     * Deals with a location update delivered by the network, by passing it on to the sub-constellation below.
+     *
+     * @param u
+     *            the location update.
+     */
+    public void deliverRemoteLocationUpdate(LocationUpdate u) {
+        subConstellation.deliverLocationUpdate(u);
+    }
+
+    /**
+     * Deals with tombstones delivered by the network, by passing them on to the sub-constellation below.
+     *
+     * @param t
+     *            the tombstones.
+     */
+    public void deliverRemoteTombstones(Tombstones t) {
+        subConstellation.deliverTombstones(t);
+    }
+
+    /**
+     * Deals with a cancel request delivered by the network, by passing it on to the sub-constellation below.
+     *
+     * @param r
+     *            the cancel request.
+     */
+    public void deliverRemoteCancel(CancelRequest r) {
+        subConstellation.deliverCancel(r);
+    }
+
     private boolean dropSteal(StealRequest sr) {
         if (stealStrategy == STEAL_NONE) {
             // drop steal request
@@ -744,6 +818,66 @@ public class DistributedConstellation {
         return false;
     }
 
+    /**
+     * Sends a number of event messages to remote constellations. The messages are grouped on the node they target, and each group
+     * is sent as a single message. If a group cannot be sent, its messages are handed to the delivery thread one by one, which
+     * retries them later.
+     *
+     * @param messages
+     *            the event messages
+     * @param count
+     *            the number of messages in the array
+     */
+    public void handleApplicationMessages(EventMessage[] messages, int count) {
+
+        if (count == 1) {
+            handleApplicationMessage(messages[0], true);
+            return;
+        }
+
+        boolean[] sent = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+
+            if (sent[i]) {
+                continue;
+            }
+
+            int node = messages[i].target.getNodeId();
+            int size = 0;
+
+            for (int j = i; j < count; j++) {
+                if (!sent[j] && messages[j].target.getNodeId() == node) {
+                    size++;
+                }
+            }
+
+            EventMessage[] group = new EventMessage[size];
+            size = 0;
+
+            for (int j = i; j < count; j++) {
+                if (!sent[j] && messages[j].target.getNodeId() == node) {
+                    group[size++] = messages[j];
+                    sent[j] = true;
+                }
+            }
+
+            assert (!cidFactory.isLocal(messages[i].target));
+
+            if (group.length == 1 ? pool.forward(group[0]) : pool.forward(new EventBatch(group))) {
+                continue;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to forward " + group.length + " messages to remote node " + node + " (will retry!)");
+            }
+
+            for (EventMessage m : group) {
+                delivery.enqueue(m);
+            }
+        }
+    }
+
     /**
      * Receives a steal reply from below, and forwards it to the pool.
      *
@@ -777,6 +911,58 @@ public class DistributedConstellation {
         return true;
     }
 
+    /**
+     * Sends a location update from below to the node of its target. The update is dropped if it cannot be sent, as events still
+     * reach the activity without it.
+     *
+     * @param u
+     *            the location update
+     */
+    public void handleLocationUpdate(LocationUpdate u) {
+        if (!pool.forward(u) && logger.isDebugEnabled()) {
+            logger.debug("Failed to deliver " + u + " (dropped)");
+        }
+    }
+
+    /**
+     * Sends tombstones from below to the node of their target. If they cannot be sent, the target keeps a few forwarding entries
+     * it does not need, which is harmless.
+     *
+     * @param t
+     *            the tombstones
+     */
+    public void handleTombstones(Tombstones t) {
+        if (!pool.forward(t) && logger.isDebugEnabled()) {
+            logger.debug("Failed to deliver " + t + " (dropped)");
+        }
+    }
+
+    /**
+     * Sends a cancel request from below to the node of its target. Unlike the updates above, a cancel request that cannot be sent
+     * leaves activities running that should not, so the caller is told.
+     *
+     * @param r
+     *            the cancel request
+     * @return whether the cancel request was sent.
+     */
+    public boolean handleCancel(CancelRequest r) {
+        if (!pool.forward(r)) {
+            logger.warn("Failed to deliver " + r + " (dropped)");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sends a cancel request from below to all other nodes.
+     *
+     * @param r
+     *            the cancel request
+     */
+    public void broadcastCancel(CancelRequest r) {
+        pool.broadcast(r);
+    }
+
     /**
      * Provides a constellation identifier factory to produce identifiers for sub-constellation instances (both multithreaded and
      * singlethreaded).
@@ -850,4 +1036,8 @@ public class DistributedConstellation {
         return profiling;
     }
 
+    public Quiescence getQuiescence() {
+        return subConstellation.getQuiescence();
+    }
+
 }
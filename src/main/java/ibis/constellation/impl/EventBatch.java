@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import ibis.constellation.util.ByteBuffers;
+
+/**
+ * A number of event messages that are sent to the same node in one go. The messages may target different constellations on
+ * that node.
+ */
+public class EventBatch implements Serializable, ByteBuffers {
+
+    private static final long serialVersionUID = 4937281466102316584L;
+
+    public final EventMessage[] messages;
+
+    public EventBatch(final EventMessage[] messages) {
+
+        if (messages == null || messages.length == 0) {
+            throw new IllegalArgumentException("EventBatch must contain at least one message");
+        }
+
+        this.messages = messages;
+    }
+
+    public int size() {
+        return messages.length;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatch: " + messages.length + " messages";
+    }
+
+    @Override
+    public void pushByteBuffers(List<ByteBuffer> list) {
+        for (EventMessage m : messages) {
+            m.pushByteBuffers(list);
+        }
+    }
+
+    @Override
+    public void popByteBuffers(List<ByteBuffer> list) {
+        for (EventMessage m : messages) {
+            m.popByteBuffers(list);
+        }
+    }
+}
@@ -16,7 +16,9 @@
  */
 package ibis.constellation.impl;
 
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,7 +35,10 @@ import ibis.constellation.Event;
 import ibis.constellation.NoSuitableExecutorException;
 import ibis.constellation.StealPool;
 import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.util.ActivityIdentifierMap;
+import ibis.constellation.impl.util.ChaseLevWorkQueue;
 import ibis.constellation.impl.util.CircularBuffer;
+import ibis.constellation.impl.util.PriorityWorkQueue;
 import ibis.constellation.impl.util.SimpleWorkQueue;
 import ibis.constellation.impl.util.WorkQueue;
 
@@ -46,11 +51,27 @@ public class ExecutorWrapper implements Constellation {
 
     private final int QUEUED_JOB_LIMIT;
 
+    private final boolean STEAL_HALF;
+
+    private final int EVENT_QUEUE_CAPACITY;
+
+    private final int EVENT_HANDOFF_DEPTH;
+
+    // The number of activities currently run by direct hand-off, on top of the activity that sent them an event.
+    private int handoffDepth = 0;
+
+    private final int INLINE_THRESHOLD;
+    private final int INLINE_DEPTH;
+
+    // The number of children currently run inline, on top of the activity that submitted them.
+    private int inlineDepth = 0;
+
     private final SingleThreadedConstellation parent;
 
     private final ConstellationIdentifierImpl identifier;
 
     private final AbstractContext myContext;
+    private final ContextMatcher myMatcher;
 
     private final StealStrategy localStealStrategy;
     private final StealStrategy constellationStealStrategy;
@@ -59,7 +80,7 @@ public class ExecutorWrapper implements Constellation {
     private final StealPool myPool;
     private final StealPool stealsFrom;
 
-    private HashMap<ActivityIdentifier, ActivityRecord> lookup = new HashMap<ActivityIdentifier, ActivityRecord>();
+    private final ActivityIdentifierMap<ActivityRecord> lookup = new ActivityIdentifierMap<ActivityRecord>();
 
     private final WorkQueue restricted;
     private final WorkQueue fresh;
@@ -67,13 +88,18 @@ public class ExecutorWrapper implements Constellation {
     private CircularBuffer<ActivityRecord> runnable = new CircularBuffer<ActivityRecord>(1);
     private CircularBuffer<ActivityRecord> relocated = new CircularBuffer<ActivityRecord>(1);
 
-    private long activityCounter = 0;
+    // Sequence numbers for our activities. Activities may be submitted by other threads than our own, so this is atomic.
+    private final AtomicLong activityCounter = new AtomicLong();
+
+    // Our identifier, packed into the form used by the activity identifiers.
+    private final long packedIdentifier;
 
     private final TimerImpl initializeTimer;
     private final TimerImpl cleanupTimer;
     private final TimerImpl processTimer;
 
     private long activitiesSubmitted;
+    private long activitiesInlined;
     private long wrongContextSubmitted;
 
     private long steals;
@@ -84,12 +110,23 @@ public class ExecutorWrapper implements Constellation {
     private long messagesExternal;
     private final TimerImpl messagesTimer;
 
+    private final Backpressure backpressure;
+
+    private final Quiescence quiescence;
+
+    private final Cancellation cancellation;
+
+    // The activity we are running, if any. Activities that it submits get it as their parent.
+    private ActivityRecord current;
+
     ExecutorWrapper(SingleThreadedConstellation parent, ConstellationProperties p, ConstellationIdentifierImpl identifier,
             ConstellationConfiguration config) throws ConstellationCreationException {
 
         this.parent = parent;
         this.identifier = identifier;
+        this.packedIdentifier = ActivityIdentifierImpl.packOrigin(identifier);
         this.myContext = config.getContext();
+        this.myMatcher = new ContextMatcher(myContext);
 
         this.myPool = config.getBelongsToPool();
         this.stealsFrom = config.getStealsFrom();
@@ -98,6 +135,11 @@ public class ExecutorWrapper implements Constellation {
         this.remoteStealStrategy = config.getRemoteStealStrategy();
 
         QUEUED_JOB_LIMIT = p.QUEUED_JOB_LIMIT;
+        STEAL_HALF = p.STEAL_HALF;
+        EVENT_QUEUE_CAPACITY = p.EVENT_QUEUE_CAPACITY;
+        EVENT_HANDOFF_DEPTH = p.EVENT_HANDOFF_DEPTH;
+        INLINE_THRESHOLD = p.INLINE_THRESHOLD;
+        INLINE_DEPTH = p.INLINE_DEPTH;
 
         PROFILE_ACTIVITY = p.PROFILE_ACTIVITY;
         PROFILE_COMM = p.PROFILE_COMMUNICATION;
@@ -106,19 +148,53 @@ public class ExecutorWrapper implements Constellation {
             logger.info("Executor set job limit to " + QUEUED_JOB_LIMIT);
         }
 
-        restricted = new SimpleWorkQueue("ExecutorWrapper(" + identifier + ")-restricted");
-        fresh = new SimpleWorkQueue("ExecutorWrapper(" + identifier + ")-fresh");
+        restricted = createQueue("ExecutorWrapper(" + identifier + ")-restricted", p);
+        fresh = createFreshQueue("ExecutorWrapper(" + identifier + ")-fresh", config, p, parent);
 
         messagesTimer = parent.getTimer("java", parent.identifier().toString(), "message sending");
         initializeTimer = parent.getTimer("java", parent.identifier().toString(), "initialize");
         cleanupTimer = parent.getTimer("java", parent.identifier().toString(), "cleanup");
         processTimer = parent.getTimer("java", parent.identifier().toString(), "process");
 
+        backpressure = parent.getBackpressure();
+        quiescence = parent.getQuiescence();
+        cancellation = parent.getCancellation();
+    }
+
+    /**
+     * Creates a queue, which orders on priority if the properties ask for it.
+     */
+    static WorkQueue createQueue(String id, ConstellationProperties p) {
+
+        if (p.QUEUE_PRIORITY) {
+            return new PriorityWorkQueue(id);
+        }
+
+        return new SimpleWorkQueue(id);
+    }
+
+    /**
+     * Creates the queue for fresh activities, which is a lock-free deque owned by the specified thread if the configuration asks
+     * for it and its context allows it.
+     */
+    static WorkQueue createFreshQueue(String id, ConstellationConfiguration config, ConstellationProperties p, Thread owner) {
+
+        if (config.isLockFreeQueue()) {
+            if (p.QUEUE_PRIORITY) {
+                logger.warn("Cannot use a lock-free queue with priority scheduling, using a priority queue instead");
+            } else if (ChaseLevWorkQueue.isSuitable(config.getContext())) {
+                return new ChaseLevWorkQueue(id, owner);
+            } else {
+                logger.warn("Cannot use a lock-free queue for context " + config.getContext() + ", using a sorted queue instead");
+            }
+        }
+
+        return createQueue(id, p);
     }
 
-    private void cancel(ActivityIdentifier activityIdentifier) {
+    private void forget(ActivityIdentifierImpl id) {
 
-        ActivityRecord ar = lookup.remove(activityIdentifier);
+        ActivityRecord ar = lookup.remove(id);
 
         if (ar == null) {
             return;
@@ -129,6 +205,18 @@ public class ExecutorWrapper implements Constellation {
         }
     }
 
+    // Cleans up after an activity that is done.
+    private void finish(ActivityRecord ar) {
+
+        forget(ar.identifier());
+        backpressure.release(1);
+
+        if (ar.getMoves() > 0) {
+            // Let the constellations it passed through know they no longer need to forward its events.
+            parent.activityDone(ar);
+        }
+    }
+
     @Override
     public void done() {
         if (lookup.size() > 0) {
@@ -156,10 +244,9 @@ public class ExecutorWrapper implements Constellation {
         }
 
         // Next see if there are any activities that cannot
-        // leave this constellation
-        size = restricted.size();
-
-        if (size > 0) {
+        // leave this constellation. Fresh activities go first only if
+        // they have a higher priority.
+        if (restricted.size() > 0 && restricted.highestPriority() >= fresh.highestPriority()) {
             return restricted.steal(myContext, localStealStrategy);
         }
 
@@ -182,19 +269,89 @@ public class ExecutorWrapper implements Constellation {
         relocated.insertLast(a);
     }
 
-    private synchronized ActivityIdentifierImpl createActivityID(boolean events) {
-        return ActivityIdentifierImpl.createActivityIdentifier(identifier, activityCounter++, events);
+    private ActivityIdentifierImpl createActivityID(boolean events) {
+        return ActivityIdentifierImpl.createActivityIdentifier(packedIdentifier, activityCounter.getAndIncrement(), events);
     }
 
     @Override
     public ActivityIdentifier submit(Activity activity) throws NoSuitableExecutorException {
-        // Create an activity identifier and initialize the activity with it.
+
+        if (!backpressure.isEnabled()) {
+            return performSubmit(activity);
+        }
+
+        boolean executorThread = Thread.currentThread() == parent;
+
+        if (executorThread && backpressure.getMode() == Backpressure.BLOCK && backpressure.isExhausted()) {
+            // We may block, so make our queued work available to our peers first.
+            pushFreshToParent();
+        }
+
+        if (!backpressure.acquire(executorThread, executorThread ? parent.getWhileBlocked() : null)) {
+            return null;
+        }
+
+        try {
+            return performSubmit(activity);
+        } catch (NoSuitableExecutorException e) {
+            backpressure.release(1);
+            throw e;
+        }
+    }
+
+    @Override
+    public ActivityIdentifier[] submit(Activity[] activities) throws NoSuitableExecutorException {
+
+        // Our own queues are not shared, so there is nothing to gain by doing this in bulk.
+        ActivityIdentifier[] result = new ActivityIdentifier[activities.length];
+
+        for (int i = 0; i < activities.length; i++) {
+            result[i] = submit(activities[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates an activity record for an activity that is submitted to our parent directly, bypassing our own queues.
+     *
+     * @param activity
+     *            the activity
+     * @return the activity record.
+     */
+    ActivityRecord createActivityRecord(Activity activity) {
         ActivityIdentifierImpl id = createActivityID(activity.expectsEvents());
         activity.setIdentifier(id);
+        quiescence.created(1);
+
+        ActivityRecord ar = new ActivityRecord(activity, id, EVENT_QUEUE_CAPACITY);
+
+        // Only our own thread runs activities, so other threads submit on behalf of the application.
+        if (Thread.currentThread() == parent && current != null) {
+            ar.setParent(current.identifier());
+        }
+
+        return ar;
+    }
 
-        ActivityRecord ar = new ActivityRecord(activity, id);
+    private void pushFreshToParent() {
 
-        boolean match = ContextMatch.match(myContext, activity.getContext());
+        ActivityRecord[] tmp = new ActivityRecord[fresh.size()];
+
+        int count = fresh.steal(myContext, localStealStrategy, tmp, 0, tmp.length);
+
+        for (int i = 0; i < count; i++) {
+            lookup.remove(tmp[i].identifier());
+            parent.doSubmit(tmp[i], tmp[i].getContext(), tmp[i].identifier());
+        }
+    }
+
+    ActivityIdentifier performSubmit(Activity activity) throws NoSuitableExecutorException {
+        // Create an activity identifier and initialize the activity with it.
+        ActivityRecord ar = createActivityRecord(activity);
+        ActivityIdentifierImpl id = ar.identifier();
+
+        boolean match = myMatcher.match(activity.getContext());
 
         activitiesSubmitted++;
 
@@ -210,6 +367,11 @@ public class ExecutorWrapper implements Constellation {
 
         activitiesSubmitted++;
 
+        if (mayRunInline(ar)) {
+            runInline(ar);
+            return id;
+        }
+
         if (restricted.size() + fresh.size() >= QUEUED_JOB_LIMIT && !ar.isRestrictedToLocal()) {
             // If we have too much work on our hands we push it to our
             // parent. Added bonus is that others can access it without
@@ -238,9 +400,46 @@ public class ExecutorWrapper implements Constellation {
         // activity. But testing for that may be expensive as well.
         parent.signal();
 
+        // Also let an idle peer know it can steal this job.
+        parent.workAvailable(ar.getContext());
+
         return id;
     }
 
+    // A child may run inline when it is submitted by one of our activities, and we have enough other work queued for our peers to
+    // steal. We only do this for children that could have been stolen, as others may need to wait for activities in our queues.
+    // Children submitted from a cleanup are queued, as the finishing activity can no longer receive their events.
+    private boolean mayRunInline(ActivityRecord ar) {
+        return INLINE_THRESHOLD > 0 && inlineDepth < INLINE_DEPTH && !ar.isRestrictedToLocal() && fresh.size() >= INLINE_THRESHOLD
+                && Thread.currentThread() == parent && (current == null || !current.isFinishing());
+    }
+
+    // Runs a freshly submitted child right away, until it suspends or is done. If it suspends, it waits for its events like any
+    // other activity. Any event it sends to its parent is queued at the parent directly, as the parent is running.
+    private void runInline(ActivityRecord ar) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Running activity " + ar.identifier() + " inline at depth " + inlineDepth);
+        }
+
+        lookup.put(ar.identifier(), ar);
+
+        activitiesInlined++;
+        inlineDepth++;
+
+        try {
+            do {
+                run(ar);
+            } while (ar.needsToRun());
+        } finally {
+            inlineDepth--;
+        }
+
+        if (ar.isDone()) {
+            finish(ar);
+        }
+    }
+
     @Override
     public void send(Event e) {
 
@@ -256,10 +455,12 @@ public class ExecutorWrapper implements Constellation {
             evt = messagesTimer.start();
         }
 
+        quiescence.created(1);
+
         // First check if the activity is local.
         ActivityRecord ar;
 
-        ar = lookup.get(target);
+        ar = lookup.get((ActivityIdentifierImpl) target);
         if (ar != null) {
             messagesInternal++;
         } else {
@@ -272,7 +473,17 @@ public class ExecutorWrapper implements Constellation {
             boolean change = ar.setRunnable();
 
             if (change) {
-                runnable.insertLast(ar);
+                // Only events from our own activities are handed off, as activities must run on our own thread, which may have
+                // to be woken up to run it. A finishing activity is still in lookup while it runs its cleanup, but can no longer
+                // receive events, so the activity it wakes up must not run until it is gone.
+                if (Thread.currentThread() != parent) {
+                    runnable.insertLast(ar);
+                    parent.signal();
+                } else if (handoffDepth < EVENT_HANDOFF_DEPTH && (current == null || !current.isFinishing())) {
+                    handoff(ar);
+                } else {
+                    runnable.insertLast(ar);
+                }
             }
 
         } else {
@@ -285,9 +496,152 @@ public class ExecutorWrapper implements Constellation {
         }
     }
 
+    // Runs an activity that was just woken up by an event from the activity we are running, instead of queueing it. The woken
+    // activity was suspended, so it is not on the stack already.
+    private void handoff(ActivityRecord ar) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Handing off to activity " + ar.identifier() + " at depth " + handoffDepth);
+        }
+
+        handoffDepth++;
+
+        try {
+            process(ar);
+        } finally {
+            handoffDepth--;
+        }
+    }
+
+    @Override
+    public void send(Event[] events) {
+
+        int evt = 0;
+
+        if (PROFILE_COMM) {
+            evt = messagesTimer.start();
+        }
+
+        quiescence.created(events.length);
+
+        // Deliver the events to local activities right away, and collect the others, so our parent can deal with them in one go.
+        Event[] remote = null;
+        int count = 0;
+
+        for (Event e : events) {
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("SEND EVENT " + e.getSource() + " to " + e.getTarget());
+            }
+
+            ActivityRecord ar = lookup.get((ActivityIdentifierImpl) e.getTarget());
+
+            if (ar != null) {
+                messagesInternal++;
+
+                ar.enqueue(e);
+
+                if (ar.setRunnable()) {
+                    runnable.insertLast(ar);
+                }
+            } else {
+                messagesExternal++;
+
+                if (remote == null) {
+                    remote = new Event[events.length];
+                }
+
+                remote[count++] = e;
+            }
+        }
+
+        if (count > 0) {
+            parent.handleEvents(remote, count);
+        }
+
+        if (PROFILE_COMM) {
+            messagesTimer.stop(evt);
+        }
+    }
+
+    @Override
+    public void offload(ActivityIdentifier target, Callable<?> task) {
+
+        if (!((ActivityIdentifierImpl) target).expectsEvents()) {
+            throw new IllegalArgumentException("Target activity " + target + "  does not expect an event!");
+        }
+
+        parent.performOffload((ActivityIdentifierImpl) target, task);
+    }
+
+    @Override
+    public void cancel(ActivityIdentifier activity, boolean cascade) {
+        parent.performCancel((ActivityIdentifierImpl) activity, cascade);
+    }
+
+    ActivityRecord getActivity(ActivityIdentifierImpl id) {
+        return lookup.get(id);
+    }
+
+    void getActivities(List<ActivityRecord> dst) {
+        lookup.values(dst);
+    }
+
+    private static void removeCancelled(CircularBuffer<ActivityRecord> buffer) {
+
+        final int size = buffer.size();
+
+        for (int i = 0; i < size; i++) {
+            ActivityRecord ar = buffer.removeFirst();
+
+            if (!ar.isCancelled()) {
+                buffer.insertLast(ar);
+            }
+        }
+    }
+
+    private static int compact(ActivityRecord[] result, int len) {
+
+        int count = 0;
+
+        for (int i = 0; i < len; i++) {
+            ActivityRecord ar = result[i];
+            result[i] = null;
+
+            if (!ar.isCancelled()) {
+                result[count++] = ar;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Forgets the specified activities, which have been cancelled, and removes them from our queues.
+     *
+     * @param cancelled
+     *            the cancelled activities
+     */
+    void removeCancelled(List<ActivityRecord> cancelled) {
+
+        for (ActivityRecord ar : cancelled) {
+            lookup.remove(ar.identifier());
+        }
+
+        removeCancelled(runnable);
+        removeCancelled(relocated);
+        fresh.removeCancelled();
+        restricted.removeCancelled();
+    }
+
+    @Override
+    public void awaitQuiescence() throws InterruptedException {
+        parent.performAwaitQuiescence();
+    }
+
     public boolean queueEvent(Event e) {
 
-        ActivityRecord ar = lookup.get(e.getTarget());
+        ActivityRecord ar = lookup.get((ActivityIdentifierImpl) e.getTarget());
 
         if (ar != null) {
 
@@ -302,11 +656,20 @@ public class ExecutorWrapper implements Constellation {
             return true;
         }
 
-        logger.error("ERROR: Cannot deliver event: Failed to find activity " + e.getTarget());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Cannot deliver event: Failed to find activity " + e.getTarget());
+        }
 
         return false;
     }
 
+    private int steal(WorkQueue queue, AbstractContext context, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+        if (STEAL_HALF) {
+            return queue.stealHalf(context, s, dst, off, len);
+        }
+        return queue.steal(context, s, dst, off, len);
+    }
+
     protected ActivityRecord[] steal(AbstractContext context, StealStrategy s, boolean allowRestricted, int count,
             ConstellationIdentifier source) {
 
@@ -322,10 +685,15 @@ public class ExecutorWrapper implements Constellation {
         int r = 0;
 
         if (allowRestricted) {
-            r = restricted.steal(context, s, result, 0, count);
+            r = steal(restricted, context, s, result, 0, count);
         }
         if (r < count) {
-            r += fresh.steal(context, s, result, r, count - r);
+            r += steal(fresh, context, s, result, r, count - r);
+        }
+
+        if (r != 0 && cancellation.isActive()) {
+            // Our fresh queue may still hold activities that have been cancelled, which must not leave.
+            r = compact(result, r);
         }
 
         if (r != 0) {
@@ -348,7 +716,7 @@ public class ExecutorWrapper implements Constellation {
         return null;
     }
 
-    private void process(ActivityRecord tmp) {
+    private void run(ActivityRecord tmp) {
         int evt = 0;
 
         TimerImpl timer = tmp.isFinishing() ? cleanupTimer : tmp.isRunnable() ? processTimer : initializeTimer;
@@ -357,16 +725,30 @@ public class ExecutorWrapper implements Constellation {
             evt = timer.start();
         }
 
-        tmp.run(this);
+        ActivityRecord previous = current;
+        current = tmp;
+
+        try {
+            tmp.run(this);
+        } finally {
+            current = previous;
+        }
 
         if (PROFILE_ACTIVITY) {
             timer.stop(evt);
         }
 
+        quiescence.completed(tmp.takeCompletedWork());
+    }
+
+    private void process(ActivityRecord tmp) {
+
+        run(tmp);
+
         if (tmp.needsToRun()) {
             runnable.insertFirst(tmp);
         } else if (tmp.isDone()) {
-            cancel(tmp.identifier());
+            finish(tmp);
         }
 
     }
@@ -381,6 +763,10 @@ public class ExecutorWrapper implements Constellation {
         // match.
 
         if (tmp != null) {
+            if (cancellation.isActive() && parent.cancelDequeued(tmp)) {
+                forget(tmp.identifier());
+                return true;
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("Processing activity " + tmp.identifier());
             }
@@ -407,6 +793,10 @@ public class ExecutorWrapper implements Constellation {
         return activitiesSubmitted;
     }
 
+    public long getActivitiesInlined() {
+        return activitiesInlined;
+    }
+
     public long getWrongContextSubmitted() {
         return wrongContextSubmitted;
     }
@@ -547,6 +937,15 @@ public class ExecutorWrapper implements Constellation {
         return myContext;
     }
 
+    /**
+     * Returns the precompiled matcher for the context of this executor.
+     *
+     * @return the executor's context matcher
+     */
+    public ContextMatcher getMatcher() {
+        return myMatcher;
+    }
+
     /**
      * Returns the steal pool that this executor belongs to.
      *
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+/**
+ * A <code>LocationUpdate</code> tells the constellation on which an activity was created where that activity lives now, after it
+ * has been relocated or stolen more than once. The origin then forwards events for the activity straight to its current location,
+ * instead of along the chain of constellations it passed through.
+ *
+ * The source of the message is the current location of the activity, and its target is the origin of the activity.
+ */
+public class LocationUpdate extends AbstractMessage {
+
+    private static final long serialVersionUID = -3264874109243620528L;
+
+    public final ActivityIdentifierImpl activity;
+
+    // The number of moves of the activity when it arrived at the source. Updates may overtake each other, so only a higher count
+    // replaces the location known at the origin.
+    public final int moves;
+
+    public LocationUpdate(final ConstellationIdentifierImpl source, final ActivityIdentifierImpl activity, final int moves) {
+        super(source, activity.getOrigin());
+        this.activity = activity;
+        this.moves = moves;
+    }
+
+    @Override
+    public ActivityIdentifierImpl targetActivity() {
+        return activity;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationUpdate: " + activity + " at " + source + " after " + moves + " moves";
+    }
+}
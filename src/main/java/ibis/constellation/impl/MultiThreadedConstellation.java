@@ -16,8 +16,16 @@
  */
 package ibis.constellation.impl;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +69,8 @@ public class MultiThreadedConstellation {
 
     private final int localStealSize;
 
+    private final boolean priorityQueues;
+
     private final Profiling profiling;
 
     private final Facade facade = new Facade();
@@ -69,6 +79,24 @@ public class MultiThreadedConstellation {
 
     private final boolean PROFILE;
 
+    private final boolean PRINT_STATISTICS;
+
+    private final String STATISTICS_OUTPUT;
+
+    private final Backpressure backpressure;
+
+    private final OffloadPool offloadPool;
+
+    private final Quiescence quiescence = new Quiescence();
+
+    private final Cancellation cancellation = new Cancellation();
+
+    // Registry of idle workers, indexed by rank. A worker registers itself before its steal attempt, and is removed again by
+    // itself when it finds work, or by the thread that wakes it up.
+    private final AtomicIntegerArray idle;
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
     private class Facade implements Constellation {
 
         /* Following methods implement the Constellation interface */
@@ -78,6 +106,11 @@ public class MultiThreadedConstellation {
             return performSubmit(activity);
         }
 
+        @Override
+        public ActivityIdentifier[] submit(Activity[] activities) throws NoSuitableExecutorException {
+            return performSubmit(activities);
+        }
+
         @Override
         public void send(Event e) {
             if (!((ActivityIdentifierImpl) e.getTarget()).expectsEvents()) {
@@ -87,11 +120,40 @@ public class MultiThreadedConstellation {
             // An external application wishes to send an event to 'e.target'.
             performSend(e);
         }
-        //
-        // @Override
-        // public void cancel(ActivityIdentifierImpl aid) {
-        // // ignored!
-        // }
+
+        @Override
+        public void send(Event[] events) {
+            for (Event e : events) {
+                if (!((ActivityIdentifierImpl) e.getTarget()).expectsEvents()) {
+                    throw new IllegalArgumentException("Target activity " + e.getTarget() + "  does not expect an event!");
+                }
+            }
+
+            performSend(events);
+        }
+
+        @Override
+        public void offload(ActivityIdentifier target, Callable<?> task) {
+            if (!((ActivityIdentifierImpl) target).expectsEvents()) {
+                throw new IllegalArgumentException("Target activity " + target + "  does not expect an event!");
+            }
+
+            offloadPool.submit(MultiThreadedConstellation.this, (ActivityIdentifierImpl) target, task);
+        }
+
+        @Override
+        public void awaitQuiescence() throws InterruptedException {
+            if (parent != null) {
+                parent.getConstellation().awaitQuiescence();
+            } else {
+                quiescence.await();
+            }
+        }
+
+        @Override
+        public void cancel(ActivityIdentifier activity, boolean cascade) {
+            performCancel((ActivityIdentifierImpl) activity, cascade);
+        }
 
         @Override
         public boolean activate() {
@@ -147,8 +209,11 @@ public class MultiThreadedConstellation {
 
         PROFILE = properties.PROFILE;
         PROFILE_OUTPUT = properties.PROFILE_OUTPUT;
+        PRINT_STATISTICS = properties.STATISTICS;
+        STATISTICS_OUTPUT = properties.STATISTICS_OUTPUT;
 
         localStealSize = properties.STEAL_SIZE;
+        priorityQueues = properties.QUEUE_PRIORITY;
 
         if (logger.isInfoEnabled()) {
             logger.info("MultiThreaded: steal size set to " + localStealSize);
@@ -161,6 +226,9 @@ public class MultiThreadedConstellation {
             profiling = new Profiling(identifier.toString());
         }
 
+        backpressure = new Backpressure(properties, c.length);
+        offloadPool = new OffloadPool(properties);
+
         workers = new SingleThreadedConstellation[c.length];
         for (int i = 0; i < c.length; i++) {
             workers[i] = new SingleThreadedConstellation(this, c[i], properties);
@@ -168,6 +236,29 @@ public class MultiThreadedConstellation {
         }
         workerCount = workers.length;
 
+        idle = new AtomicIntegerArray(workerCount);
+
+        routes = createRoutes();
+
+        boolean[] world = new boolean[workerCount];
+        boolean[] any = new boolean[workerCount];
+        int maxLocalId = 0;
+
+        for (int i = 0; i < workerCount; i++) {
+            world[i] = workers[i].belongsTo().isWorld();
+            any[i] = true;
+            maxLocalId = Math.max(maxLocalId, workers[i].identifier().getLocalId());
+        }
+
+        worldRoute = createRoute(world);
+        anyRoute = createRoute(any);
+
+        byLocalId = new SingleThreadedConstellation[maxLocalId + 1];
+
+        for (SingleThreadedConstellation w : workers) {
+            byLocalId[w.identifier().getLocalId()] = w;
+        }
+
         StealPool[] stealsFrom = new StealPool[workerCount];
         StealPool[] belongsTo = new StealPool[workerCount];
 
@@ -197,20 +288,199 @@ public class MultiThreadedConstellation {
         return profiling;
     }
 
-    private int next = 0;
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public OffloadPool getOffloadPool() {
+        return offloadPool;
+    }
+
+    public Quiescence getQuiescence() {
+        return quiescence;
+    }
+
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    // The workers that can run activities with a context name, indexed by the name identifier (see Context#getNameId()).
+    private final Route[] routes;
+
+    // The workers that belong to the WORLD steal pool, or null if there are none.
+    private final Route worldRoute;
+
+    // All workers.
+    private final Route anyRoute;
+
+    // The workers, indexed by the local identifier of their constellation identifier.
+    private final SingleThreadedConstellation[] byLocalId;
+
+    // A set of candidate workers, with a round-robin cursor to spread submissions over them.
+    private static final class Route {
+        final int[] ranks;
+        final AtomicInteger cursor = new AtomicInteger();
+
+        Route(int[] ranks) {
+            this.ranks = ranks;
+        }
+
+        // Returns the position in ranks to start the next search at.
+        int next() {
+            return (cursor.getAndIncrement() & Integer.MAX_VALUE) % ranks.length;
+        }
+    }
+
+    private static Route createRoute(boolean[] member) {
+
+        int count = 0;
+
+        for (boolean b : member) {
+            if (b) {
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        int[] ranks = new int[count];
+        count = 0;
+
+        for (int i = 0; i < member.length; i++) {
+            if (member[i]) {
+                ranks[count++] = i;
+            }
+        }
+
+        return new Route(ranks);
+    }
+
+    private static Context[] getContexts(AbstractContext c) {
+
+        if (c instanceof Context) {
+            return new Context[] { (Context) c };
+        }
+
+        OrContext o = (OrContext) c;
+        Context[] result = new Context[o.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = o.get(i);
+        }
+
+        return result;
+    }
+
+    private Route[] createRoutes() {
+
+        int max = -1;
+
+        for (SingleThreadedConstellation w : workers) {
+            for (Context c : getContexts(w.getContext())) {
+                max = Math.max(max, c.getNameId());
+            }
+        }
 
-    public synchronized ActivityIdentifier performSubmit(Activity activity) throws NoSuitableExecutorException {
+        boolean[][] member = new boolean[max + 1][];
 
         for (int i = 0; i < workerCount; i++) {
-            // Round robin submit (for testing)
-            int index = next++;
-            next = next % workerCount;
-            SingleThreadedConstellation e = workers[index];
+            for (Context c : getContexts(workers[i].getContext())) {
+                if (member[c.getNameId()] == null) {
+                    member[c.getNameId()] = new boolean[workerCount];
+                }
+                member[c.getNameId()][i] = true;
+            }
+        }
+
+        Route[] result = new Route[max + 1];
+
+        for (int i = 0; i <= max; i++) {
+            if (member[i] != null) {
+                result[i] = createRoute(member[i]);
+            }
+        }
+
+        return result;
+    }
+
+    private Route getRoute(Context c) {
+        int id = c.getNameId();
+        return id < routes.length ? routes[id] : null;
+    }
 
-            if (ContextMatch.match(e.getContext(), activity.getContext())) {
-                return e.performSubmit(activity);
+    // Returns the rank of a worker in the route that can run the context, or -1 if there is none.
+    private int selectWorker(Route route, AbstractContext c) {
+
+        if (route == null) {
+            return -1;
+        }
+
+        int start = route.next();
+
+        for (int i = 0; i < route.ranks.length; i++) {
+
+            int rank = route.ranks[(start + i) % route.ranks.length];
+
+            if (workers[rank].getMatcher().match(c)) {
+                return rank;
             }
         }
+
+        return -1;
+    }
+
+    // Returns the rank of a worker that can run the context, or -1 if there is none. Only the workers that have one of the names
+    // of the context in their own context are considered.
+    private int selectWorker(AbstractContext c) {
+
+        if (c instanceof Context) {
+            return selectWorker(getRoute((Context) c), c);
+        }
+
+        for (Context rc : (OrContext) c) {
+
+            int rank = selectWorker(getRoute(rc), c);
+
+            if (rank >= 0) {
+                return rank;
+            }
+        }
+
+        return -1;
+    }
+
+    public ActivityIdentifier performSubmit(Activity activity) throws NoSuitableExecutorException {
+
+        if (!backpressure.isEnabled()) {
+            return submitToWorker(activity);
+        }
+
+        // Acquire room first, as we may block.
+        Thread t = Thread.currentThread();
+        Runnable whileBlocked = t instanceof SingleThreadedConstellation ? ((SingleThreadedConstellation) t).getWhileBlocked() : null;
+
+        if (!backpressure.acquire(whileBlocked != null, whileBlocked)) {
+            return null;
+        }
+
+        try {
+            return submitToWorker(activity);
+        } catch (NoSuitableExecutorException e) {
+            backpressure.release(1);
+            throw e;
+        }
+    }
+
+    private ActivityIdentifier submitToWorker(Activity activity) throws NoSuitableExecutorException {
+
+        int rank = selectWorker(activity.getContext());
+
+        if (rank >= 0) {
+            return workers[rank].performSubmitShared(activity);
+        }
+
         if (logger.isInfoEnabled()) {
             logger.info("No local executor for this activity (no identifier yet)");
         }
@@ -219,43 +489,293 @@ public class MultiThreadedConstellation {
             throw new NoSuitableExecutorException("submit: no suitable executor found");
         }
 
-        // Try to find a worker with WORLD stealpool
+        // Prefer a worker with WORLD stealpool, so the activity can be stolen by other nodes.
+        Route route = worldRoute != null ? worldRoute : anyRoute;
+
+        return workers[route.ranks[route.next()]].performSubmitShared(activity);
+    }
+
+    // The activities of a bulk submit that share a context, and the workers that can run them.
+    private static final class SubmitGroup {
+        final int[] workers;
+        int[] members = new int[8];
+        int size;
+
+        SubmitGroup(int[] workers) {
+            this.workers = workers;
+        }
+
+        void add(int index) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, 2 * size);
+            }
+            members[size++] = index;
+        }
+    }
+
+    private int[] getMatchingWorkers(AbstractContext c) {
+
+        boolean[] member = new boolean[workerCount];
+        int count = 0;
+
+        for (Context rc : getContexts(c)) {
+
+            Route route = getRoute(rc);
+
+            if (route == null) {
+                continue;
+            }
+
+            for (int rank : route.ranks) {
+                if (!member[rank] && workers[rank].getMatcher().match(c)) {
+                    member[rank] = true;
+                    count++;
+                }
+            }
+        }
+
+        int[] result = new int[count];
+        count = 0;
+
         for (int i = 0; i < workerCount; i++) {
-            int index = next++;
-            next = next % workerCount;
-            SingleThreadedConstellation e = workers[index];
+            if (member[i]) {
+                result[count++] = i;
+            }
+        }
+
+        return result;
+    }
 
-            if (e.belongsTo().isWorld()) {
-                return e.performSubmit(activity);
+    /**
+     * Submits a number of activities. The workers that match a context are determined only once for every distinct context, and
+     * the activities with that context are divided into one contiguous chunk per matching worker. Each chunk is then queued at
+     * its worker while taking the lock of that worker only once. If there is no suitable executor for one of the activities,
+     * none of them is submitted.
+     *
+     * @param activities
+     *            the activities
+     * @return the identifiers of the activities, in the same order.
+     * @throws NoSuitableExecutorException
+     *             if no suitable executor could be found for one of the activities.
+     */
+    public ActivityIdentifier[] performSubmit(Activity[] activities) throws NoSuitableExecutorException {
+
+        ActivityIdentifier[] ids = new ActivityIdentifier[activities.length];
+
+        if (backpressure.isEnabled()) {
+            // Every activity needs its own permit, and we may block for each of them.
+            for (int i = 0; i < activities.length; i++) {
+                ids[i] = performSubmit(activities[i]);
             }
+            return ids;
         }
 
-        int i = next++;
-        next = next % workerCount;
-        return workers[i].performSubmit(activity);
+        LinkedHashMap<AbstractContext, SubmitGroup> groups = new LinkedHashMap<AbstractContext, SubmitGroup>();
+
+        for (int i = 0; i < activities.length; i++) {
+
+            AbstractContext c = activities[i].getContext();
+            SubmitGroup g = groups.get(c);
 
+            if (g == null) {
+                g = new SubmitGroup(getMatchingWorkers(c));
+                groups.put(c, g);
+            }
+
+            g.add(i);
+        }
+
+        if (parent == null) {
+            // Fail before anything is queued, as the groups are not submitted in the order of the array.
+            for (SubmitGroup g : groups.values()) {
+                if (g.workers.length == 0) {
+                    throw new NoSuitableExecutorException("submit: no suitable executor found");
+                }
+            }
+        }
+
+        for (SubmitGroup g : groups.values()) {
+
+            if (g.workers.length == 0) {
+                // Let the single submit find a worker, or complain.
+                for (int i = 0; i < g.size; i++) {
+                    ids[g.members[i]] = submitToWorker(activities[g.members[i]]);
+                }
+                continue;
+            }
+
+            int chunks = Math.min(g.workers.length, g.size);
+            int start = anyRoute.next();
+            int off = 0;
+
+            for (int i = 0; i < chunks; i++) {
+                int len = (g.size - off) / (chunks - i);
+                workers[g.workers[(start + i) % g.workers.length]].performSubmit(activities, g.members, off, len, ids);
+                off += len;
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Registers the specified worker as idle, so it is woken up when work it can steal becomes available.
+     *
+     * @param rank
+     *            the rank of the worker
+     */
+    void setIdle(int rank) {
+        if (idle.compareAndSet(rank, 0, 1)) {
+            idleCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the specified worker from the idle registry.
+     *
+     * @param rank
+     *            the rank of the worker
+     * @return <code>true</code> if the worker was registered as idle.
+     */
+    boolean clearIdle(int rank) {
+        if (idle.compareAndSet(rank, 1, 0)) {
+            idleCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called when the specified worker has queued work with the specified context. Wakes up exactly one idle worker that is
+     * allowed to steal from the source and can run the work, if there is one.
+     *
+     * @param src
+     *            the worker that queued the work
+     * @param c
+     *            the context of the work
+     */
+    void workAvailable(SingleThreadedConstellation src, AbstractContext c) {
+
+        if (idleCount.get() == 0) {
+            return;
+        }
+
+        final int rank = src.getRank();
+
+        for (int i = 1; i < workerCount; i++) {
+
+            final int j = (rank + i) % workerCount;
+
+            if (idle.get(j) == 1 && poolMatrix[j][rank] && workers[j].getMatcher().match(c) && clearIdle(j)) {
+                workers[j].wakeForWork();
+                return;
+            }
+        }
     }
 
     public void performSend(Event e) {
 
+        quiescence.created(1);
+
         // Since we don't known where the target activity is located, we simply
         // send the message to it's parent constellation (which may be local).
         handleEventMessage(new EventMessage(identifier, ((ActivityIdentifierImpl) e.getTarget()).getOrigin(), e));
     }
 
-    public void performCancel(ActivityIdentifier aid) {
-        logger.error("INTERNAL ERROR: cancel not implemented!");
+    public void performSend(Event[] events) {
+
+        quiescence.created(events.length);
+
+        EventMessage[] messages = new EventMessage[events.length];
+
+        for (int i = 0; i < events.length; i++) {
+            messages[i] = new EventMessage(identifier, ((ActivityIdentifierImpl) events[i].getTarget()).getOrigin(), events[i]);
+        }
+
+        handleEventMessages(messages, messages.length);
     }
 
-    private SingleThreadedConstellation getWorker(ConstellationIdentifier cid) {
+    public void performCancel(ActivityIdentifierImpl id, boolean cascade) {
+
+        ActivityIdentifierImpl[] ids = new ActivityIdentifierImpl[] { id };
 
-        for (SingleThreadedConstellation b : workers) {
-            if (cid.equals(b.identifier())) {
-                return b;
+        if (cascade || !id.expectsEvents()) {
+            // The activities it submitted may be anywhere, and no-one remembers where an activity that does not expect events
+            // went, so everyone must look.
+            handleCancel(new CancelRequest(identifier, null, ids, cascade));
+        } else {
+            // Otherwise we can follow it like an event.
+            handleCancel(new CancelRequest(identifier, id.getOrigin(), ids, false));
+        }
+    }
+
+    /**
+     * Passes a cancel request from one of our workers on to its target, which may be local or remote, or to everyone if it is a
+     * broadcast.
+     *
+     * @param r
+     *            the cancel request
+     * @return <code>false</code> if the cancel request had to be dropped, <code>true</code> otherwise.
+     */
+    public boolean handleCancel(CancelRequest r) {
+
+        if (r.isBroadcast()) {
+            deliverCancel(r);
+
+            if (parent != null) {
+                parent.broadcastCancel(r);
             }
+        } else if (cidFactory.isLocal(r.target)) {
+            deliverCancel(r);
+        } else if (parent != null) {
+            return parent.handleCancel(r);
+        } else {
+            logger.error("Cancel target " + r.target + " cannot be found (" + r + " dropped)");
+            return false;
         }
 
-        return null;
+        return true;
+    }
+
+    /**
+     * Delivers a cancel request to our workers. The cancelled activities are remembered, so the ones that are still on their way
+     * are dropped when they arrive.
+     *
+     * @param r
+     *            the cancel request
+     */
+    public void deliverCancel(CancelRequest r) {
+
+        cancellation.add(r);
+
+        if (r.isBroadcast()) {
+            for (SingleThreadedConstellation w : workers) {
+                // The worker that sent it has already done its part.
+                if (!w.identifier().equals(r.source)) {
+                    w.deliverCancel(r);
+                }
+            }
+            return;
+        }
+
+        SingleThreadedConstellation b = getWorker(r.target);
+
+        if (b != null) {
+            b.deliverCancel(r);
+        } else {
+            logger.error("Cancel target " + r.target + " cannot be found (" + r + " dropped)");
+        }
+    }
+
+    private SingleThreadedConstellation getWorker(ConstellationIdentifierImpl cid) {
+
+        if (!cidFactory.isLocal(cid)) {
+            return null;
+        }
+
+        int id = cid.getLocalId();
+
+        return id >= 0 && id < byLocalId.length ? byLocalId[id] : null;
     }
 
     private int selectRandomWorker() {
@@ -263,22 +783,60 @@ public class MultiThreadedConstellation {
         return random.nextInt(workerCount);
     }
 
-    // Delivers the specified message to the specified constellation.
-    // This method returns null if either the destination constellation could
-    // not be found (which is an error situation), or the message gets
-    // delivered.
-    // When the message cannot be delivered, the constellation identifier where
-    // it should be sent instead is returned.
-    private ConstellationIdentifierImpl deliverLocally(ConstellationIdentifierImpl cid, EventMessage m) {
+    // Returns our workers in the order in which they should be asked for work. We start at a random worker, so thieves spread
+    // over their victims. With priority queues, the workers holding the activities of highest priority come first, so these are
+    // not left waiting while others run less urgent work.
+    private SingleThreadedConstellation[] selectVictims(final boolean local) {
+
+        final int rnd = selectRandomWorker();
+
+        final SingleThreadedConstellation[] result = new SingleThreadedConstellation[workerCount];
+
+        for (int i = 0; i < workerCount; i++) {
+            result[i] = workers[(rnd + i) % workerCount];
+        }
+
+        if (!priorityQueues) {
+            return result;
+        }
+
+        // The priorities change while we sort, so we sort on a snapshot. Insertion sort is stable, so equal priorities keep
+        // their random order, and there are only a few workers anyway.
+        final int[] priority = new int[workerCount];
+
+        for (int i = 0; i < workerCount; i++) {
+
+            final SingleThreadedConstellation tmp = result[i];
+            final int p = tmp.highestPriority(local);
+
+            int j = i;
+
+            while (j > 0 && priority[j - 1] < p) {
+                priority[j] = priority[j - 1];
+                result[j] = result[j - 1];
+                j--;
+            }
+
+            priority[j] = p;
+            result[j] = tmp;
+        }
+
+        return result;
+    }
+
+    // Delivers the specified message to the specified constellation. If the
+    // activity is no longer there, that constellation forwards the message.
+    private void deliverLocally(ConstellationIdentifierImpl cid, EventMessage m) {
 
         SingleThreadedConstellation st = getWorker(cid);
 
         if (st == null) {
             logger.error("TimerEvent target " + m.target + " cannot be found (event dropped)");
-            return null;
+            quiescence.completed(1);
+            return;
         }
 
-        return st.deliverEventMessage(m);
+        st.deliverEventMessage(m);
     }
 
     public void handleEventMessage(EventMessage m) {
@@ -286,28 +844,161 @@ public class MultiThreadedConstellation {
         // which may be local or remote.
 
         if (cidFactory.isLocal(m.target)) {
+            deliverLocally(m.target, m);
+        } else {
 
-            ConstellationIdentifierImpl cid = deliverLocally(m.target, m);
+            if (parent == null) {
+                logger.error("TimerEvent target " + m.target + " cannot be found (event dropped)");
+                quiescence.completed(1);
+                return;
+            }
+
+            parent.handleApplicationMessage(m, true);
+        }
+    }
 
-            if (cid != null) {
+    /**
+     * Deals with a number of event messages from one of our children. The messages for local workers are posted to their inboxes,
+     * waking up each worker only once, and the other messages are passed to our parent together.
+     *
+     * @param messages
+     *            the event messages
+     * @param count
+     *            the number of messages in the array
+     */
+    public void handleEventMessages(EventMessage[] messages, int count) {
 
-                if (cid.equals(m.target)) {
-                    logger.error("INTERNAL ERROR: loop in event routing! (dropping event)");
-                    return;
+        EventMessage[] local = new EventMessage[count];
+        EventMessage[] remote = null;
+        int localCount = 0;
+        int remoteCount = 0;
+
+        for (int i = 0; i < count; i++) {
+
+            EventMessage m = messages[i];
+
+            if (cidFactory.isLocal(m.target)) {
+                local[localCount++] = m;
+            } else {
+                if (remote == null) {
+                    remote = new EventMessage[count];
                 }
 
-                // The activity has been relocated or stolen, so try again
-                m.setTarget(cid);
-                handleEventMessage(m);
+                remote[remoteCount++] = m;
             }
-        } else {
+        }
+
+        deliverLocally(local, localCount);
 
+        if (remoteCount > 0) {
             if (parent == null) {
-                logger.error("TimerEvent target " + m.target + " cannot be found (event dropped)");
+                logger.error("TimerEvent target " + remote[0].target + " cannot be found (" + remoteCount + " events dropped)");
+                quiescence.completed(remoteCount);
                 return;
             }
 
-            parent.handleApplicationMessage(m, true);
+            parent.handleApplicationMessages(remote, remoteCount);
+        }
+    }
+
+    // Posts the messages to the inboxes of their target workers, and then signals every worker that got one.
+    private void deliverLocally(EventMessage[] messages, int count) {
+
+        boolean[] posted = null;
+
+        for (int i = 0; i < count; i++) {
+
+            EventMessage m = messages[i];
+            SingleThreadedConstellation st = getWorker(m.target);
+
+            if (st == null) {
+                logger.error("TimerEvent target " + m.target + " cannot be found (event dropped)");
+                quiescence.completed(1);
+                continue;
+            }
+
+            if (!st.queueEventMessage(m)) {
+                continue;
+            }
+
+            if (posted == null) {
+                posted = new boolean[workerCount];
+            }
+
+            posted[st.getRank()] = true;
+        }
+
+        if (posted != null) {
+            for (int i = 0; i < workerCount; i++) {
+                if (posted[i]) {
+                    workers[i].signal();
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes a location update from one of our workers on to the origin of its activity, which may be local or remote. Location
+     * updates are only an optimization, so they are dropped if they cannot be delivered.
+     *
+     * @param u
+     *            the location update
+     */
+    public void handleLocationUpdate(LocationUpdate u) {
+
+        SingleThreadedConstellation b = getWorker(u.target);
+
+        if (b != null) {
+            b.deliverLocationUpdate(u);
+        } else if (parent != null && !cidFactory.isLocal(u.target)) {
+            parent.handleLocationUpdate(u);
+        }
+    }
+
+    /**
+     * Delivers a location update from our parent.
+     *
+     * @param u
+     *            the location update
+     */
+    public void deliverLocationUpdate(LocationUpdate u) {
+
+        SingleThreadedConstellation b = getWorker(u.target);
+
+        if (b != null) {
+            b.deliverLocationUpdate(u);
+        }
+    }
+
+    /**
+     * Passes tombstones from one of our workers on to their target, which may be local or remote.
+     *
+     * @param t
+     *            the tombstones
+     */
+    public void handleTombstones(Tombstones t) {
+
+        SingleThreadedConstellation b = getWorker(t.target);
+
+        if (b != null) {
+            b.deliverTombstones(t);
+        } else if (parent != null && !cidFactory.isLocal(t.target)) {
+            parent.handleTombstones(t);
+        }
+    }
+
+    /**
+     * Delivers tombstones from our parent.
+     *
+     * @param t
+     *            the tombstones
+     */
+    public void deliverTombstones(Tombstones t) {
+
+        SingleThreadedConstellation b = getWorker(t.target);
+
+        if (b != null) {
+            b.deliverTombstones(t);
         }
     }
 
@@ -328,7 +1019,8 @@ public class MultiThreadedConstellation {
         return false;
     }
 
-    public ActivityRecord[] handleStealRequest(final SingleThreadedConstellation c, final int stealSize) {
+    public ActivityRecord[] handleStealRequest(final SingleThreadedConstellation c, final int stealSize,
+            final boolean sendRequests) {
         // a steal request from below
 
         final AbstractContext context = c.getContext();
@@ -340,14 +1032,14 @@ public class MultiThreadedConstellation {
 
         // First attempt to satisfy the request locally without waiting for
         // anyone
-        final int rnd = selectRandomWorker();
+        final SingleThreadedConstellation[] victims = selectVictims(true);
         final int rank = c.getRank();
 
         final ActivityRecord[] result = new ActivityRecord[localStealSize];
 
         for (int i = 0; i < workerCount; i++) {
 
-            final SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+            final SingleThreadedConstellation tmp = victims[i];
 
             if (!tmp.equals(c) && poolMatrix[rank][tmp.getRank()]) {
 
@@ -360,6 +1052,10 @@ public class MultiThreadedConstellation {
             }
         }
 
+        if (!sendRequests) {
+            return null;
+        }
+
         // If this fails, we do a remote steal followed by an enqueued steal at
         // a random suitable peer.
         final StealRequest sr = new StealRequest(c.identifier(), context, c.getLocalStealStrategy(),
@@ -371,7 +1067,7 @@ public class MultiThreadedConstellation {
 
         for (int i = 0; i < workerCount; i++) {
 
-            final SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+            final SingleThreadedConstellation tmp = victims[i];
 
             if (!tmp.equals(c) && poolMatrix[rank][tmp.getRank()]) {
                 tmp.deliverStealRequest(sr);
@@ -451,6 +1147,12 @@ public class MultiThreadedConstellation {
             u.performDone();
         }
 
+        offloadPool.shutdown();
+
+        if (PRINT_STATISTICS) {
+            printStatistics();
+        }
+
         if (PROFILE && parent == null) {
             if (logger.isInfoEnabled()) {
                 logger.info("Printing statistics");
@@ -459,6 +1161,36 @@ public class MultiThreadedConstellation {
         }
     }
 
+    // Prints the statistics that are kept for the node as a whole, next to those our workers print for themselves.
+    private void printStatistics() {
+
+        PrintStream out = System.out;
+
+        if (STATISTICS_OUTPUT != null) {
+            final String filename = STATISTICS_OUTPUT + "." + identifier.getNodeId();
+
+            try {
+                out = new PrintStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            } catch (final Throwable e) {
+                logger.error("Failed to open output file " + filename);
+            }
+        }
+
+        synchronized (out) {
+            out.println(identifier + " node statistics");
+            if (backpressure.isEnabled()) {
+                backpressure.printStatistics(out);
+            }
+            offloadPool.printStatistics(out);
+        }
+
+        if (out == System.out) {
+            out.flush();
+        } else {
+            out.close();
+        }
+    }
+
     public void deliverStealRequest(StealRequest sr) {
         // steal request delivered by our parent.
 
@@ -466,12 +1198,12 @@ public class MultiThreadedConstellation {
             logger.debug("M REMOTE STEAL REQUEST from child " + sr.source + " context " + sr.context + " pool " + sr.pool);
         }
 
-        final int rnd = selectRandomWorker();
+        final SingleThreadedConstellation[] victims = selectVictims(false);
 
         // First attempt to satisfy the request without bothering anyone
         for (int i = 0; i < workerCount; i++) {
 
-            SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+            SingleThreadedConstellation tmp = victims[i];
 
             StealPool p = tmp.belongsTo();
 
@@ -504,7 +1236,7 @@ public class MultiThreadedConstellation {
         // No job was found. Let's just post a request at a random location.
         for (int i = 0; i < workerCount; i++) {
 
-            SingleThreadedConstellation tmp = workers[(rnd + i) % workerCount];
+            SingleThreadedConstellation tmp = victims[i];
 
             StealPool p = tmp.belongsTo();
 
@@ -544,35 +1276,23 @@ public class MultiThreadedConstellation {
 
         if (st == null) {
             logger.error("Failed to locate event target activity " + am.target + " for remote event (dropping event)");
+            quiescence.completed(1);
             return;
         }
 
-        ConstellationIdentifierImpl cid = st.deliverEventMessage(am);
-
-        if (cid == null) {
-            // AbstractMessage was delivered -- we're done!
-            return;
-        }
-
-        // The activity is no longer at the expected location.
-        am.setTarget(cid);
-
-        if (cidFactory.isLocal(cid)) {
-            // It has been relocated
-            st = getWorker(cid);
-
-            if (st == null) {
-                logger.error("Failed to locate event target activity " + am.target + " for remote event (dropping event)");
-                return;
-            }
-
-            // NOTE: this should always return null!
-            cid = st.deliverEventMessage(am);
+        // If the activity is no longer there, the worker forwards the message itself.
+        st.deliverEventMessage(am);
+    }
 
-        } else {
-            // it has been exported
-            parent.handleApplicationMessage(am, true);
-        }
+    /**
+     * Delivers a number of event messages from our parent, which all target one of our workers.
+     *
+     * @param messages
+     *            the event messages
+     */
+    public void deliverEventMessages(EventMessage[] messages) {
+        // If an activity is no longer there, the worker forwards the message itself.
+        deliverLocally(messages, messages.length);
     }
 
     public Constellation getConstellation() {
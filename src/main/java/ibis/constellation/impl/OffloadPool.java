@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.Event;
+
+/**
+ * An <code>OffloadPool</code> runs tasks that may block, such as I/O, on threads of their own, so they do not hold up the
+ * executors. When a task is done, its result is sent as an event to the activity that asked for it, which makes it re-enter its
+ * executor like any other event. It is shared by all executors of the node.
+ *
+ * The threads are virtual threads when the JVM supports them, and threads from a cached thread pool otherwise. They are only
+ * created when the first task is offloaded.
+ */
+public class OffloadPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffloadPool.class);
+
+    public static final int AUTO = 0;
+    public static final int VIRTUAL = 1;
+    public static final int CACHED = 2;
+
+    private final int mode;
+
+    private ExecutorService executor;
+
+    private boolean shutdown;
+
+    private long offloaded;
+
+    public OffloadPool(ConstellationProperties p) {
+        this(parseMode(p.OFFLOAD_THREADS));
+    }
+
+    public OffloadPool(int mode) {
+        this.mode = mode;
+    }
+
+    private static int parseMode(String name) {
+        if (name.equalsIgnoreCase("auto")) {
+            return AUTO;
+        }
+        if (name.equalsIgnoreCase("virtual")) {
+            return VIRTUAL;
+        }
+        if (name.equalsIgnoreCase("cached")) {
+            return CACHED;
+        }
+        throw new IllegalArgumentException("Unknown offload threads: " + name);
+    }
+
+    // Returns an executor that starts a virtual thread per task, or null if this JVM does not support virtual threads.
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createCachedThreadExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Constellation offload " + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        if (shutdown) {
+            throw new IllegalStateException("Offload pool is shut down");
+        }
+
+        if (executor == null) {
+            if (mode != CACHED) {
+                executor = createVirtualThreadExecutor();
+
+                if (executor == null && mode == VIRTUAL) {
+                    logger.warn("Virtual threads are not supported by this JVM, using a cached thread pool instead");
+                }
+            }
+
+            if (executor == null) {
+                executor = createCachedThreadExecutor();
+            }
+
+            if (logger.isInfoEnabled()) {
+                logger.info("Offloading tasks to " + executor);
+            }
+        }
+
+        offloaded++;
+        return executor;
+    }
+
+    private static Object call(Callable<?> task) {
+        try {
+            return task.call();
+        } catch (Throwable e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Offloaded task failed", e);
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Runs the task on a thread of its own. When it is done, its result, or the exception it threw, is sent to the target activity
+     * as an event, through the inbox of the specified executor.
+     *
+     * @param owner
+     *            the executor that offloads the task
+     * @param target
+     *            the activity to send the result to
+     * @param task
+     *            the task
+     */
+    public void submit(final SingleThreadedConstellation owner, final ActivityIdentifierImpl target, final Callable<?> task) {
+
+        ExecutorService executor = getExecutor();
+
+        // The task is a unit of work of its own, which becomes the unit of work of its event.
+        owner.getQuiescence().created(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Event e = new Event(target, target, call(task));
+                owner.deliverEventMessage(new EventMessage(owner.identifier(), owner.identifier(), e));
+            }
+        });
+    }
+
+    /**
+     * Runs the task on a thread of its own. When it is done, its result, or the exception it threw, is sent to the target activity
+     * as an event, like an event sent by the application.
+     *
+     * @param owner
+     *            the constellation that offloads the task
+     * @param target
+     *            the activity to send the result to
+     * @param task
+     *            the task
+     */
+    public void submit(final MultiThreadedConstellation owner, final ActivityIdentifierImpl target, final Callable<?> task) {
+
+        ExecutorService executor = getExecutor();
+
+        // The task is a unit of work of its own, which completes once its event has been sent.
+        owner.getQuiescence().created(1);
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    owner.performSend(new Event(target, target, call(task)));
+                } finally {
+                    owner.getQuiescence().completed(1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that are still running are allowed to finish.
+     */
+    public synchronized void shutdown() {
+
+        shutdown = true;
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public synchronized long getOffloaded() {
+        return offloaded;
+    }
+
+    public synchronized void printStatistics(PrintStream out) {
+        out.println(" Offload (node)");
+        out.println("   tasks           : " + offloaded);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A <code>Quiescence</code> object counts the pending work of a node, so it can tell when nothing more will happen. It is shared
+ * by all executors of the node.
+ *
+ * A unit of work is created when an activity is submitted, when an event is sent, and when a task is offloaded. It is completed
+ * when the activity suspends or is done after its initialize or cleanup, when the event has been processed or dropped, and when
+ * the offloaded task has sent its event. Whatever a unit of work creates is counted before the unit itself completes. Hence, once
+ * the number of completed units equals the number of created units, the node stays quiescent until the application submits new
+ * work, as suspended activities can only be woken up by events.
+ *
+ * Both counters only grow. Activities and events may cross nodes, so a node may complete work that another node created, and work
+ * that is in flight, such as a stolen activity or an event message, is counted as created but not completed. A pool is quiescent
+ * when two consecutive waves over all nodes find the same counters, with as many completed as created units (the four counter
+ * method).
+ */
+public class Quiescence {
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong completed = new AtomicLong();
+
+    private volatile int waiters;
+
+    public void created(int n) {
+        created.addAndGet(n);
+    }
+
+    public void completed(int n) {
+
+        if (n == 0) {
+            return;
+        }
+
+        completed.addAndGet(n);
+
+        if (waiters > 0) {
+            synchronized (this) {
+                if (isQuiescent()) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the counters of this node, completed units first.
+     *
+     * @return the number of completed and created units of work.
+     */
+    public long[] getCounts() {
+        // Read the completed units first. All units they created were counted before they completed, so if the counts are equal
+        // there was a moment at which no work was pending.
+        long c = completed.get();
+        return new long[] { c, created.get() };
+    }
+
+    /**
+     * Checks that the current thread may wait for quiescence, which executor threads may not, as they would wait for themselves.
+     *
+     * @throws IllegalStateException
+     *             if the current thread is an executor thread.
+     */
+    static void checkCaller() {
+        if (Thread.currentThread() instanceof SingleThreadedConstellation) {
+            throw new IllegalStateException("An activity cannot wait for quiescence");
+        }
+    }
+
+    public boolean isQuiescent() {
+        long[] counts = getCounts();
+        return counts[0] == counts[1];
+    }
+
+    /**
+     * Waits until no work is pending on this node.
+     *
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     * @throws IllegalStateException
+     *             if the current thread is an executor thread.
+     */
+    public synchronized void await() throws InterruptedException {
+
+        checkCaller();
+
+        waiters++;
+
+        try {
+            while (!isQuiescent()) {
+                wait();
+            }
+        } finally {
+            waiters--;
+        }
+    }
+
+    /**
+     * Waits until no work is pending on this node, or until the timeout expires.
+     *
+     * @param timeout
+     *            the maximum time to wait in milliseconds
+     * @return <code>true</code> if the node is quiescent.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     */
+    public synchronized boolean await(long timeout) throws InterruptedException {
+
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        waiters++;
+
+        try {
+            while (!isQuiescent()) {
+
+                long left = deadline - System.currentTimeMillis();
+
+                if (left <= 0) {
+                    return false;
+                }
+
+                wait(left);
+            }
+        } finally {
+            waiters--;
+        }
+
+        return true;
+    }
+}
@@ -24,7 +24,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,9 +41,12 @@ import ibis.constellation.Event;
 import ibis.constellation.NoSuitableExecutorException;
 import ibis.constellation.StealPool;
 import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.util.ActivityIdentifierMap;
 import ibis.constellation.impl.util.CircularBuffer;
+import ibis.constellation.impl.util.ConcurrentActivityIdentifierMap;
+import ibis.constellation.impl.util.IdleStrategy;
+import ibis.constellation.impl.util.MpscQueue;
 import ibis.constellation.impl.util.Profiling;
-import ibis.constellation.impl.util.SimpleWorkQueue;
 import ibis.constellation.impl.util.WorkQueue;
 
 public class SingleThreadedConstellation extends Thread {
@@ -53,8 +57,19 @@ public class SingleThreadedConstellation extends Thread {
 
     private final MultiThreadedConstellation parent;
 
-    private final Map<ActivityIdentifierImpl, ConstellationIdentifierImpl> exportedActivities = new ConcurrentHashMap<ActivityIdentifierImpl, ConstellationIdentifierImpl>();
-    private final Map<ActivityIdentifierImpl, ConstellationIdentifierImpl> relocatedActivities = new ConcurrentHashMap<ActivityIdentifierImpl, ConstellationIdentifierImpl>();
+    // Where an activity that left us went to, and how many times it had moved by then.
+    private static final class Location {
+        final ConstellationIdentifierImpl cid;
+        final int moves;
+
+        Location(final ConstellationIdentifierImpl cid, final int moves) {
+            this.cid = cid;
+            this.moves = moves;
+        }
+    }
+
+    private final ConcurrentActivityIdentifierMap<Location> exportedActivities = new ConcurrentActivityIdentifierMap<Location>();
+    private final ConcurrentActivityIdentifierMap<Location> relocatedActivities = new ConcurrentActivityIdentifierMap<Location>();
 
     private final ExecutorWrapper wrapper;
 
@@ -83,7 +98,7 @@ public class SingleThreadedConstellation extends Thread {
     private final CircularBuffer<ActivityRecord> relocated = new CircularBuffer<ActivityRecord>(1);
 
     // Hashmap allowing quick lookup of the activities in our 4 queues.
-    private final HashMap<ActivityIdentifierImpl, ActivityRecord> lookup = new HashMap<ActivityIdentifierImpl, ActivityRecord>();
+    private final ActivityIdentifierMap<ActivityRecord> lookup = new ActivityIdentifierMap<ActivityRecord>();
 
     private final ConstellationIdentifierImpl identifier;
 
@@ -111,14 +126,41 @@ public class SingleThreadedConstellation extends Thread {
     }
 
     private final int stealSize;
+    private final boolean stealHalf;
     private final int stealDelay;
 
     private long nextStealDeadline;
 
-    private PendingRequests incoming = new PendingRequests();
-    private PendingRequests processing = new PendingRequests();
+    // Only set when the "spin" idle strategy is selected.
+    private final IdleStrategy idleStrategy;
 
-    private boolean done = false;
+    // Steal requests, steal replies and event messages posted by other threads. Only our own thread takes them out, so posting
+    // never has to wait for our lock.
+    private final MpscQueue<AbstractMessage> inbox = new MpscQueue<AbstractMessage>();
+
+    private final PendingRequests processing = new PendingRequests();
+
+    // Cancel requests that arrived while our executor was blocked in the middle of an activity, see processWhileBlocked.
+    private final ArrayList<CancelRequest> deferredCancels = new ArrayList<CancelRequest>();
+
+    // Run by our own thread while it waits for backpressure.
+    private final Runnable whileBlocked = new Runnable() {
+        @Override
+        public void run() {
+            processWhileBlocked();
+        }
+    };
+
+    private volatile boolean done = false;
+
+    // Set while our thread is parked, or about to park, waiting for requests.
+    private volatile boolean parked = false;
+
+    // Set when a peer has queued work we can steal, and woke us up for it.
+    private volatile boolean workNotified = false;
+
+    // True if we are registered as idle at our parent.
+    private boolean registeredIdle = false;
 
     private final Profiling profiling;
     private final TimerImpl stealTimer;
@@ -141,6 +183,31 @@ public class SingleThreadedConstellation extends Thread {
 
     private long remoteStolen;
 
+    private long locationUpdatesSent;
+    private long locationUpdatesApplied;
+
+    // Tombstones to send, per target constellation, see activityDone.
+    private final HashMap<ConstellationIdentifierImpl, ArrayList<ActivityIdentifierImpl>> tombstones = new HashMap<ConstellationIdentifierImpl, ArrayList<ActivityIdentifierImpl>>();
+    private int pendingTombstones;
+    private final int TOMBSTONE_BATCH;
+
+    private long tombstonesSent;
+    private long tombstonesApplied;
+
+    private long activitiesCancelled;
+    private long activitiesCancelledStarted;
+    private long cancelsForwarded;
+    private long cancelsDropped;
+    private long eventsDropped;
+
+    private final Backpressure backpressure;
+
+    private final OffloadPool offloadPool;
+
+    private final Quiescence quiescence;
+
+    private final Cancellation cancellation;
+
     SingleThreadedConstellation(final ConstellationConfiguration executor, final ConstellationProperties p)
             throws ConstellationCreationException {
         this(null, executor, p);
@@ -159,6 +226,7 @@ public class SingleThreadedConstellation extends Thread {
 
         PROFILE_STEALS = props.PROFILE_STEAL;
         PRINT_STATISTICS = props.STATISTICS;
+        TOMBSTONE_BATCH = props.TOMBSTONE_BATCH;
         PROFILE = props.PROFILE;
 
         logger.info("PROFILE_STEALS = " + PROFILE_STEALS);
@@ -175,11 +243,11 @@ public class SingleThreadedConstellation extends Thread {
             identifier = new ConstellationIdentifierImpl(0, 0);
         }
 
-        stolen = new SimpleWorkQueue("ST(" + identifier + ")-stolen");
-        restricted = new SimpleWorkQueue("ST(" + identifier + ")-restricted");
-        fresh = new SimpleWorkQueue("ST(" + identifier + ")-fresh");
-        wrongContext = new SimpleWorkQueue("ST(" + identifier + ")-wrong");
-        restrictedWrongContext = new SimpleWorkQueue("ST(" + identifier + ")-restrictedwrong");
+        stolen = ExecutorWrapper.createQueue("ST(" + identifier + ")-stolen", props);
+        restricted = ExecutorWrapper.createQueue("ST(" + identifier + ")-restricted", props);
+        fresh = ExecutorWrapper.createFreshQueue("ST(" + identifier + ")-fresh", config, props, this);
+        wrongContext = ExecutorWrapper.createQueue("ST(" + identifier + ")-wrong", props);
+        restrictedWrongContext = ExecutorWrapper.createQueue("ST(" + identifier + ")-restrictedwrong", props);
 
         super.setName(identifier().toString());
 
@@ -209,12 +277,30 @@ public class SingleThreadedConstellation extends Thread {
             logger.info("SingleThreaded: steal delay set to " + stealDelay + " ms.");
         }
 
+        if (props.IDLE_STRATEGY.equalsIgnoreCase("spin")) {
+            idleStrategy = new IdleStrategy(props.IDLE_SPINS, props.IDLE_YIELDS, props.IDLE_PARK_MIN, props.IDLE_PARK_MAX);
+        } else if (props.IDLE_STRATEGY.equalsIgnoreCase("sleep")) {
+            idleStrategy = null;
+        } else {
+            throw new IllegalArgumentException("Unknown idle strategy: " + props.IDLE_STRATEGY);
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("SingleThreaded: idle strategy set to " + props.IDLE_STRATEGY);
+        }
+
         stealSize = props.STEAL_SIZE;
 
         if (logger.isInfoEnabled()) {
             logger.info("SingleThreaded: steal size set to " + stealSize);
         }
 
+        stealHalf = props.STEAL_HALF;
+
+        if (logger.isInfoEnabled()) {
+            logger.info("SingleThreaded: steal half set to " + stealHalf);
+        }
+
         ignoreEmptyStealReplies = props.STEAL_IGNORE_EMPTY_REPLIES;
 
         if (logger.isInfoEnabled()) {
@@ -229,6 +315,18 @@ public class SingleThreadedConstellation extends Thread {
 
         stealTimer = profiling.getTimer("java", identifier().toString(), "steal");
 
+        if (parent != null) {
+            backpressure = parent.getBackpressure();
+            offloadPool = parent.getOffloadPool();
+            quiescence = parent.getQuiescence();
+            cancellation = parent.getCancellation();
+        } else {
+            backpressure = new Backpressure(props, 1);
+            offloadPool = new OffloadPool(props);
+            quiescence = new Quiescence();
+            cancellation = new Cancellation();
+        }
+
         wrapper = new ExecutorWrapper(this, props, identifier, config);
 
         myPool = wrapper.belongsTo();
@@ -256,6 +354,22 @@ public class SingleThreadedConstellation extends Thread {
         return wrapper.getContext();
     }
 
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    public Quiescence getQuiescence() {
+        return quiescence;
+    }
+
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    public ContextMatcher getMatcher() {
+        return wrapper.getMatcher();
+    }
+
     public StealStrategy getLocalStealStrategy() {
         return wrapper.getLocalStealStrategy();
     }
@@ -280,12 +394,40 @@ public class SingleThreadedConstellation extends Thread {
          * SingleThreadedConstellation, and the activity should be submitted to
          * its wrapper, because this executor may not be able to steal.
          */
-        return wrapper.submit(activity);
+        return wrapper.performSubmit(activity);
+    }
+
+    /**
+     * Submits an activity that matches our context to our own queues rather than those of our executor, so this may be called by
+     * any thread, concurrently with other submits.
+     *
+     * @param activity
+     *            the activity
+     * @return the identifier of the activity.
+     */
+    public ActivityIdentifier performSubmitShared(final Activity activity) {
+
+        final ActivityRecord ar = wrapper.createActivityRecord(activity);
+
+        synchronized (this) {
+            lookup.put(ar.identifier(), ar);
+
+            if (ar.isRestrictedToLocal()) {
+                restricted.enqueue(ar);
+            } else {
+                fresh.enqueue(ar);
+            }
+        }
+
+        signal();
+        workAvailable(ar.getContext());
+
+        return ar.identifier();
     }
 
     public ActivityIdentifierImpl doSubmit(final ActivityRecord ar, final AbstractContext c, final ActivityIdentifierImpl id) {
 
-        if (ContextMatch.match(c, wrapper.getContext())) {
+        if (wrapper.getMatcher().match(c)) {
 
             synchronized (this) {
                 lookup.put(ar.identifier(), ar);
@@ -302,6 +444,8 @@ public class SingleThreadedConstellation extends Thread {
                     fresh.enqueue(ar);
                 }
             }
+
+            workAvailable(c);
         } else {
             deliverWrongContext(ar);
         }
@@ -309,12 +453,279 @@ public class SingleThreadedConstellation extends Thread {
         return id;
     }
 
+    /**
+     * Submits a number of activities to this constellation, which must all match its context, while taking our lock only once.
+     * The activities are put in our queues rather than those of our executor, so we can do this for any thread.
+     *
+     * @param activities
+     *            the activities
+     * @param index
+     *            the positions of the activities to submit in the activities array
+     * @param off
+     *            the offset of the first position in the index array
+     * @param len
+     *            the number of activities
+     * @param ids
+     *            the array to store the identifiers of the activities in, at the same positions
+     */
+    public void performSubmit(final Activity[] activities, final int[] index, final int off, final int len,
+            final ActivityIdentifier[] ids) {
+
+        final ActivityRecord[] records = new ActivityRecord[len];
+
+        for (int i = 0; i < len; i++) {
+            final int j = index[off + i];
+            records[i] = wrapper.createActivityRecord(activities[j]);
+            ids[j] = records[i].identifier();
+        }
+
+        synchronized (this) {
+            for (final ActivityRecord ar : records) {
+                lookup.put(ar.identifier(), ar);
+
+                if (ar.isRestrictedToLocal()) {
+                    restricted.enqueue(ar);
+                } else {
+                    fresh.enqueue(ar);
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Submitted " + len + " jobs in bulk, fresh length now " + fresh.size());
+        }
+
+        signal();
+        workAvailable(records[0].getContext());
+    }
+
     public void performSend(final Event e) {
         logger.error("INTERNAL ERROR: Send not implemented!");
     }
 
-    public void performCancel(final ActivityIdentifier aid) {
-        logger.error("INTERNAL ERROR: Cancel not implemented!");
+    public void performOffload(final ActivityIdentifierImpl target, final Callable<?> task) {
+        offloadPool.submit(this, target, task);
+    }
+
+    public void performAwaitQuiescence() throws InterruptedException {
+        if (parent != null) {
+            parent.getConstellation().awaitQuiescence();
+        } else {
+            quiescence.await();
+        }
+    }
+
+    public void performCancel(final ActivityIdentifierImpl id, final boolean cascade) {
+
+        if (parent != null) {
+            parent.performCancel(id, cascade);
+            return;
+        }
+
+        // On our own, there is nowhere else to look.
+        final CancelRequest r = new CancelRequest(identifier, null, new ActivityIdentifierImpl[] { id }, cascade);
+        cancellation.add(r);
+        deliverCancel(r);
+    }
+
+    /**
+     * Posts a cancel request from above. It is handled by our own thread, as only that thread may touch the activities of our
+     * executor.
+     *
+     * @param r
+     *            the cancel request
+     */
+    public void deliverCancel(final CancelRequest r) {
+        inbox.offer(r);
+        signal();
+    }
+
+    // Marks an activity as cancelled, and adds it to the list. If it has started and the cancellation cascades, the activities it
+    // submitted must be cancelled as well, so it is remembered. Returns the units of work it held.
+    private int cancel(final ActivityRecord ar, final boolean cascade, final ArrayList<ActivityRecord> cancelled,
+            final ArrayList<ActivityIdentifierImpl> started) {
+
+        final boolean hasStarted = ar.hasStarted();
+        final int units = ar.cancel();
+
+        if (units < 0) {
+            return 0;
+        }
+
+        cancelled.add(ar);
+
+        if (hasStarted) {
+            activitiesCancelledStarted++;
+
+            if (cascade) {
+                cancellation.add(ar.identifier(), true);
+                started.add(ar.identifier());
+            }
+        }
+
+        return units;
+    }
+
+    // Does the bookkeeping for activities that have been cancelled, as for activities that are done.
+    private void cancelled(final ArrayList<ActivityRecord> cancelled, final int units, final ArrayList<ActivityIdentifierImpl> started) {
+
+        quiescence.completed(units);
+        backpressure.release(cancelled.size());
+
+        activitiesCancelled += cancelled.size();
+
+        for (final ActivityRecord ar : cancelled) {
+            if (ar.getMoves() > 0) {
+                activityDone(ar);
+            }
+        }
+
+        if (!started.isEmpty() && parent != null) {
+            // Activities they submitted may have been stolen by anyone.
+            parent.handleCancel(
+                    new CancelRequest(identifier, null, started.toArray(new ActivityIdentifierImpl[started.size()]), true));
+        }
+    }
+
+    private void processCancel(final CancelRequest r) {
+
+        final ArrayList<ActivityRecord> cancelled = new ArrayList<ActivityRecord>();
+        final ArrayList<ActivityIdentifierImpl> started = new ArrayList<ActivityIdentifierImpl>();
+        final ArrayList<ActivityIdentifierImpl> missing = new ArrayList<ActivityIdentifierImpl>();
+
+        int units = 0;
+
+        // First the activities of our executor, which only our own thread touches.
+        for (final ActivityIdentifierImpl id : r.activities) {
+            final ActivityRecord ar = wrapper.getActivity(id);
+
+            if (ar != null) {
+                units += cancel(ar, r.cascade, cancelled, started);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (r.cascade) {
+            final ArrayList<ActivityRecord> tmp = new ArrayList<ActivityRecord>();
+            int before;
+
+            // Repeat until no more started activities are cancelled, as their children may also be here.
+            do {
+                before = started.size();
+                tmp.clear();
+                wrapper.getActivities(tmp);
+
+                for (final ActivityRecord ar : tmp) {
+                    if (!ar.isCancelled() && cancellation.cascades(ar.getParent())) {
+                        units += cancel(ar, true, cancelled, started);
+                    }
+                }
+            } while (started.size() > before);
+        }
+
+        if (!cancelled.isEmpty()) {
+            wrapper.removeCancelled(cancelled);
+        }
+
+        // Next the activities in our own queues, which have not started yet. They are marked while we hold our lock, so a thief
+        // that is taking them sees that they have been cancelled, see registerLeavingActivities.
+        final ArrayList<ActivityRecord> queued = new ArrayList<ActivityRecord>();
+
+        synchronized (this) {
+            for (int i = missing.size() - 1; i >= 0; i--) {
+                final ActivityRecord ar = lookup.get(missing.get(i));
+
+                if (ar != null) {
+                    units += cancel(ar, r.cascade, queued, started);
+                    missing.remove(i);
+                }
+            }
+
+            if (r.cascade && !lookup.isEmpty()) {
+                final ArrayList<ActivityRecord> tmp = new ArrayList<ActivityRecord>();
+                lookup.values(tmp);
+
+                for (final ActivityRecord ar : tmp) {
+                    if (!ar.isCancelled() && cancellation.cascades(ar.getParent())) {
+                        units += cancel(ar, true, queued, started);
+                    }
+                }
+            }
+
+            if (!queued.isEmpty()) {
+                for (final ActivityRecord ar : queued) {
+                    lookup.remove(ar.identifier());
+                }
+
+                fresh.removeCancelled();
+                restricted.removeCancelled();
+                stolen.removeCancelled();
+                wrongContext.removeCancelled();
+                restrictedWrongContext.removeCancelled();
+
+                final int size = relocated.size();
+
+                for (int i = 0; i < size; i++) {
+                    final ActivityRecord ar = relocated.removeFirst();
+
+                    if (!ar.isCancelled()) {
+                        relocated.insertLast(ar);
+                    }
+                }
+            }
+        }
+
+        cancelled.addAll(queued);
+        cancelled(cancelled, units, started);
+
+        if (!r.isBroadcast() && parent != null) {
+            // Follow the activities that have left.
+            for (final ActivityIdentifierImpl id : missing) {
+                final ConstellationIdentifierImpl cid = getLocation(id);
+
+                if (cid != null && !cid.equals(identifier)) {
+                    if (parent.handleCancel(new CancelRequest(identifier, cid, new ActivityIdentifierImpl[] { id }, false))) {
+                        cancelsForwarded++;
+                    } else {
+                        cancelsDropped++;
+                    }
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processed " + r + ", cancelled " + cancelled.size() + " activities");
+        }
+    }
+
+    /**
+     * Checks if an activity that our executor is about to run has been cancelled, either while it was queued or on its way here,
+     * or because the activity that submitted it was cancelled. Called by our executor, which drops the activity if so.
+     *
+     * @param ar
+     *            the activity
+     * @return whether the activity has been cancelled.
+     */
+    boolean cancelDequeued(final ActivityRecord ar) {
+
+        if (ar.isCancelled()) {
+            // Whoever cancelled it did the bookkeeping.
+            return true;
+        }
+
+        final Boolean cascade = cancellation.mustCancel(ar);
+
+        if (cascade == null) {
+            return false;
+        }
+
+        final ArrayList<ActivityRecord> cancelled = new ArrayList<ActivityRecord>(1);
+        final ArrayList<ActivityIdentifierImpl> started = new ArrayList<ActivityIdentifierImpl>();
+
+        final int units = cancel(ar, cascade.booleanValue(), cancelled, started);
+        cancelled(cancelled, units, started);
+        return true;
     }
 
     public boolean performActivate() {
@@ -338,9 +749,9 @@ public class SingleThreadedConstellation extends Thread {
         }
 
         done = true;
-        havePendingRequests = true;
-        notifyAll();
+        signal();
         if (parent == null) {
+            offloadPool.shutdown();
             return;
         }
         while (!seenDone) {
@@ -373,28 +784,55 @@ public class SingleThreadedConstellation extends Thread {
         return trim(result, count);
     }
 
+    private int steal(final WorkQueue queue, final AbstractContext context, final StealStrategy s, final ActivityRecord[] result,
+            final int offset, final int size) {
+        if (stealHalf) {
+            return queue.stealHalf(context, s, result, offset, size);
+        }
+        return queue.steal(context, s, result, offset, size);
+    }
+
     private int localSteal(final AbstractContext context, final StealStrategy s, final ActivityRecord[] result, final int o, final int size) {
         int offset = o;
         if (offset < size) {
-            offset += restrictedWrongContext.steal(context, s, result, offset, size - offset);
+            offset += steal(restrictedWrongContext, context, s, result, offset, size - offset);
         }
 
         if (offset < size) {
-            offset += restricted.steal(context, s, result, offset, size - offset);
+            offset += steal(restricted, context, s, result, offset, size - offset);
         }
 
         if (offset < size) {
-            offset += stolen.steal(context, s, result, offset, size - offset);
+            offset += steal(stolen, context, s, result, offset, size - offset);
         }
 
         return offset;
     }
 
-    public synchronized int attemptSteal(final ActivityRecord[] tmp, final AbstractContext context, final StealStrategy s, final StealPool pool,
+    /**
+     * Returns the highest priority of the activities a thief may take from our queues, or <code>Integer.MIN_VALUE</code> if
+     * there are none. As the queues change concurrently, and contexts are not taken into account, this is only a hint.
+     *
+     * @param local
+     *            whether the thief is a peer from our own constellation, which may also take restricted or stolen activities
+     * @return the highest priority.
+     */
+    int highestPriority(final boolean local) {
+
+        int result = Math.max(wrongContext.highestPriority(), fresh.highestPriority());
+
+        if (local) {
+            result = Math.max(result, Math.max(restrictedWrongContext.highestPriority(),
+                    Math.max(restricted.highestPriority(), stolen.highestPriority())));
+        }
+
+        return result;
+    }
+
+    public int attemptSteal(final ActivityRecord[] tmp, final AbstractContext context, final StealStrategy s, final StealPool pool,
             final ConstellationIdentifierImpl src, final int size, final boolean local) {
 
         // attempted steal request from parent. Expects an immediate reply
-        steals++;
 
         // sanity check
         if (src.equals(identifier)) {
@@ -404,11 +842,18 @@ public class SingleThreadedConstellation extends Thread {
 
         if (!pool.overlap(wrapper.belongsTo())) {
             logger.info("attemptSteal: wrong pool!");
+            synchronized (this) {
+                steals++;
+            }
             return 0;
         }
 
+        // The queues are thread safe by themselves, so we do not hold our own lock while stealing from them. This way, a thief
+        // does not block us while we submit or dequeue work. Until the activities are registered as leaving below, they can
+        // still be found in lookup, so events for them are not lost.
+
         // First steal from the activities that I cannot run myself.
-        final int fromWrong = wrongContext.steal(context, s, tmp, 0, size);
+        final int fromWrong = steal(wrongContext, context, s, tmp, 0, size);
         int offset = fromWrong;
 
         if (local && offset < size) {
@@ -420,13 +865,28 @@ public class SingleThreadedConstellation extends Thread {
         // Anyone may steal a fresh job
         int fromFresh = 0;
         if (offset < size) {
-            fromFresh = fresh.steal(context, s, tmp, offset, size - offset);
+            fromFresh = steal(fresh, context, s, tmp, offset, size - offset);
             offset += fromFresh;
         }
 
-        if (offset == 0) {
-            // steal failed, no activities stolen
-            return 0;
+        synchronized (this) {
+            steals++;
+
+            if (offset == 0) {
+                // steal failed, no activities stolen
+                return 0;
+            }
+
+            // Next, remove activities from lookup, and mark and register them as
+            // relocated or stolen/exported
+            offset = registerLeavingActivities(tmp, offset, src, local);
+
+            if (offset == 0) {
+                return 0;
+            }
+
+            stolenJobs += offset;
+            stealSuccess++;
         }
 
         if (logger.isDebugEnabled()) {
@@ -434,32 +894,50 @@ public class SingleThreadedConstellation extends Thread {
                     + " from fresh");
         }
 
-        // Next, remove activities from lookup, and mark and register them as
-        // relocated or stolen/exported
-        registerLeavingActivities(tmp, offset, src, local);
-
-        stolenJobs += offset;
-        stealSuccess++;
-
         return offset;
     }
 
-    private synchronized void registerLeavingActivities(final ActivityRecord[] ar, final int len, final ConstellationIdentifierImpl dest,
+    private synchronized int registerLeavingActivities(final ActivityRecord[] ar, final int len, final ConstellationIdentifierImpl dest,
             final boolean isLocal) {
 
+        int leaving = 0;
+        int count = 0;
+
         for (int i = 0; i < len; i++) {
-            if (ar[i] != null) {
-                lookup.remove(ar[i].identifier());
+            final ActivityRecord tmp = ar[i];
+            ar[i] = null;
 
-                if (isLocal) {
-                    ar[i].setRelocated(true);
-                    relocatedActivities.put(ar[i].identifier(), dest);
-                } else {
-                    ar[i].setStolen(true);
-                    exportedActivities.put(ar[i].identifier(), dest);
+            // An activity may have been cancelled after it was taken from our queues, in which case it stays here.
+            if (tmp != null && !tmp.isCancelled()) {
+                ar[count++] = tmp;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            lookup.remove(ar[i].identifier());
+
+            final int moves = ar[i].addMove(identifier);
+
+            // No-one will look for an activity that does not expect events, so don't remember where it went.
+            final boolean remember = ar[i].identifier().expectsEvents();
+
+            if (isLocal) {
+                ar[i].setRelocated(true);
+                if (remember) {
+                    relocatedActivities.put(ar[i].identifier(), new Location(dest, moves));
+                }
+            } else {
+                ar[i].setStolen(true);
+                if (remember) {
+                    exportedActivities.put(ar[i].identifier(), new Location(dest, moves));
                 }
+                leaving++;
             }
         }
+
+        // Activities that leave this node no longer count as outstanding here.
+        backpressure.release(leaving);
+        return count;
     }
 
     public void deliverStealRequest(final StealRequest sr) {
@@ -505,18 +983,25 @@ public class SingleThreadedConstellation extends Thread {
             return true;
         }
 
-        // Else: try to push one restricted activity to our executor
-        if (pushWorkFromQueue(restricted, s)) {
-            return true;
+        // Else: try to push one restricted, stolen or fresh activity to our executor, in that order, unless a later queue holds
+        // an activity of higher priority.
+        WorkQueue queue = restricted;
+
+        if (stolen.highestPriority() > queue.highestPriority()) {
+            queue = stolen;
         }
 
-        // Else: try to push one stolen activity to our executor
-        if (pushWorkFromQueue(stolen, s)) {
+        if (fresh.highestPriority() > queue.highestPriority()) {
+            queue = fresh;
+        }
+
+        if (pushWorkFromQueue(queue, s)) {
             return true;
         }
 
-        // Else: try to push one fresh activity to our executor
-        return pushWorkFromQueue(fresh, s);
+        // The queue we picked may not have had anything that matches, so also try the others.
+        return (queue != restricted && pushWorkFromQueue(restricted, s)) || (queue != stolen && pushWorkFromQueue(stolen, s))
+                || (queue != fresh && pushWorkFromQueue(fresh, s));
     }
 
     public void deliverStealReply(final StealReply sr) {
@@ -526,15 +1011,44 @@ public class SingleThreadedConstellation extends Thread {
             return;
         }
 
+        inbox.offer(sr);
+        signal();
+    }
+
+    private void processStealReply(final StealReply sr) {
+
         // If we get a non-empty steal reply, we simply enqueue it locally.
         final ActivityRecord[] tmp = sr.getWork();
 
         remoteStolen += tmp.length;
 
+        int arriving = 0;
+        LocationUpdate[] updates = null;
+        int updateCount = 0;
+
         synchronized (this) {
 
             for (final ActivityRecord a : tmp) {
                 if (a != null) {
+                    if (!a.isRelocated()) {
+                        arriving++;
+                    }
+
+                    if (a.identifier().expectsEvents()) {
+                        // If it has been here before, we no longer need to know where it went.
+                        exportedActivities.remove(a.identifier());
+                        relocatedActivities.remove(a.identifier());
+
+                        if (!a.identifier().isFrom(identifier) && !a.identifier().isFrom(sr.source) && parent != null) {
+                            // The origin forwards its events to the constellation it came from, which would have to forward them
+                            // to us, so tell the origin where it is now.
+                            if (updates == null) {
+                                updates = new LocationUpdate[tmp.length];
+                            }
+                            updates[updateCount++] = new LocationUpdate(identifier, a.identifier(), a.getMoves());
+                        }
+                    }
+
                     // two options here: either the job is stolen (from a remote
                     // constellation) or
                     // relocated (from a peer in our local constellation).
@@ -553,59 +1067,178 @@ public class SingleThreadedConstellation extends Thread {
                     } else {
                         stolen.enqueue(a);
                     }
-                    signal();
                 }
             }
         }
+
+        backpressure.arrived(arriving);
+
+        for (int i = 0; i < updateCount; i++) {
+            parent.handleLocationUpdate(updates[i]);
+        }
+
+        locationUpdatesSent += updateCount;
     }
 
-    public synchronized ConstellationIdentifierImpl deliverEventMessage(final EventMessage m) {
-        // A message from above. The target must be local (in one of my queues,
-        // or in the queues of the executor) or its new location must be known
-        // locally.
-        //
-        // POSSIBLE RACE CONDITIONS:
-        //
-        // 1) When the message overtakes a steal request, it may arrive before
-        // the activity has arrived. As a result, the activity cannot be found
-        // here yet.
-        //
-        // 2) The activity may be registered in relocated or exported but
-        // a) it may not have arrived at the destination yet
-        // b) it may about to be reclaimed because the target could not be
-        // reached
-        //
-        // When the message can be delivered, null is returned. When not, the
-        // constellation identifier where it should be sent instead is returned.
-
-        final Event e = m.event;
-        final ActivityIdentifierImpl target = (ActivityIdentifierImpl) e.getTarget();
+    /**
+     * Deals with a location update for an activity that was created here. If the update is newer than what we know, events for the
+     * activity are forwarded to its new location from now on.
+     *
+     * @param u
+     *            the location update
+     */
+    private synchronized void processLocationUpdate(final LocationUpdate u) {
 
-        final ActivityRecord tmp = lookup.get(target);
+        final ActivityIdentifierImpl id = u.activity;
 
-        if (tmp != null) {
-            // We found the destination activity and enqueue the event for it.
-            tmp.enqueue(e);
-            return null;
+        Location l = exportedActivities.get(id);
+
+        if (l == null) {
+            l = relocatedActivities.get(id);
+        }
+
+        if (l == null || l.moves >= u.moves) {
+            // Either the activity is back, or the update was overtaken by a newer one.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Ignoring " + u);
+            }
+            return;
+        }
+
+        exportedActivities.remove(id);
+        relocatedActivities.remove(id);
+
+        if (u.source.getNodeId() == identifier.getNodeId()) {
+            relocatedActivities.put(id, new Location(u.source, u.moves));
+        } else {
+            exportedActivities.put(id, new Location(u.source, u.moves));
+        }
+
+        locationUpdatesApplied++;
+    }
+
+    /**
+     * Posts a location update from above. It is handled by our own thread the next time it looks at its inbox. We don't wake it up,
+     * as the update is not urgent: until then, events still reach the activity, only along a longer path.
+     *
+     * @param u
+     *            the location update
+     */
+    public void deliverLocationUpdate(final LocationUpdate u) {
+        inbox.offer(u);
+    }
+
+    /**
+     * Called by our executor when an activity that expects events is done. The constellations that it left are told so, in batches,
+     * so they can forget where they sent it.
+     *
+     * @param ar
+     *            the activity record
+     */
+    void activityDone(final ActivityRecord ar) {
+
+        final ConstellationIdentifierImpl[] hops = ar.getHops();
+
+        if (hops == null || parent == null) {
+            return;
+        }
+
+        for (final ConstellationIdentifierImpl cid : hops) {
+
+            if (cid.equals(identifier)) {
+                // It came back here, and we already forgot about it.
+                continue;
+            }
+
+            ArrayList<ActivityIdentifierImpl> list = tombstones.get(cid);
+
+            if (list == null) {
+                list = new ArrayList<ActivityIdentifierImpl>();
+                tombstones.put(cid, list);
+            }
+
+            list.add(ar.identifier());
+            pendingTombstones++;
+        }
+
+        if (pendingTombstones >= TOMBSTONE_BATCH) {
+            flushTombstones();
+        }
+    }
+
+    private void flushTombstones() {
+
+        if (pendingTombstones == 0) {
+            return;
+        }
+
+        for (final Map.Entry<ConstellationIdentifierImpl, ArrayList<ActivityIdentifierImpl>> e : tombstones.entrySet()) {
+            final ArrayList<ActivityIdentifierImpl> list = e.getValue();
+            parent.handleTombstones(new Tombstones(identifier, e.getKey(), list.toArray(new ActivityIdentifierImpl[list.size()])));
+        }
+
+        tombstonesSent += pendingTombstones;
+        tombstones.clear();
+        pendingTombstones = 0;
+    }
+
+    private synchronized void processTombstones(final Tombstones t) {
+        for (final ActivityIdentifierImpl id : t.activities) {
+            if (exportedActivities.remove(id) != null || relocatedActivities.remove(id) != null) {
+                tombstonesApplied++;
+            }
+        }
+    }
+
+    /**
+     * Posts tombstones from above. Like location updates, they are not urgent, so we don't wake up our thread for them.
+     *
+     * @param t
+     *            the tombstones
+     */
+    public void deliverTombstones(final Tombstones t) {
+        inbox.offer(t);
+    }
+
+    // Returns the constellation an activity that left us went to, or null if we don't know it. The location tables are
+    // concurrent, so this does not need our lock.
+    private ConstellationIdentifierImpl getLocation(final ActivityIdentifierImpl id) {
+
+        Location l = exportedActivities.get(id);
+
+        if (l == null) {
+            l = relocatedActivities.get(id);
+        }
+
+        return l == null ? null : l.cid;
+    }
+
+    public void deliverEventMessage(final EventMessage m) {
+        // A message from above. The target should be local (in one of my queues, or in the queues of the executor), but it may
+        // also have been relocated or stolen, or not have arrived yet. If we know it has left, we pass the message on right away,
+        // so it does not wait until our thread is done with its current activity. Otherwise we leave it to our own thread to find
+        // out, see processRemoteMessages, so the caller never has to wait for our lock.
+        if (!forwardIfGone(m)) {
+            postEventMessage(m);
         }
+    }
 
-        // If not, it may have been relocated
-        ConstellationIdentifierImpl cid = relocatedActivities.get(target);
+    // Passes a message from above on to where its target went, if it has been exported or relocated. The location tables are
+    // concurrent, so this does not need our lock.
+    private boolean forwardIfGone(final EventMessage m) {
 
-        if (cid != null) {
-            return cid;
+        if (parent == null) {
+            return false;
         }
 
-        // If not, it may have been stolen
-        cid = exportedActivities.get(target);
+        final ConstellationIdentifierImpl cid = getLocation((ActivityIdentifierImpl) m.event.getTarget());
 
-        if (cid != null) {
-            return cid;
+        if (cid == null) {
+            return false;
         }
 
-        // If not, it should be in the queue of my executor
-        postEventMessage(m);
-        return null;
+        parent.handleEventMessage(new EventMessage(identifier, cid, m.event));
+        return true;
     }
 
     public boolean isMaster() {
@@ -623,7 +1256,7 @@ public class SingleThreadedConstellation extends Thread {
         synchronized (this) {
 
             // See if the activity is in one of our queues
-            final ActivityRecord tmp = lookup.get(e.getTarget());
+            final ActivityRecord tmp = lookup.get(target);
 
             if (tmp != null) {
                 // It is, so enqueue it and return.
@@ -631,35 +1264,96 @@ public class SingleThreadedConstellation extends Thread {
                 return;
             }
 
-            // See if we have exported it somewhere
-            cid = exportedActivities.get(target);
+            // See if we have exported or relocated it somewhere
+            cid = getLocation(target);
+        }
 
-            if (cid == null) {
-                // If not, it may have been relocated
-                cid = relocatedActivities.get(target);
+        if (cid == null) {
+            if (target.isFrom(identifier)) {
+                // the target is local, which means we have lost a local activity
+                dropEvent(target);
+                return;
             }
 
-            if (cid == null) {
-                // If not, we simply send the event to the parent
-                cid = target.getOrigin();
+            // If not, we simply send the event to the parent
+            cid = target.getOrigin();
+        }
+
+        parent.handleEventMessage(new EventMessage(identifier, cid, e));
+    }
+
+    /**
+     * Deals with a number of events pushed up by our executor, which does not contain their target activities. All events are
+     * looked up while holding our lock once, and the ones that must leave this constellation are passed to our parent together.
+     *
+     * @param events
+     *            the events
+     * @param count
+     *            the number of events in the array
+     */
+    public void handleEvents(final Event[] events, final int count) {
+
+        final EventMessage[] messages = new EventMessage[count];
+        int forward = 0;
+
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+
+                final Event e = events[i];
+                final ActivityIdentifierImpl target = (ActivityIdentifierImpl) e.getTarget();
+
+                final ActivityRecord tmp = lookup.get(target);
+
+                if (tmp != null) {
+                    tmp.enqueue(e);
+                    continue;
+                }
+
+                ConstellationIdentifierImpl cid = getLocation(target);
+
+                if (cid == null) {
+                    if (target.isFrom(identifier)) {
+                        dropEvent(target);
+                        continue;
+                    }
+
+                    cid = target.getOrigin();
+                }
+
+                messages[forward++] = new EventMessage(identifier, cid, e);
             }
         }
 
-        if (cid.equals(identifier)) {
-            // the target is local, which means we have lost a local activity
-            logger.error("Activity " + e.getTarget() + " does no longer exist! (event dropped)");
-            return;
+        if (forward > 0) {
+            parent.handleEventMessages(messages, forward);
         }
+    }
 
-        parent.handleEventMessage(new EventMessage(identifier, cid, e));
+    private void dropEvent(final ActivityIdentifierImpl target) {
+
+        if (cancellation.isCancelled(target)) {
+            // Activities keep sending events to a cancelled activity until they are cancelled themselves.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Activity " + target + " was cancelled (event dropped)");
+            }
+            eventsDropped++;
+        } else {
+            logger.error("Activity " + target + " does no longer exist! (event dropped)");
+        }
+
+        quiescence.completed(1);
     }
 
-    public synchronized final void signal() {
+    public final void signal() {
         havePendingRequests = true;
-        notifyAll();
+
+        // Both fields are volatile, so either we see that our thread is parked, or it sees the pending request before parking.
+        if (parked) {
+            LockSupport.unpark(this);
+        }
     }
 
-    private synchronized void postStealRequest(final StealRequest s) {
+    private void postStealRequest(final StealRequest s) {
 
         // sanity check
         if (s.source.equals(identifier)) {
@@ -667,28 +1361,40 @@ public class SingleThreadedConstellation extends Thread {
             return;
         }
 
-        if (logger.isTraceEnabled()) {
-            final StealRequest tmp = incoming.stealRequests.get(s.source);
-
-            if (tmp != null) {
-                logger.trace("Steal request overtaken: " + s.source);
-            }
-        }
-
-        incoming.stealRequests.put(s.source, s);
-
+        inbox.offer(s);
         signal();
     }
 
-    private synchronized void postEventMessage(final EventMessage m) {
-        incoming.deliveredApplicationMessages.add(m);
+    private void postEventMessage(final EventMessage m) {
+        inbox.offer(m);
         signal();
     }
 
-    private synchronized boolean getDone() {
+    /**
+     * Posts a message from above, like {@link #deliverEventMessage(EventMessage)}, but without waking up our thread. The caller
+     * must call {@link #signal()} once it has posted all messages.
+     *
+     * @param m
+     *            the event message
+     * @return <code>false</code> if the message was passed on right away, as its target has left, <code>true</code> if it was
+     *         posted.
+     */
+    boolean queueEventMessage(final EventMessage m) {
+
+        if (forwardIfGone(m)) {
+            return false;
+        }
+
+        inbox.offer(m);
+        return true;
+    }
+
+    private boolean getDone() {
         if (done) {
-            seenDone = true;
-            notifyAll();
+            synchronized (this) {
+                seenDone = true;
+                notifyAll();
+            }
             return true;
         }
         if (logger.isTraceEnabled()) {
@@ -697,21 +1403,59 @@ public class SingleThreadedConstellation extends Thread {
         return false;
     }
 
-    private synchronized void swapEventQueues() {
+    private void drainInbox() {
+        drainInbox(false);
+    }
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Processing events while idle!\n" + incoming.toString() + "\n" + processing.toString());
-        }
+    private void drainInbox(final boolean blocked) {
 
-        final PendingRequests tmp = incoming;
-        incoming = processing;
-        processing = tmp;
-        // NOTE: havePendingRequests needs to be set here to prevent a gap
-        // between doing the swap + setting it to false. Another submit
-        // could potentially use this gap to insert a new event. This would
-        // lead to a race condition!
-        // But it is probably better to only reset it if done is not set?
+        // NOTE: havePendingRequests needs to be reset before draining the inbox. Otherwise, a message that is posted while we
+        // drain could be missed until the next signal.
         havePendingRequests = done;
+
+        if (!blocked && !deferredCancels.isEmpty()) {
+            for (final CancelRequest r : deferredCancels) {
+                processCancel(r);
+            }
+            deferredCancels.clear();
+        }
+
+        AbstractMessage m = inbox.poll();
+
+        while (m != null) {
+            if (m instanceof EventMessage) {
+                processing.deliveredApplicationMessages.add((EventMessage) m);
+            } else if (m instanceof StealRequest) {
+                final StealRequest sr = (StealRequest) m;
+
+                if (logger.isTraceEnabled() && processing.stealRequests.containsKey(sr.source)) {
+                    logger.trace("Steal request overtaken: " + sr.source);
+                }
+
+                processing.stealRequests.put(sr.source, sr);
+            } else if (m instanceof Tombstones) {
+                processTombstones((Tombstones) m);
+            } else if (m instanceof LocationUpdate) {
+                // Handle location updates right away, so events that follow them are forwarded to the new location.
+                processLocationUpdate((LocationUpdate) m);
+            } else if (m instanceof CancelRequest) {
+                if (blocked) {
+                    // The activity that is running may be among the ones to cancel.
+                    deferredCancels.add((CancelRequest) m);
+                } else {
+                    processCancel((CancelRequest) m);
+                }
+            } else {
+                // Handle steal replies right away, so events that follow them in the inbox find their target.
+                processStealReply((StealReply) m);
+            }
+
+            m = inbox.poll();
+        }
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Processing events while idle!\n" + processing.toString());
+        }
     }
 
     private void processRemoteMessages() {
@@ -719,8 +1463,8 @@ public class SingleThreadedConstellation extends Thread {
             if (!wrapper.queueEvent(m.event)) {
                 // Failed to deliver event locally. Check if the activity is
                 // now in one of the local queues. If not, return to parent.
-                if (logger.isInfoEnabled()) {
-                    logger.info("Failed to deliver message from " + m.source + " / " + m.event.getSource() + " to " + m.target
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to deliver message from " + m.source + " / " + m.event.getSource() + " to " + m.target
                             + " / " + m.event.getTarget() + " (resending)");
                 }
 
@@ -756,9 +1500,10 @@ public class SingleThreadedConstellation extends Thread {
                     // We should unset the stolen flag if an activity is returned.
                     ar.setStolen(false);
                     exportedActivities.remove(ar.identifier());
+                    backpressure.arrived(1);
                 }
 
-                if (ContextMatch.match(c, wrapper.getContext())) {
+                if (wrapper.getMatcher().match(c)) {
 
                     synchronized (this) {
                         lookup.put(ar.identifier(), ar);
@@ -820,31 +1565,67 @@ public class SingleThreadedConstellation extends Thread {
     }
 
     private void processEvents() {
-        swapEventQueues();
+        drainInbox();
         processRemoteMessages();
         processStealRequests();
     }
 
-    private synchronized boolean pauseUntil(final long deadline) {
+    /**
+     * Answers steal requests while our executor is blocked in a submit, waiting for backpressure. Our peers may be waiting for the
+     * work we have queued, and finishing it is what makes room. As an activity is running, events and cancel requests are left
+     * until it returns.
+     */
+    private void processWhileBlocked() {
+
+        if (!havePendingRequests || done) {
+            return;
+        }
+
+        drainInbox(true);
+        processStealRequests();
+
+        if (!processing.deliveredApplicationMessages.isEmpty() || !deferredCancels.isEmpty()) {
+            // Make sure they are handled as soon as the activity returns.
+            havePendingRequests = true;
+        }
+    }
+
+    /**
+     * Returns the task our executor runs while it is blocked in a submit, see {@link Backpressure#acquire(boolean, Runnable)}.
+     *
+     * @return the task.
+     */
+    Runnable getWhileBlocked() {
+        return whileBlocked;
+    }
+
+    private boolean pauseUntil(final long deadline) {
 
         long pauseTime = deadline - System.currentTimeMillis();
 
+        parked = true;
+
         while (pauseTime > 0 && !havePendingRequests) {
-            try {
-                wait(pauseTime);
-            } catch (final Throwable e) {
-                // ignored
-            }
-            if (!havePendingRequests) {
-                pauseTime = deadline - System.currentTimeMillis();
-            } else {
-                pauseTime = 0;
-            }
+            LockSupport.parkNanos(this, pauseTime * 1000000L);
+            pauseTime = deadline - System.currentTimeMillis();
         }
 
+        parked = false;
+
         return havePendingRequests;
     }
 
+    private void parkNanos(final long nanos) {
+
+        parked = true;
+
+        if (!havePendingRequests) {
+            LockSupport.parkNanos(this, nanos);
+        }
+
+        parked = false;
+    }
+
     private long stealAllowed() {
 
         if (stealDelay > 0) {
@@ -885,53 +1666,107 @@ public class SingleThreadedConstellation extends Thread {
                 logger.debug("Added job to wrongContext queue; length = " + wrongContext.size());
             }
         }
+
+        workAvailable(a.getContext());
+    }
+
+    /**
+     * Tells our parent that we have queued work with the specified context, so it can wake up an idle peer to steal it.
+     *
+     * @param c
+     *            the context of the work
+     */
+    void workAvailable(final AbstractContext c) {
+        if (parent != null) {
+            parent.workAvailable(this, c);
+        }
+    }
+
+    /**
+     * Called by our parent when a peer has queued work we can steal. We then attempt a steal right away, instead of waiting
+     * for our steal deadline.
+     */
+    void wakeForWork() {
+        workNotified = true;
+        signal();
+    }
+
+    private void setIdle() {
+        if (!registeredIdle) {
+            parent.setIdle(rank);
+            registeredIdle = true;
+        }
     }
 
-    private synchronized void waitForRequest() {
+    private void clearIdle() {
+        if (registeredIdle) {
+            parent.clearIdle(rank);
+            registeredIdle = false;
+        }
+    }
+
+    private void waitForRequest() {
+
+        parked = true;
+
         while (!havePendingRequests) {
-            try {
-                wait();
-            } catch (final Throwable e) {
-                // ignore
-            }
+            LockSupport.park(this);
             if (logger.isDebugEnabled()) {
                 logger.debug("Woke up in processActivities");
             }
         }
+
+        parked = false;
     }
 
     // An Activity.processActivities call ultimately ends up here.
     // We should make progress on each call, either by processing requests, or by doing work.
     // Either that, or we should sleep for a while.
     public boolean processActivities() {
-        boolean haveRequests = false;
-        synchronized (this) {
-            if (havePendingRequests) {
-                if (getDone()) {
-                    return true;
-                }
-                haveRequests = true;
+        if (havePendingRequests) {
+            if (getDone()) {
+                return true;
             }
-        }
-        if (haveRequests) {
             processEvents();
         }
 
         if (wrapper.process() || pushWorkToExecutor(wrapper.getLocalStealStrategy())) {
             // Either we processed an activity, or we pushed one to the wrapper.
+            if (idleStrategy != null) {
+                idleStrategy.reset();
+            }
+            clearIdle();
             return false;
         }
 
+        // We ran out of work, so this is a good time to send the tombstones we collected, and to forget old cancellations.
+        flushTombstones();
+        cancellation.expire();
+
         if (parent == null || stealsFrom() == StealPool.NONE) {
             // Cannot steal, either because there is no-one to steal from, or because of the NONE stealpool.
             waitForRequest();
             return getDone();
         }
 
+        if (workNotified) {
+            // A peer has work for us, so don't wait for the steal deadline.
+            workNotified = false;
+            resetStealDeadline();
+        }
+
+        // Register before the steal attempt, so that work queued after the attempt will wake us up.
+        setIdle();
+
+        if (idleStrategy != null) {
+            idle();
+            return false;
+        }
+
         final long nextDeadline = stealAllowed();
 
         if (nextDeadline == 0) {
-            stealFromParent();
+            stealFromParent(true);
         } else {
             pauseUntil(nextDeadline);
         }
@@ -939,7 +1774,25 @@ public class SingleThreadedConstellation extends Thread {
         return false;
     }
 
-    private void stealFromParent() {
+    // The "spin" idle strategy: we try to steal from our peers on every call, but only send steal requests once per steal delay,
+    // so we do not flood our peers and the network with them. In between, we spin, yield or park for a growing period.
+    private void idle() {
+
+        if (stealFromParent(stealAllowed() == 0)) {
+            idleStrategy.reset();
+            return;
+        }
+
+        final long next = idleStrategy.next();
+
+        if (next == IdleStrategy.YIELD) {
+            Thread.yield();
+        } else if (next != IdleStrategy.SPIN) {
+            parkNanos(next);
+        }
+    }
+
+    private boolean stealFromParent(final boolean sendRequests) {
 
         int evnt = 0;
         if (PROFILE_STEALS) {
@@ -949,7 +1802,7 @@ public class SingleThreadedConstellation extends Thread {
             if (logger.isTraceEnabled()) {
                 logger.trace("GENERATING STEAL REQUEST at " + identifier + " with context " + getContext());
             }
-            final ActivityRecord[] result = parent.handleStealRequest(this, stealSize);
+            final ActivityRecord[] result = parent.handleStealRequest(this, stealSize, sendRequests);
 
             if (result != null) {
                 boolean more = false;
@@ -962,9 +1815,12 @@ public class SingleThreadedConstellation extends Thread {
                 if (more) {
                     // ignore steal deadline when we are successful!
                     resetStealDeadline();
+                    return true;
                 }
             }
 
+            return false;
+
         } finally {
             if (PROFILE_STEALS) {
                 stealTimer.stop(evnt);
@@ -991,6 +1847,7 @@ public class SingleThreadedConstellation extends Thread {
         final double messagesTime = wrapper.getMessagesTimer().totalTimeVal() / 1000.0;
 
         final long activitiesSubmitted = wrapper.getActivitiesSubmitted();
+        final long activitiesInlined = wrapper.getActivitiesInlined();
 
         final long wrongContextSubmitted = wrapper.getWrongContextSubmitted();
 
@@ -1032,6 +1889,7 @@ public class SingleThreadedConstellation extends Thread {
 
             out.println(" Activities");
             out.println("   submitted       : " + activitiesSubmitted);
+            out.println("   inlined         : " + activitiesInlined);
             if (PROFILE) {
                 out.println("   invoked         : " + activitiesInvoked + " (" + fact + " /act)");
             }
@@ -1045,6 +1903,26 @@ public class SingleThreadedConstellation extends Thread {
             out.println("   success         : " + stealSuccessIn);
             out.println("   stolenFromMe    : " + stolen);
             out.println("   stolenfromRemote: " + remoteStolen);
+            out.println(" Location updates");
+            out.println("   sent            : " + locationUpdatesSent);
+            out.println("   applied         : " + locationUpdatesApplied);
+            out.println(" Tombstones");
+            out.println("   sent            : " + tombstonesSent);
+            out.println("   applied         : " + tombstonesApplied);
+            out.println("   still forwarding: " + (exportedActivities.size() + relocatedActivities.size()));
+            out.println(" Cancelled");
+            out.println("   activities      : " + activitiesCancelled);
+            out.println("   had started     : " + activitiesCancelledStarted);
+            out.println("   forwarded       : " + cancelsForwarded);
+            out.println("   dropped         : " + cancelsDropped);
+            out.println("   events dropped  : " + eventsDropped);
+            if (parent == null) {
+                // We are the whole node. Otherwise, our parent prints the node statistics, once.
+                if (backpressure.isEnabled()) {
+                    backpressure.printStatistics(out);
+                }
+                offloadPool.printStatistics(out);
+            }
         }
 
         out.flush();
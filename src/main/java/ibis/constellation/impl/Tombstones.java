@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import java.util.Arrays;
+
+/**
+ * <code>Tombstones</code> tell a constellation that a number of activities that once left it are done. The constellation then
+ * forgets where it sent them, so its tables of exported and relocated activities only hold activities that are still alive.
+ */
+public class Tombstones extends AbstractMessage {
+
+    private static final long serialVersionUID = 7381120548716432019L;
+
+    public final ActivityIdentifierImpl[] activities;
+
+    public Tombstones(final ConstellationIdentifierImpl source, final ConstellationIdentifierImpl target,
+            final ActivityIdentifierImpl[] activities) {
+
+        super(source, target);
+
+        if (activities == null || activities.length == 0) {
+            throw new IllegalArgumentException("Tombstones must contain at least one activity");
+        }
+
+        this.activities = activities;
+    }
+
+    public int size() {
+        return activities.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Tombstones: " + Arrays.toString(activities);
+    }
+}
@@ -28,11 +28,15 @@ import org.slf4j.LoggerFactory;
 import ibis.constellation.ConstellationProperties;
 import ibis.constellation.StealPool;
 import ibis.constellation.impl.AbstractMessage;
+import ibis.constellation.impl.CancelRequest;
 import ibis.constellation.impl.ConstellationIdentifierImpl;
 import ibis.constellation.impl.DistributedConstellation;
+import ibis.constellation.impl.EventBatch;
 import ibis.constellation.impl.EventMessage;
+import ibis.constellation.impl.LocationUpdate;
 import ibis.constellation.impl.StealReply;
 import ibis.constellation.impl.StealRequest;
+import ibis.constellation.impl.Tombstones;
 import ibis.constellation.impl.pool.communication.CommunicationLayer;
 import ibis.constellation.impl.pool.communication.Message;
 import ibis.constellation.impl.pool.communication.NodeIdentifier;
@@ -47,6 +51,15 @@ public class Pool {
     private static final byte OPCODE_EVENT_MESSAGE = 10;
     private static final byte OPCODE_STEAL_REQUEST = 11;
     private static final byte OPCODE_STEAL_REPLY = 12;
+    private static final byte OPCODE_EVENT_BATCH = 13;
+    private static final byte OPCODE_LOCATION_UPDATE = 14;
+    private static final byte OPCODE_TOMBSTONES = 15;
+    private static final byte OPCODE_QUIESCENCE_REQUEST = 16;
+    private static final byte OPCODE_QUIESCENCE_REPLY = 17;
+    private static final byte OPCODE_QUIESCENCE_WAIT = 18;
+    private static final byte OPCODE_QUIESCENCE_DONE = 19;
+    private static final byte OPCODE_CANCEL = 20;
+    private static final byte OPCODE_CANCEL_RELAY = 21;
 
     private static final byte OPCODE_POOL_REGISTER_REQUEST = 43;
     private static final byte OPCODE_POOL_UPDATE_REQUEST = 44;
@@ -86,6 +99,36 @@ public class Pool {
 
     private final TimeSyncInfo syncInfo;
 
+    // Runs the quiescence waves on the master.
+    private final QuiescenceDetector detector = new QuiescenceDetector() {
+
+        @Override
+        protected int requestCounts(long wave) {
+
+            int count = 0;
+
+            for (NodeIdentifier id : getNodes()) {
+                if (!id.equals(local)) {
+                    if (!doForward(id, OPCODE_QUIESCENCE_REQUEST, new Long(wave))) {
+                        return -1;
+                    }
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        @Override
+        protected long[] getLocalCounts() {
+            return owner.getQuiescence().getCounts();
+        }
+    };
+
+    // The requests for quiescence detection sent to the master, and the highest one it has answered.
+    private long quiescenceRequests;
+    private long quiescenceDone;
+
     class PoolUpdater extends Thread {
 
         private static final long MIN_DELAY = 1000;
@@ -430,6 +473,72 @@ public class Pool {
         return forward(em, OPCODE_EVENT_MESSAGE);
     }
 
+    /**
+     * Sends a batch of event messages in a single message. All messages in the batch must target constellations on the same node.
+     *
+     * @param batch
+     *            the batch of event messages
+     * @return <code>false</code> if the batch could not be sent, <code>true</code> otherwise.
+     */
+    public boolean forward(EventBatch batch) {
+
+        ConstellationIdentifierImpl target = batch.messages[0].target;
+
+        NodeIdentifier id = translate(target);
+
+        if (id == null) {
+            if (logger.isInfoEnabled()) {
+                logger.info("POOL failed to translate " + target + " to a NodeIdentifier");
+            }
+            return false;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending " + batch + " to " + id);
+        }
+
+        return doForward(id, OPCODE_EVENT_BATCH, batch);
+    }
+
+    public boolean forward(LocationUpdate u) {
+        return forward(u, OPCODE_LOCATION_UPDATE);
+    }
+
+    public boolean forward(Tombstones t) {
+        return forward(t, OPCODE_TOMBSTONES);
+    }
+
+    public boolean forward(CancelRequest r) {
+        return forward(r, OPCODE_CANCEL);
+    }
+
+    /**
+     * Sends a cancel request to all other nodes. Only the master is sure to know all nodes of an open pool, so other nodes let the
+     * master pass it on.
+     *
+     * @param r
+     *            the cancel request
+     */
+    public void broadcast(CancelRequest r) {
+
+        if (!closedPool && !isMaster) {
+            if (!doForward(master, OPCODE_CANCEL_RELAY, r)) {
+                logger.warn("Failed to send " + r + " to master (dropped)");
+            }
+            return;
+        }
+
+        broadcast(r, null);
+    }
+
+    private void broadcast(CancelRequest r, NodeIdentifier source) {
+        for (NodeIdentifier id : getNodes()) {
+            if (!id.equals(local) && !id.equals(source) && !doForward(id, OPCODE_CANCEL, r)) {
+                logger.warn("Failed to send " + r + " to " + id + " (dropped)");
+            }
+        }
+    }
+
     private boolean forward(AbstractMessage m, byte opcode) {
 
         ConstellationIdentifierImpl target = m.target;
@@ -594,6 +703,118 @@ public class Pool {
         owner.deliverRemoteEvent(m);
     }
 
+    private void gotEventBatch(EventBatch b) {
+
+        if (logger.isInfoEnabled()) {
+            logger.info("RECEIVE " + b);
+        }
+
+        owner.deliverRemoteEvents(b);
+    }
+
+    private void gotLocationUpdate(LocationUpdate u) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("RECEIVE " + u);
+        }
+
+        owner.deliverRemoteLocationUpdate(u);
+    }
+
+    /**
+     * Waits until the pool is quiescent. The master detects quiescence itself, the other nodes ask the master and wait for its
+     * answer.
+     *
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     */
+    public void awaitQuiescence() throws InterruptedException {
+
+        if (isMaster) {
+            detector.detect();
+            return;
+        }
+
+        long request;
+
+        synchronized (this) {
+            request = ++quiescenceRequests;
+        }
+
+        while (!doForward(master, OPCODE_QUIESCENCE_WAIT, new Long(request))) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to ask master for quiescence (will retry!)");
+            }
+            Thread.sleep(QuiescenceDetector.MAX_WAVE_DELAY);
+        }
+
+        synchronized (this) {
+            // A later request may be answered first, which is fine, as it was sent after ours.
+            while (quiescenceDone < request) {
+                wait();
+            }
+        }
+    }
+
+    private NodeIdentifier[] getNodes() {
+        if (closedPool) {
+            return ids;
+        }
+        return locationCache.values().toArray(new NodeIdentifier[0]);
+    }
+
+    private void gotQuiescenceRequest(Long current, NodeIdentifier source) {
+        long[] counts = owner.getQuiescence().getCounts();
+        doForward(source, OPCODE_QUIESCENCE_REPLY, new QuiescenceCounts(current.longValue(), counts[0], counts[1]));
+    }
+
+    private void gotQuiescenceWait(final Long request, final NodeIdentifier source) {
+
+        // Detection waits for replies that arrive through upcalls, so it cannot run in this one.
+        Thread t = new Thread("Constellation quiescence detection") {
+            @Override
+            public void run() {
+                try {
+                    detector.detect();
+                    doForward(source, OPCODE_QUIESCENCE_DONE, request);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        };
+
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private synchronized void gotQuiescenceDone(Long request) {
+        quiescenceDone = Math.max(quiescenceDone, request.longValue());
+        notifyAll();
+    }
+
+    private void gotTombstones(Tombstones t) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("RECEIVE " + t);
+        }
+
+        owner.deliverRemoteTombstones(t);
+    }
+
+    private void gotCancel(CancelRequest r) {
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("RECEIVE " + r);
+        }
+
+        owner.deliverRemoteCancel(r);
+    }
+
+    private void gotCancelRelay(CancelRequest r, NodeIdentifier source) {
+        gotCancel(r);
+        broadcast(r, source);
+    }
+
     public void upcall(NodeIdentifier source, Message rm) {
 
         byte opcode = rm.opcode;
@@ -639,6 +860,42 @@ public class Pool {
             gotEvent((EventMessage) data);
             break;
 
+        case OPCODE_EVENT_BATCH:
+            gotEventBatch((EventBatch) data);
+            break;
+
+        case OPCODE_LOCATION_UPDATE:
+            gotLocationUpdate((LocationUpdate) data);
+            break;
+
+        case OPCODE_TOMBSTONES:
+            gotTombstones((Tombstones) data);
+            break;
+
+        case OPCODE_QUIESCENCE_REQUEST:
+            gotQuiescenceRequest((Long) data, source);
+            break;
+
+        case OPCODE_QUIESCENCE_REPLY:
+            detector.gotReply((QuiescenceCounts) data);
+            break;
+
+        case OPCODE_QUIESCENCE_WAIT:
+            gotQuiescenceWait((Long) data, source);
+            break;
+
+        case OPCODE_QUIESCENCE_DONE:
+            gotQuiescenceDone((Long) data);
+            break;
+
+        case OPCODE_CANCEL:
+            gotCancel((CancelRequest) data);
+            break;
+
+        case OPCODE_CANCEL_RELAY:
+            gotCancelRelay((CancelRequest) data, source);
+            break;
+
         case OPCODE_POOL_REGISTER_REQUEST:
             performRegisterWithPool((PoolRegisterRequest) data);
             break;
@@ -926,6 +1183,24 @@ public class Pool {
             return readOrWrite + " steal request";
         case OPCODE_STEAL_REPLY:
             return readOrWrite + " steal reply";
+        case OPCODE_EVENT_BATCH:
+            return readOrWrite + " event batch";
+        case OPCODE_LOCATION_UPDATE:
+            return readOrWrite + " location update";
+        case OPCODE_TOMBSTONES:
+            return readOrWrite + " tombstones";
+        case OPCODE_QUIESCENCE_REQUEST:
+            return readOrWrite + " quiescence request";
+        case OPCODE_QUIESCENCE_REPLY:
+            return readOrWrite + " quiescence reply";
+        case OPCODE_QUIESCENCE_WAIT:
+            return readOrWrite + " quiescence wait";
+        case OPCODE_QUIESCENCE_DONE:
+            return readOrWrite + " quiescence done";
+        case OPCODE_CANCEL:
+            return readOrWrite + " cancel request";
+        case OPCODE_CANCEL_RELAY:
+            return readOrWrite + " cancel relay";
         case OPCODE_POOL_REGISTER_REQUEST:
             return readOrWrite + " pool register request";
         case OPCODE_POOL_UPDATE_REQUEST:
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import java.io.Serializable;
+
+/**
+ * The work counters of a node, sent to the master in reply to a quiescence wave.
+ */
+public class QuiescenceCounts implements Serializable {
+
+    private static final long serialVersionUID = -3104835267913402315L;
+
+    public final long wave;
+    public final long completed;
+    public final long created;
+
+    public QuiescenceCounts(long wave, long completed, long created) {
+        this.wave = wave;
+        this.completed = completed;
+        this.created = created;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects quiescence of a pool on the master, by running waves over all nodes that collect their work counters, see
+ * {@link ibis.constellation.impl.Quiescence}.
+ *
+ * Work may be created on one node and completed on another, so the counters of a single node need not be equal, even when the
+ * pool is quiescent. Only the totals over all nodes are compared.
+ */
+abstract class QuiescenceDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuiescenceDetector.class);
+
+    // How long we wait for the replies to a wave, and the maximum delay between waves, in milliseconds.
+    static final long WAVE_TIMEOUT = 1000;
+    static final long MAX_WAVE_DELAY = 100;
+
+    // Only one detection runs at a time.
+    private final Object detectionLock = new Object();
+
+    // The current wave, and the counters collected for it so far.
+    private long wave;
+    private int waveReplies;
+    private long waveCompleted;
+    private long waveCreated;
+
+    /**
+     * Asks all other nodes for their counters. Their replies must be passed to {@link #gotReply(QuiescenceCounts)}.
+     *
+     * @param wave
+     *            the wave to ask the counters for
+     * @return the number of nodes that were asked, or -1 if a node could not be reached.
+     */
+    protected abstract int requestCounts(long wave);
+
+    /**
+     * Returns the counters of this node, completed units first.
+     *
+     * @return the number of completed and created units of work.
+     */
+    protected abstract long[] getLocalCounts();
+
+    /**
+     * Runs waves over all nodes until two consecutive waves find the same totals, with all work completed. The counters only grow,
+     * so no work was pending anywhere at the moment the first of these waves ended.
+     *
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     */
+    void detect() throws InterruptedException {
+
+        synchronized (detectionLock) {
+
+            QuiescenceCounts previous = null;
+            long delay = 1;
+
+            for (;;) {
+                QuiescenceCounts counts = runWave();
+
+                if (counts != null && counts.completed == counts.created) {
+                    if (previous != null && previous.completed == counts.completed && previous.created == counts.created) {
+                        if (logger.isInfoEnabled()) {
+                            logger.info("Pool is quiescent after " + counts.completed + " units of work");
+                        }
+                        return;
+                    }
+
+                    // Run the second wave right away.
+                    previous = counts;
+                    continue;
+                }
+
+                previous = null;
+                Thread.sleep(delay);
+                delay = Math.min(2 * delay, MAX_WAVE_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Collects the counters of all nodes.
+     *
+     * @return the totals of all nodes, or <code>null</code> if a node cannot be reached or does not reply in time.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting.
+     */
+    QuiescenceCounts runWave() throws InterruptedException {
+
+        long current;
+
+        synchronized (this) {
+            current = ++wave;
+            waveReplies = 0;
+            waveCompleted = 0;
+            waveCreated = 0;
+        }
+
+        int expected = requestCounts(current);
+
+        if (expected < 0) {
+            return null;
+        }
+
+        long[] counts = getLocalCounts();
+
+        long deadline = System.currentTimeMillis() + WAVE_TIMEOUT;
+
+        synchronized (this) {
+            while (waveReplies < expected) {
+
+                long left = deadline - System.currentTimeMillis();
+
+                if (left <= 0) {
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Quiescence wave " + current + " timed out");
+                    }
+                    return null;
+                }
+
+                wait(left);
+            }
+
+            return new QuiescenceCounts(current, waveCompleted + counts[0], waveCreated + counts[1]);
+        }
+    }
+
+    synchronized void gotReply(QuiescenceCounts counts) {
+
+        // Ignore late replies to an earlier wave.
+        if (counts.wave != wave) {
+            return;
+        }
+
+        waveReplies++;
+        waveCompleted += counts.completed;
+        waveCreated += counts.created;
+        notifyAll();
+    }
+}
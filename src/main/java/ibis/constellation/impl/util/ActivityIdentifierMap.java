@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ibis.constellation.impl.ActivityIdentifierImpl;
+
+/**
+ * An <code>ActivityIdentifierMap</code> maps activity identifiers to values. It is an open-addressing hash table with linear
+ * probing that stores the packed identifier (origin and sequence number) in a <code>long</code> array, so it does not allocate
+ * anything per entry, and it never has to call {@link ActivityIdentifierImpl#equals(Object)}. Removal shifts the following
+ * entries back, so no tombstones are left behind.
+ *
+ * Values may not be <code>null</code>. This class is not thread safe, see {@link ConcurrentActivityIdentifierMap} for a
+ * thread-safe variant.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class ActivityIdentifierMap<V> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    // The keys, as sequence number and origin pairs, so a probe only touches a single cache line of keys.
+    private long[] keys;
+    private Object[] values;
+
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public ActivityIdentifierMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates a map that can hold the specified number of entries before it has to grow.
+     *
+     * @param expected
+     *            the expected number of entries
+     */
+    public ActivityIdentifierMap(int expected) {
+
+        if (expected < 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + expected);
+        }
+
+        int capacity = MIN_CAPACITY;
+
+        // Keep the load factor below 3/4.
+        while (capacity - (capacity >> 2) < expected) {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[2 * capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity - (capacity >> 2);
+    }
+
+    static int hash(long origin, long sequence) {
+        long h = sequence * 0x9E3779B97F4A7C15L + origin * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long origin, long sequence) {
+
+        int i = hash(origin, sequence) & mask;
+
+        while (values[i] != null) {
+            if (keys[2 * i] == sequence && keys[2 * i + 1] == origin) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value for the specified identifier, or <code>null</code> if there is none.
+     *
+     * @param id
+     *            the identifier
+     * @return the value, or <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(ActivityIdentifierImpl id) {
+        int i = find(id.getPackedOrigin(), id.getSequenceNumber());
+        return i < 0 ? null : (V) values[i];
+    }
+
+    public boolean containsKey(ActivityIdentifierImpl id) {
+        return find(id.getPackedOrigin(), id.getSequenceNumber()) >= 0;
+    }
+
+    /**
+     * Maps the specified identifier to the specified value.
+     *
+     * @param id
+     *            the identifier
+     * @param value
+     *            the value, which may not be <code>null</code>
+     * @return the previous value for the identifier, or <code>null</code> if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(ActivityIdentifierImpl id, V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Value may not be null");
+        }
+
+        final long origin = id.getPackedOrigin();
+        final long sequence = id.getSequenceNumber();
+
+        int i = hash(origin, sequence) & mask;
+
+        while (values[i] != null) {
+            if (keys[2 * i] == sequence && keys[2 * i + 1] == origin) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[2 * i] = sequence;
+        keys[2 * i + 1] = origin;
+        values[i] = value;
+
+        if (++size > resizeAt) {
+            resize(2 * values.length);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the value for the specified identifier.
+     *
+     * @param id
+     *            the identifier
+     * @return the removed value, or <code>null</code> if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(ActivityIdentifierImpl id) {
+
+        int i = find(id.getPackedOrigin(), id.getSequenceNumber());
+
+        if (i < 0) {
+            return null;
+        }
+
+        V old = (V) values[i];
+
+        // Shift back the entries that follow, as long as this brings them closer to their home slot.
+        int free = i;
+        int j = (i + 1) & mask;
+
+        while (values[j] != null) {
+            int home = hash(keys[2 * j + 1], keys[2 * j]) & mask;
+
+            // Move entry j to the free slot, unless its home lies cyclically in (free, j].
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[2 * free] = keys[2 * j];
+                keys[2 * free + 1] = keys[2 * j + 1];
+                values[free] = values[j];
+                free = j;
+            }
+
+            j = (j + 1) & mask;
+        }
+
+        values[free] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * Adds all values in this map to the specified list, in no particular order.
+     *
+     * @param dst
+     *            the list to add the values to
+     */
+    @SuppressWarnings("unchecked")
+    public void values(List<? super V> dst) {
+        for (Object v : values) {
+            if (v != null) {
+                dst.add((V) v);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = hash(oldKeys[2 * i + 1], oldKeys[2 * i]) & mask;
+
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+
+                keys[2 * j] = oldKeys[2 * i];
+                keys[2 * j + 1] = oldKeys[2 * i + 1];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
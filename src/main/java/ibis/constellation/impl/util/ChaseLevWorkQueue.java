@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ContextMatch;
+
+/**
+ * A lock-free work-stealing deque, as described by Chase and Lev ("Dynamic Circular Work-Stealing Deque", SPAA 2005).
+ *
+ * The deque has a single owner thread, which pushes and pops activities at the bottom without taking any locks. Other threads
+ * steal from the top using a single compare-and-swap. Activities enqueued by other threads are put in a separate lock-free
+ * inbox, which is moved to the deque by the owner, but can also be stolen from directly.
+ *
+ * This queue does not sort activities on their context, so it is only suitable for executors with a single {@link Context} that
+ * has an unbounded range (see {@link #isSuitable(AbstractContext)}). The {@link StealStrategy} is mapped onto the order of the
+ * deque: when the owner uses {@link StealStrategy#SMALLEST} it gets the most recently enqueued activity, otherwise it gets the
+ * oldest one. Other threads always get the oldest activity. A steal fails if that activity does not match the context of the
+ * thief.
+ */
+public class ChaseLevWorkQueue extends WorkQueue {
+
+    public static final Logger log = LoggerFactory.getLogger(ChaseLevWorkQueue.class);
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final AtomicLongFieldUpdater<ChaseLevWorkQueue> TOP = AtomicLongFieldUpdater.newUpdater(ChaseLevWorkQueue.class,
+            "top");
+
+    private final Thread owner;
+
+    private volatile long top;
+    private volatile long bottom;
+    private volatile AtomicReferenceArray<ActivityRecord> array = new AtomicReferenceArray<ActivityRecord>(INITIAL_CAPACITY);
+
+    private final ConcurrentLinkedQueue<ActivityRecord> inbox = new ConcurrentLinkedQueue<ActivityRecord>();
+    private final AtomicInteger inboxSize = new AtomicInteger();
+
+    /**
+     * Creates a deque owned by the specified thread.
+     *
+     * @param id
+     *            the identifier of this queue
+     * @param owner
+     *            the thread that is allowed to push and pop at the bottom of the deque
+     */
+    public ChaseLevWorkQueue(String id, Thread owner) {
+        super(id);
+        this.owner = owner;
+    }
+
+    /**
+     * Returns whether this queue can be used for an executor with the specified context, which is the case for a single
+     * {@link Context} with an unbounded range.
+     *
+     * @param c
+     *            the context of the executor
+     * @return whether this queue is suitable for the context.
+     */
+    public static boolean isSuitable(AbstractContext c) {
+
+        if (!(c instanceof Context)) {
+            return false;
+        }
+
+        Context tmp = (Context) c;
+        return tmp.getRangeStart() == Long.MIN_VALUE && tmp.getRangeEnd() == Long.MAX_VALUE;
+    }
+
+    @Override
+    public int size() {
+        long size = bottom - top;
+        return (size > 0 ? (int) size : 0) + inboxSize.get();
+    }
+
+    @Override
+    public void enqueue(ActivityRecord a) {
+
+        if (Thread.currentThread() != owner) {
+            inboxSize.incrementAndGet();
+            inbox.add(a);
+            return;
+        }
+
+        drainInbox();
+        push(a);
+    }
+
+    @Override
+    public ActivityRecord steal(AbstractContext c, StealStrategy s) {
+
+        if (Thread.currentThread() != owner) {
+            ActivityRecord a = stealTop(c);
+            return a != null ? a : stealInbox(c);
+        }
+
+        drainInbox();
+
+        if (StealStrategy.SMALLEST.equals(s)) {
+            return popBottom(c);
+        }
+
+        return stealTop(c);
+    }
+
+    private void drainInbox() {
+
+        if (inboxSize.get() == 0) {
+            return;
+        }
+
+        ActivityRecord a = inbox.poll();
+
+        while (a != null) {
+            inboxSize.decrementAndGet();
+            push(a);
+            a = inbox.poll();
+        }
+    }
+
+    private ActivityRecord stealInbox(AbstractContext c) {
+
+        ActivityRecord a = inbox.peek();
+
+        if (a == null || !ContextMatch.match(a.getContext(), c)) {
+            return null;
+        }
+
+        if (!inbox.remove(a)) {
+            // Someone else got it first.
+            return null;
+        }
+
+        inboxSize.decrementAndGet();
+        return a;
+    }
+
+    private void push(ActivityRecord a) {
+
+        long b = bottom;
+        long t = top;
+        AtomicReferenceArray<ActivityRecord> tmp = array;
+
+        if (b - t >= tmp.length() - 1) {
+            tmp = grow(tmp, b, t);
+        }
+
+        tmp.set((int) b & (tmp.length() - 1), a);
+        bottom = b + 1;
+    }
+
+    private AtomicReferenceArray<ActivityRecord> grow(AtomicReferenceArray<ActivityRecord> old, long b, long t) {
+
+        AtomicReferenceArray<ActivityRecord> tmp = new AtomicReferenceArray<ActivityRecord>(old.length() * 2);
+
+        // Thieves may still read from the old array, so we leave it intact.
+        for (long i = t; i < b; i++) {
+            tmp.set((int) i & (tmp.length() - 1), old.get((int) i & (old.length() - 1)));
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Queue " + getId() + " grown to " + tmp.length());
+        }
+
+        array = tmp;
+        return tmp;
+    }
+
+    private ActivityRecord popBottom(AbstractContext c) {
+
+        long b = bottom - 1;
+        AtomicReferenceArray<ActivityRecord> tmp = array;
+        bottom = b;
+        long t = top;
+
+        if (b < t) {
+            // Empty.
+            bottom = t;
+            return null;
+        }
+
+        int index = (int) b & (tmp.length() - 1);
+        ActivityRecord a = tmp.get(index);
+
+        if (b == t) {
+            // Last element, so we may have to race with a thief.
+            boolean won = TOP.compareAndSet(this, t, t + 1);
+            bottom = t + 1;
+
+            if (!won) {
+                return null;
+            }
+
+            tmp.compareAndSet(index, a, null);
+
+            if (!ContextMatch.match(a.getContext(), c)) {
+                push(a);
+                return null;
+            }
+
+            return a;
+        }
+
+        if (!ContextMatch.match(a.getContext(), c)) {
+            // Put it back, thieves cannot have taken this slot.
+            bottom = b + 1;
+            return null;
+        }
+
+        tmp.set(index, null);
+        return a;
+    }
+
+    private ActivityRecord stealTop(AbstractContext c) {
+
+        long t = top;
+        long b = bottom;
+
+        if (t >= b) {
+            return null;
+        }
+
+        AtomicReferenceArray<ActivityRecord> tmp = array;
+        int index = (int) t & (tmp.length() - 1);
+        ActivityRecord a = tmp.get(index);
+
+        if (a == null || !ContextMatch.match(a.getContext(), c)) {
+            return null;
+        }
+
+        if (!TOP.compareAndSet(this, t, t + 1)) {
+            // Lost the race with another thief or the owner.
+            return null;
+        }
+
+        // Only we hold a now, so it cannot have been enqueued again in the mean time.
+        tmp.compareAndSet(index, a, null);
+        return a;
+    }
+}
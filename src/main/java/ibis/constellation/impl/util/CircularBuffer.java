@@ -94,14 +94,33 @@ public class CircularBuffer<T> implements Serializable, ByteBuffers {
     }
 
     private void resize() {
+        setCapacity(array.length * 2);
+    }
+
+    /**
+     * Changes the capacity of this buffer. The capacity may not be smaller than the current size.
+     *
+     * @param capacity
+     *            the new capacity
+     */
+    public void setCapacity(int capacity) {
+
+        if (capacity < size || capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity " + capacity + " for buffer of size " + size);
+        }
+
         Object[] old = array;
-        array = new Object[array.length * 2];
+        array = new Object[capacity];
 
-        System.arraycopy(old, first, array, 0, old.length - first);
-        System.arraycopy(old, 0, array, old.length - first, first);
+        if (first + size <= old.length) {
+            System.arraycopy(old, first, array, 0, size);
+        } else {
+            System.arraycopy(old, first, array, 0, old.length - first);
+            System.arraycopy(old, 0, array, old.length - first, size - (old.length - first));
+        }
 
         first = 0;
-        next = old.length;
+        next = size == capacity ? 0 : size;
     }
 
     @SuppressWarnings("unchecked")
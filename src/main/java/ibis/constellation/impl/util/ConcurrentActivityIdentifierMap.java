@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import ibis.constellation.impl.ActivityIdentifierImpl;
+
+/**
+ * A thread-safe variant of {@link ActivityIdentifierMap}. The entries are spread over a fixed number of segments on their hash
+ * code, each of which is an {@link ActivityIdentifierMap} protected by its own lock, so threads that access different segments do
+ * not contend.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class ConcurrentActivityIdentifierMap<V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final ActivityIdentifierMap<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentActivityIdentifierMap() {
+        segments = (ActivityIdentifierMap<V>[]) new ActivityIdentifierMap<?>[SEGMENTS];
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new ActivityIdentifierMap<V>();
+        }
+    }
+
+    private ActivityIdentifierMap<V> segment(ActivityIdentifierImpl id) {
+        // The segment is selected on the upper bits of the hash, the slot within the segment on the lower bits.
+        int h = ActivityIdentifierMap.hash(id.getPackedOrigin(), id.getSequenceNumber());
+        return segments[h >>> 28];
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (ActivityIdentifierMap<V> s : segments) {
+            synchronized (s) {
+                size += s.size();
+            }
+        }
+
+        return size;
+    }
+
+    public V get(ActivityIdentifierImpl id) {
+        ActivityIdentifierMap<V> s = segment(id);
+
+        synchronized (s) {
+            return s.get(id);
+        }
+    }
+
+    public V put(ActivityIdentifierImpl id, V value) {
+        ActivityIdentifierMap<V> s = segment(id);
+
+        synchronized (s) {
+            return s.put(id, value);
+        }
+    }
+
+    public V remove(ActivityIdentifierImpl id) {
+        ActivityIdentifierMap<V> s = segment(id);
+
+        synchronized (s) {
+            return s.remove(id);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+/**
+ * An <code>IdleStrategy</code> decides how long an idle executor waits before its next steal attempt. It first spins for a number
+ * of attempts, then yields for a number of attempts, and then parks, doubling the park time on each attempt up to a maximum.
+ * {@link #reset()} should be called as soon as the executor finds work again.
+ *
+ * The strategy itself does not wait, it only tells the caller what to do, so the caller can park in a way that lets it be woken
+ * up.
+ */
+public class IdleStrategy {
+
+    /** Returned by {@link #next()} when the caller should retry right away. */
+    public static final long SPIN = 0;
+
+    /** Returned by {@link #next()} when the caller should yield the processor. */
+    public static final long YIELD = -1;
+
+    private final int spins;
+    private final int yields;
+    private final long minPark;
+    private final long maxPark;
+
+    private int count;
+    private long park;
+
+    /**
+     * Creates an idle strategy.
+     *
+     * @param spins
+     *            the number of attempts to spin
+     * @param yields
+     *            the number of attempts to yield, after spinning
+     * @param minPark
+     *            the first park time, in nanoseconds
+     * @param maxPark
+     *            the maximum park time, in nanoseconds
+     */
+    public IdleStrategy(int spins, int yields, long minPark, long maxPark) {
+
+        if (spins < 0 || yields < 0 || minPark <= 0 || maxPark < minPark) {
+            throw new IllegalArgumentException("Invalid idle strategy: spins = " + spins + ", yields = " + yields + ", park = "
+                    + minPark + " .. " + maxPark + " ns");
+        }
+
+        this.spins = spins;
+        this.yields = yields;
+        this.minPark = minPark;
+        this.maxPark = maxPark;
+        reset();
+    }
+
+    /**
+     * Returns what to do on the next idle attempt.
+     *
+     * @return {@link #SPIN}, {@link #YIELD}, or the time to park in nanoseconds.
+     */
+    public long next() {
+
+        if (count < spins) {
+            count++;
+            return SPIN;
+        }
+
+        if (count < spins + yields) {
+            count++;
+            return YIELD;
+        }
+
+        long result = park;
+        park = Math.min(2 * park, maxPark);
+        return result;
+    }
+
+    /**
+     * Starts over with spinning, to be called when work was found.
+     */
+    public void reset() {
+        count = 0;
+        park = minPark;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A lock-free, unbounded, multi-producer single-consumer FIFO queue, after the intrusive MPSC node-based queue of Dmitry Vyukov.
+ *
+ * Any thread may {@link #offer(Object)} an element, which takes a single atomic swap and never blocks. Only a single consumer
+ * thread may call {@link #poll()} and {@link #isEmpty()}. An element may briefly be invisible to the consumer while its producer
+ * is linking it in, so producers should signal the consumer after offering, rather than rely on the consumer to see every
+ * element in the same round.
+ *
+ * @param <T>
+ *            the type of the elements
+ */
+public class MpscQueue<T> {
+
+    private static final class Node<T> {
+        private volatile Node<T> next;
+        private T value;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Node> TAIL = AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class,
+            Node.class, "tail");
+
+    // Only accessed by the consumer. The head is a stub whose value has already been taken.
+    private Node<T> head;
+
+    private volatile Node<T> tail;
+
+    public MpscQueue() {
+        Node<T> stub = new Node<T>(null);
+        head = stub;
+        tail = stub;
+    }
+
+    /**
+     * Appends an element to this queue. May be called by any thread.
+     *
+     * @param value
+     *            the element, which may not be <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(T value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("MpscQueue does not accept null elements");
+        }
+
+        Node<T> n = new Node<T>(value);
+        Node<T> prev = TAIL.getAndSet(this, n);
+        prev.next = n;
+    }
+
+    /**
+     * Removes the oldest element from this queue. May only be called by the consumer.
+     *
+     * @return the oldest element, or <code>null</code> if the queue is empty.
+     */
+    public T poll() {
+
+        Node<T> next = head.next;
+
+        if (next == null) {
+            return null;
+        }
+
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    /**
+     * Returns whether this queue appears to be empty. May only be called by the consumer.
+     *
+     * @return <code>true</code> if there is no element that can be polled.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A <code>NameRegistry</code> maps names onto dense integer identifiers, starting at 0. Identifiers are only valid within this
+ * process, and are never reused, so the registry grows with the number of distinct names seen.
+ */
+public class NameRegistry {
+
+    /** The registry for the names of {@link ibis.constellation.Context contexts}. */
+    public static final NameRegistry CONTEXT_NAMES = new NameRegistry();
+
+    /** The registry for the tags of {@link ibis.constellation.StealPool steal pools}. */
+    public static final NameRegistry POOL_TAGS = new NameRegistry();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Returns the identifier of the specified name, assigning a new one if the name has not been seen before.
+     *
+     * @param name
+     *            the name
+     * @return the identifier of the name.
+     */
+    public int intern(String name) {
+
+        Integer id = ids.get(name);
+
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(name);
+
+            if (id == null) {
+                id = ids.size();
+                ids.put(name, id);
+            }
+
+            return id;
+        }
+    }
+
+    /**
+     * Returns the number of names in this registry, which is also the smallest identifier not in use.
+     *
+     * @return the number of names.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+
+/**
+ * A <code>PriorityWorkQueue</code> orders activities on their priority first. Activities of the same priority are kept in a
+ * {@link SimpleWorkQueue}, so the {@link StealStrategy} is applied within a priority level. A steal returns a matching activity
+ * of the highest priority that has one.
+ *
+ * A priority level only exists while it has activities, so the number of levels is bounded by the number of queued activities,
+ * however many different priorities the application uses over time.
+ */
+public class PriorityWorkQueue extends WorkQueue {
+
+    public static final Logger log = LoggerFactory.getLogger(PriorityWorkQueue.class);
+
+    // The non-empty queues, highest priority first.
+    private final TreeMap<Integer, SimpleWorkQueue> queues = new TreeMap<Integer, SimpleWorkQueue>(
+            Collections.<Integer> reverseOrder());
+
+    private int size;
+
+    public PriorityWorkQueue(String id) {
+        super(id);
+    }
+
+    private SimpleWorkQueue getQueue(int priority) {
+
+        SimpleWorkQueue q = queues.get(priority);
+
+        if (q == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Queue " + getId() + " adds priority level " + priority);
+            }
+
+            q = new SimpleWorkQueue(getId() + "-" + priority);
+            queues.put(priority, q);
+        }
+
+        return q;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized void enqueue(ActivityRecord a) {
+        getQueue(a.getPriority()).enqueue(a);
+        size++;
+    }
+
+    @Override
+    public synchronized ActivityRecord steal(AbstractContext c, StealStrategy s) {
+
+        if (size == 0) {
+            return null;
+        }
+
+        Iterator<SimpleWorkQueue> it = queues.values().iterator();
+
+        while (it.hasNext()) {
+            SimpleWorkQueue q = it.next();
+            ActivityRecord r = q.steal(c, s);
+
+            if (r != null) {
+                if (q.size() == 0) {
+                    it.remove();
+                }
+                size--;
+                return r;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized int steal(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+
+        int count = 0;
+        Iterator<SimpleWorkQueue> it = queues.values().iterator();
+
+        while (it.hasNext() && count < len) {
+            SimpleWorkQueue q = it.next();
+            int n = q.steal(c, s, dst, off + count, len - count);
+
+            if (q.size() == 0) {
+                it.remove();
+            }
+
+            count += n;
+            size -= n;
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized int stealHalf(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+
+        int max = 2 * len;
+        int matches = 0;
+
+        for (SimpleWorkQueue q : queues.values()) {
+            if (matches >= max) {
+                break;
+            }
+            matches += q.countMatching(c, max - matches);
+        }
+
+        // The highest priorities are stolen first.
+        return steal(c, s, dst, off, Math.min(len, (matches + 1) / 2));
+    }
+
+    @Override
+    public synchronized int removeCancelled() {
+
+        int count = 0;
+        Iterator<SimpleWorkQueue> it = queues.values().iterator();
+
+        while (it.hasNext()) {
+            SimpleWorkQueue q = it.next();
+            count += q.removeCancelled();
+
+            if (q.size() == 0) {
+                it.remove();
+            }
+        }
+
+        size -= count;
+        return count;
+    }
+
+    @Override
+    public synchronized int highestPriority() {
+        return queues.isEmpty() ? Integer.MIN_VALUE : queues.firstKey();
+    }
+
+    /**
+     * Returns the number of priority levels that currently have activities.
+     *
+     * @return the number of levels.
+     */
+    public synchronized int levels() {
+        return queues.size();
+    }
+}
@@ -16,7 +16,8 @@
  */
 package ibis.constellation.impl.util;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.slf4j.Logger;
@@ -32,10 +33,14 @@ public class SimpleWorkQueue extends WorkQueue {
 
     public static final Logger log = LoggerFactory.getLogger(SimpleWorkQueue.class);
    
-    private final HashMap<String, SortedRangeList> lists = new HashMap<String, SortedRangeList>();
+    // The lists, indexed by context name identifier.
+    private SortedRangeList[] lists = new SortedRangeList[16];
    
     private int size;
 
+    // Reused buffer for bulk steals.
+    private SortedRangeList.Node[] stolenNodes = new SortedRangeList.Node[0];
+
     public SimpleWorkQueue(String id) {
         super(id);
     }
@@ -45,22 +50,36 @@ public class SimpleWorkQueue extends WorkQueue {
         return size;
     }
 
-    private void enqueueRange(Context c, ActivityRecord a) { 
+    private SortedRangeList.Node enqueueRange(Context c, ActivityRecord a) { 
                 
-        SortedRangeList tmp = lists.get(c.getName());
+        int id = c.getNameId();
+
+        if (id >= lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(2 * lists.length, id + 1));
+        }
+
+        SortedRangeList tmp = lists[id];
 
         if (tmp == null) {
-            tmp = new SortedRangeList(c.getName());
-            lists.put(c.getName(), tmp);
+            tmp = new SortedRangeList(c.getName(), id);
+            lists[id] = tmp;
         }
 
-        tmp.insert(a, c.getRangeStart(), c.getRangeEnd());
-        size++;
+        return tmp.insert(a, c.getRangeStart(), c.getRangeEnd());
     }
     
     private void enqueueOr(OrContext c, ActivityRecord a) { 
-        for (Context rc : c) { 
-            enqueueRange(rc, a);
+
+        // Remember where the record is linked, so a steal from one list can unlink it from the others directly.
+        SortedRangeList.Node[] nodes = a.getQueueNodes();
+
+        if (nodes == null) {
+            nodes = new SortedRangeList.Node[c.size()];
+            a.setQueueNodes(nodes);
+        }
+
+        for (int i = 0; i < nodes.length; i++) { 
+            nodes[i] = enqueueRange(c.get(i), a);
         }
     }
     
@@ -74,15 +93,17 @@ public class SimpleWorkQueue extends WorkQueue {
         } else { 
             enqueueOr((OrContext) c, a);
         }
+
+        size++;
     }
     
     private ActivityRecord stealRange(Context c, StealStrategy s) {
         
         if (log.isDebugEnabled()) {
-            log.debug("Matching context: " + c  + " (len = " + lists.size() + ")");
+            log.debug("Matching context: " + c);
         }
 
-        SortedRangeList tmp = lists.get(c.getName());
+        SortedRangeList tmp = getList(c);
         
         if (tmp == null) {
             if (log.isDebugEnabled()) {
@@ -103,20 +124,16 @@ public class SimpleWorkQueue extends WorkQueue {
         } else { 
             r = tmp.removeSmallestInRange(c.getRangeStart(), c.getRangeEnd());
         }
+
+        reclaimIfEmpty(tmp);
         
         if (log.isDebugEnabled()) {
             log.debug(" steal == " + r);
         }
 
         if (r != null) { 
-            // Code added to remove r from all lists. --Ceriel
-            AbstractContext ctxt = r.getContext();
-            if (ctxt instanceof OrContext) {
-                // Yes, there may be other lists in which it exists
-                for (Context rc : (OrContext) ctxt) {
-                    removeByReference(rc, r);
-                }
-            }
+            // Remove r from all other lists it may be in.
+            unlinkOthers(r);
             size--;
         }
         
@@ -124,17 +141,108 @@ public class SimpleWorkQueue extends WorkQueue {
         
     }
     
-    private boolean removeByReference(Context c, ActivityRecord r) {
-        
-        SortedRangeList tmp = lists.get(c.getName());
+    private void unlinkOthers(ActivityRecord r) {
 
-        if (tmp == null) {
-            return false;
+        SortedRangeList.Node[] nodes = r.getQueueNodes();
+
+        if (nodes == null) {
+            return;
+        }
+
+        for (int i = 0; i < nodes.length; i++) {
+            SortedRangeList l = nodes[i].getList();
+
+            if (l != null) {
+                l.remove(nodes[i]);
+                reclaimIfEmpty(l);
+            }
+
+            nodes[i] = null;
+        }
+    }
+
+    private SortedRangeList getList(Context c) {
+        int id = c.getNameId();
+        return id < lists.length ? lists[id] : null;
+    }
+
+    private void reclaimIfEmpty(SortedRangeList l) {
+        // Don't keep empty lists around, as context names may come and go.
+        if (l.size() == 0) {
+            lists[l.getNameId()] = null;
         }
-        
-        return tmp.removeByReference(r);
     }
     
+    private SortedRangeList.Node[] getStolenNodes(int len) {
+        if (stolenNodes.length < len) {
+            stolenNodes = new SortedRangeList.Node[len];
+        }
+        return stolenNodes;
+    }
+
+    private static boolean isQueuedAt(SortedRangeList.Node[] nodes, SortedRangeList.Node n) {
+        for (SortedRangeList.Node tmp : nodes) {
+            if (tmp == n) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int stealRange(Context c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+
+        SortedRangeList tmp = getList(c);
+
+        if (tmp == null) {
+            return 0;
+        }
+
+        SortedRangeList.Node[] nodes = getStolenNodes(len);
+
+        int n;
+
+        if (StealStrategy.BIGGEST.equals(s)) {
+            n = tmp.removeBiggestInRange(c.getRangeStart(), c.getRangeEnd(), nodes, 0, len);
+        } else {
+            n = tmp.removeSmallestInRange(c.getRangeStart(), c.getRangeEnd(), nodes, 0, len);
+        }
+
+        reclaimIfEmpty(tmp);
+
+        int count = 0;
+
+        for (int i = 0; i < n; i++) {
+            ActivityRecord r = nodes[i].getData();
+            SortedRangeList.Node[] queued = r.getQueueNodes();
+
+            // An OrContext may contain the same name more than once, so the record may already have been taken.
+            if (queued == null || isQueuedAt(queued, nodes[i])) {
+                unlinkOthers(r);
+                dst[off + count++] = r;
+                size--;
+            }
+
+            nodes[i] = null;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Bulk steal of " + count + " from " + c);
+        }
+
+        return count;
+    }
+
+    private int countRange(Context c, int max) {
+
+        SortedRangeList tmp = getList(c);
+
+        if (tmp == null) {
+            return 0;
+        }
+
+        return tmp.countInRange(c.getRangeStart(), c.getRangeEnd(), max);
+    }
+
     private ActivityRecord stealOr(OrContext c, StealStrategy s) {
         
         ActivityRecord tmp = null;
@@ -168,4 +276,92 @@ public class SimpleWorkQueue extends WorkQueue {
             return stealOr((OrContext) c, s);
         }
     }
+
+    @Override
+    public synchronized int steal(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+
+        if (c instanceof Context) {
+            return stealRange((Context) c, s, dst, off, len);
+        }
+
+        int count = 0;
+
+        for (Context rc : (OrContext) c) {
+            if (count == len) {
+                break;
+            }
+            count += stealRange(rc, s, dst, off + count, len - count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the activities that match the specified context, but stops counting at <code>max</code>. Activities with an
+     * {@link OrContext} may be counted more than once.
+     *
+     * @param c
+     *            the context to match
+     * @param max
+     *            the maximum count
+     * @return the number of matching activities, or at least <code>max</code> if there are more.
+     */
+    public synchronized int countMatching(AbstractContext c, int max) {
+
+        if (c instanceof Context) {
+            return countRange((Context) c, max);
+        }
+
+        int matches = 0;
+
+        for (Context rc : (OrContext) c) {
+            if (matches >= max) {
+                break;
+            }
+            matches += countRange(rc, max - matches);
+        }
+
+        return matches;
+    }
+
+    @Override
+    public synchronized int removeCancelled() {
+
+        ArrayList<SortedRangeList.Node> nodes = new ArrayList<SortedRangeList.Node>();
+        int count = 0;
+
+        for (int i = 0; i < lists.length; i++) {
+            SortedRangeList l = lists[i];
+
+            if (l == null) {
+                continue;
+            }
+
+            l.collectCancelled(nodes);
+
+            for (SortedRangeList.Node n : nodes) {
+                // A record with an OrContext may already have been unlinked through another list.
+                if (n.getList() != null) {
+                    ActivityRecord r = n.getData();
+                    l.remove(n);
+                    unlinkOthers(r);
+                    size--;
+                    count++;
+                }
+            }
+
+            nodes.clear();
+            reclaimIfEmpty(l);
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized int stealHalf(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+
+        // We only need to know if there are at least 2 * len matches.
+        int matches = countMatching(c, 2 * len);
+        return steal(c, s, dst, off, Math.min(len, (matches + 1) / 2));
+    }
 }
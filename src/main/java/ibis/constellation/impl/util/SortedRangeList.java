@@ -16,66 +16,246 @@
  */
 package ibis.constellation.impl.util;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ibis.constellation.impl.ActivityRecord;
 
+/**
+ * A <code>SortedRangeList</code> keeps activity records sorted on the range of their context, and supports finding (and removing)
+ * the smallest or biggest record whose range overlaps a given range.
+ *
+ * Internally, the records are stored in a treap (a randomized binary search tree) that is ordered on range start, then range
+ * end, and then on insertion order, with the most recently inserted record first. Each node also keeps the maximum range end
+ * found in its subtree, which turns it into an interval tree. As a result, insertion, removal and the range-constrained searches
+ * all take O(log n) expected time.
+ *
+ * {@link #insert(ActivityRecord, long, long)} returns the {@link Node} holding the record. This node can be passed to
+ * {@link #remove(Node)} to unlink the record again without searching for it.
+ */
 public class SortedRangeList {
 
     public static final Logger log = LoggerFactory.getLogger(SortedRangeList.class);
 
-    static class Node {
-        private Node next;
-        private Node prev;
+    /**
+     * A node of the list, which also serves as a handle to remove its record from the list.
+     */
+    public static final class Node {
+        private Node left;
+        private Node right;
+        private Node parent;
+
+        // The list this node is linked into, or null when it has been removed.
+        private SortedRangeList list;
 
         private final long start;
         private final long end;
-        
+        private final long sequence;
+        private final int priority;
+
+        // The maximum range end in the subtree rooted at this node.
+        private long maxEnd;
+
         private final ActivityRecord data;
 
-        Node(ActivityRecord data, long start, long end) {
+        Node(SortedRangeList list, ActivityRecord data, long start, long end, long sequence, int priority) {
+            this.list = list;
             this.data = data;
             this.start = start;
             this.end = end;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+
+        /**
+         * Returns the list this node is linked into, or <code>null</code> if it has been removed from its list.
+         *
+         * @return the list of this node.
+         */
+        public SortedRangeList getList() {
+            return list;
+        }
+
+        public ActivityRecord getData() {
+            return data;
         }
     }
 
     private final String name;
+    private final int nameId;
 
-    private Node head = new Node(null, Long.MIN_VALUE, Long.MIN_VALUE);
-    private Node tail = new Node(null, Long.MAX_VALUE, Long.MAX_VALUE);
+    private Node root;
     private int size;
 
+    private long sequence;
+    private int seed;
+
+    // Number of nodes found by the last collect call.
+    private int found;
+
     public SortedRangeList(String name) {
+        this(name, NameRegistry.CONTEXT_NAMES.intern(name));
+    }
+
+    public SortedRangeList(String name, int nameId) {
         this.name = name;
-        head.next = tail;
-        tail.prev = head;
+        this.nameId = nameId;
+        this.seed = name.hashCode() | 1;
         size = 0;
     }
 
-    public void insert(ActivityRecord a, long start, long end) {
+    private int nextPriority() {
+        // xorshift, good enough to keep the tree balanced.
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
 
-        Node n = new Node(a, start, end);
+    // Returns true if a should be placed before b. Equal ranges are sorted on reverse insertion order.
+    private static boolean before(Node a, Node b) {
+        if (a.start != b.start) {
+            return a.start < b.start;
+        }
+        if (a.end != b.end) {
+            return a.end < b.end;
+        }
+        return a.sequence > b.sequence;
+    }
 
-        Node current = head.next;
+    private static void update(Node n) {
+        long m = n.end;
+        if (n.left != null && n.left.maxEnd > m) {
+            m = n.left.maxEnd;
+        }
+        if (n.right != null && n.right.maxEnd > m) {
+            m = n.right.maxEnd;
+        }
+        n.maxEnd = m;
+    }
 
-        for (;;) {
-            // Check if the new element goes at/before the current. Always succeeds for tail
-            if (start < current.start || (start == current.start && end <= current.end)) {
+    private void replaceChild(Node parent, Node old, Node n) {
+        if (parent == null) {
+            root = n;
+        } else if (parent.left == old) {
+            parent.left = n;
+        } else {
+            parent.right = n;
+        }
+        if (n != null) {
+            n.parent = parent;
+        }
+    }
+
+    // Rotates n one level up, above its parent.
+    private void rotateUp(Node n) {
+        Node p = n.parent;
 
-                n.prev = current.prev;
-                current.prev.next = n;
+        replaceChild(p.parent, p, n);
 
-                n.next = current;
-                current.prev = n;
+        if (p.left == n) {
+            p.left = n.right;
+            if (p.left != null) {
+                p.left.parent = p;
+            }
+            n.right = p;
+        } else {
+            p.right = n.left;
+            if (p.right != null) {
+                p.right.parent = p;
+            }
+            n.left = p;
+        }
+
+        p.parent = n;
+        update(p);
+        update(n);
+    }
 
-                size++;
-                return;
+    public Node insert(ActivityRecord a, long start, long end) {
+
+        Node n = new Node(this, a, start, end, sequence++, nextPriority());
+
+        if (root == null) {
+            root = n;
+        } else {
+            Node current = root;
+
+            for (;;) {
+                if (current.maxEnd < end) {
+                    current.maxEnd = end;
+                }
+
+                if (before(n, current)) {
+                    if (current.left == null) {
+                        current.left = n;
+                        break;
+                    }
+                    current = current.left;
+                } else {
+                    if (current.right == null) {
+                        current.right = n;
+                        break;
+                    }
+                    current = current.right;
+                }
             }
 
-            current = current.next;
+            n.parent = current;
+
+            while (n.parent != null && n.priority > n.parent.priority) {
+                rotateUp(n);
+            }
+        }
+
+        size++;
+        return n;
+    }
+
+    /**
+     * Removes the specified node from this list. As nodes are only rotated down until they can be unlinked, this takes expected
+     * constant time, plus the time to refresh the maximum range end of the ancestors, which stops as soon as one is unchanged.
+     *
+     * @param n
+     *            the node to remove
+     * @return <code>true</code> if the node was removed, <code>false</code> if it was not linked into this list.
+     */
+    public boolean remove(Node n) {
+
+        if (n.list != this) {
+            return false;
+        }
+
+        // Rotate the node down until it has at most one child.
+        while (n.left != null && n.right != null) {
+            rotateUp(n.left.priority > n.right.priority ? n.left : n.right);
         }
+
+        Node p = n.parent;
+
+        replaceChild(p, n, n.left != null ? n.left : n.right);
+
+        while (p != null) {
+            long old = p.maxEnd;
+            update(p);
+            if (p.maxEnd == old) {
+                break;
+            }
+            p = p.parent;
+        }
+
+        n.left = n.right = n.parent = null;
+        n.list = null;
+        size--;
+        return true;
+    }
+
+    private ActivityRecord removeNode(Node n) {
+        remove(n);
+        return n.data;
     }
 
     public ActivityRecord removeHead() {
@@ -84,12 +264,13 @@ public class SortedRangeList {
             return null;
         }
 
-        Node v = head.next;
-        v.next.prev = head;
-        head.next = v.next;
-        size--;
+        Node n = root;
+
+        while (n.left != null) {
+            n = n.left;
+        }
 
-        return v.data;
+        return removeNode(n);
     }
 
     public ActivityRecord removeTail() {
@@ -98,89 +279,259 @@ public class SortedRangeList {
             return null;
         }
 
-        Node v = tail.prev;
-        v.prev.next = tail;
-        tail.prev = v.prev;
-        size--;
+        Node n = root;
+
+        while (n.right != null) {
+            n = n.right;
+        }
 
-        return v.data;
+        return removeNode(n);
     }
 
     public int size() {
         return size;
     }
 
-    public boolean removeByReference(ActivityRecord o) {
+    private static Node findSmallest(Node t, long start, long end) {
+
+        while (t != null) {
+            if (t.left != null && t.left.maxEnd >= start) {
+                // If the left subtree has no overlap, neither has the rest of the tree, as all other nodes start later.
+                t = t.left;
+            } else if (end < t.start) {
+                return null;
+            } else if (t.end >= start) {
+                return t;
+            } else {
+                t = t.right;
+            }
+        }
 
-        Node current = head.next;
+        return null;
+    }
 
-        while (current.data != null) {
+    private static Node findBiggest(Node t, long start, long end) {
 
-            if (current.data == o) {
-                // Found it
-                current.prev.next = current.next;
-                current.next.prev = current.prev;
-                size--;
-                return true;
-            }
+        if (t == null || t.maxEnd < start) {
+            return null;
+        }
+
+        if (end < t.start) {
+            return findBiggest(t.left, start, end);
+        }
+
+        Node result = findBiggest(t.right, start, end);
+
+        if (result != null) {
+            return result;
+        }
 
-            current = current.next;
+        if (t.end >= start) {
+            return t;
         }
 
-        return false;
+        // All nodes in the left subtree start early enough, so the maxEnd check will lead us straight to the answer.
+        return findBiggest(t.left, start, end);
     }
 
     public ActivityRecord removeSmallestInRange(long start, long end) {
 
-        Node current = head.next;
-
         if (size == 0) {
             return null;
         }
 
-        while (current.data != null && current.end < start) {
-            current = current.next;
-        }
+        Node n = findSmallest(root, start, end);
 
-        if (current.data == null || end < current.start) {
+        if (n == null) {
             return null;
         }
 
-        // Found an element with overlap!
-        current.prev.next = current.next;
-        current.next.prev = current.prev;
-        size--;
-
-        return current.data;
+        return removeNode(n);
     }
 
     public ActivityRecord removeBiggestInRange(long start, long end) {
 
-        Node current = tail.prev;
-
         if (size == 0) {
             return null;
         }
 
-        while (current.data != null && end < current.start) {
-            current = current.prev;
-        }
+        Node n = findBiggest(root, start, end);
 
-        if (current.data == null || current.end < start) {
+        if (n == null) {
             return null;
         }
 
-        // Found it
-        current.prev.next = current.next;
-        current.next.prev = current.prev;
-        size--;
+        return removeNode(n);
+    }
 
-        return current.data;
+    // Collects up to max overlapping nodes in ascending order. Returns false when the search can stop.
+    private boolean collectAscending(Node t, long start, long end, Node[] dst, int off, int max) {
+
+        if (t == null || t.maxEnd < start) {
+            return true;
+        }
+
+        if (!collectAscending(t.left, start, end, dst, off, max)) {
+            return false;
+        }
+
+        if (end < t.start) {
+            // All remaining nodes start even later.
+            return false;
+        }
+
+        if (t.end >= start) {
+            if (dst != null) {
+                dst[off + found] = t;
+            }
+
+            if (++found == max) {
+                return false;
+            }
+        }
+
+        return collectAscending(t.right, start, end, dst, off, max);
+    }
+
+    // Collects up to max overlapping nodes in descending order. Returns false when the search can stop.
+    private boolean collectDescending(Node t, long start, long end, Node[] dst, int off, int max) {
+
+        if (t == null || t.maxEnd < start) {
+            return true;
+        }
+
+        if (t.start <= end) {
+            if (!collectDescending(t.right, start, end, dst, off, max)) {
+                return false;
+            }
+
+            if (t.end >= start) {
+                dst[off + found] = t;
+
+                if (++found == max) {
+                    return false;
+                }
+            }
+        }
+
+        return collectDescending(t.left, start, end, dst, off, max);
+    }
+
+    private int removeCollected(Node[] dst, int off) {
+        for (int i = off; i < off + found; i++) {
+            remove(dst[i]);
+        }
+        return found;
+    }
+
+    /**
+     * Removes up to <code>len</code> nodes whose range overlaps the specified range, in one pass. The nodes are removed in the
+     * same order as repeated calls to {@link #removeSmallestInRange(long, long)} would. The removed nodes are stored in
+     * <code>dst</code>, starting at <code>off</code>.
+     *
+     * @param start
+     *            start of the range
+     * @param end
+     *            end of the range
+     * @param dst
+     *            the array to store the removed nodes in
+     * @param off
+     *            the offset in dst
+     * @param len
+     *            the maximum number of nodes to remove
+     * @return the number of nodes removed.
+     */
+    public int removeSmallestInRange(long start, long end, Node[] dst, int off, int len) {
+
+        if (size == 0 || len <= 0) {
+            return 0;
+        }
+
+        found = 0;
+        collectAscending(root, start, end, dst, off, len);
+        return removeCollected(dst, off);
+    }
+
+    /**
+     * Removes up to <code>len</code> nodes whose range overlaps the specified range, in one pass. The nodes are removed in the
+     * same order as repeated calls to {@link #removeBiggestInRange(long, long)} would. The removed nodes are stored in
+     * <code>dst</code>, starting at <code>off</code>.
+     *
+     * @param start
+     *            start of the range
+     * @param end
+     *            end of the range
+     * @param dst
+     *            the array to store the removed nodes in
+     * @param off
+     *            the offset in dst
+     * @param len
+     *            the maximum number of nodes to remove
+     * @return the number of nodes removed.
+     */
+    public int removeBiggestInRange(long start, long end, Node[] dst, int off, int len) {
+
+        if (size == 0 || len <= 0) {
+            return 0;
+        }
+
+        found = 0;
+        collectDescending(root, start, end, dst, off, len);
+        return removeCollected(dst, off);
+    }
+
+    /**
+     * Counts the nodes whose range overlaps the specified range, but stops counting at <code>max</code>.
+     *
+     * @param start
+     *            start of the range
+     * @param end
+     *            end of the range
+     * @param max
+     *            the maximum count
+     * @return the number of overlapping nodes, or <code>max</code> if there are more.
+     */
+    public int countInRange(long start, long end, int max) {
+
+        if (size == 0 || max <= 0) {
+            return 0;
+        }
+
+        found = 0;
+        collectAscending(root, start, end, null, 0, max);
+        return found;
+    }
+
+    /**
+     * Collects the nodes holding a cancelled record, in ascending order.
+     *
+     * @param dst
+     *            the list to add the nodes to
+     */
+    public void collectCancelled(List<Node> dst) {
+        collectCancelled(root, dst);
+    }
+
+    private static void collectCancelled(Node t, List<Node> dst) {
+
+        if (t == null) {
+            return;
+        }
+
+        collectCancelled(t.left, dst);
+
+        if (t.data.isCancelled()) {
+            dst.add(t);
+        }
+
+        collectCancelled(t.right, dst);
     }
 
-    
     public String getName() {
         return name;
     }
 
+    public int getNameId() {
+        return nameId;
+    }
 }
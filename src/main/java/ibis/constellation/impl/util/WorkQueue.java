@@ -17,6 +17,7 @@
 package ibis.constellation.impl.util;
 
 import ibis.constellation.AbstractContext;
+import ibis.constellation.Activity;
 import ibis.constellation.StealStrategy;
 import ibis.constellation.impl.ActivityRecord;
 
@@ -40,7 +41,7 @@ public abstract class WorkQueue {
         }
     }
 
-    // TODO: fix steal to allow multiple in one go!
+    // Subclasses that can steal multiple activities in one go should override this.
     public int steal(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
 
         for (int i = off; i < off + len; i++) {
@@ -54,6 +55,46 @@ public abstract class WorkQueue {
         return len;
     }
 
+    /**
+     * Steals half of the activities that match the specified context, but no more than <code>len</code>. If only one activity
+     * matches, it is stolen. This default implementation assumes that all queued activities match.
+     *
+     * @param c
+     *            the context to match
+     * @param s
+     *            the steal strategy
+     * @param dst
+     *            the array to store the stolen activities in
+     * @param off
+     *            the offset in dst
+     * @param len
+     *            the maximum number of activities to steal
+     * @return the number of activities stolen.
+     */
+    public int stealHalf(AbstractContext c, StealStrategy s, ActivityRecord[] dst, int off, int len) {
+        return steal(c, s, dst, off, Math.min(len, (size() + 1) / 2));
+    }
+
+    /**
+     * Returns the highest priority of the queued activities, or <code>Integer.MIN_VALUE</code> if the queue is empty. Queues
+     * that do not order on priority return {@link Activity#DEFAULT_PRIORITY} when not empty.
+     *
+     * @return the highest priority in this queue.
+     */
+    public int highestPriority() {
+        return size() > 0 ? Activity.DEFAULT_PRIORITY : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Removes the activities that were cancelled while they were queued. Queues that cannot remove activities from the middle
+     * leave them in place, and return 0. Those activities are skipped once they are dequeued.
+     *
+     * @return the number of activities removed.
+     */
+    public int removeCancelled() {
+        return 0;
+    }
+
     protected final String getId() {
         return id;
     }
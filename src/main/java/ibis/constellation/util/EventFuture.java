@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Event;
+import ibis.constellation.NoSuitableExecutorException;
+
+/**
+ * An <code>EventFuture</code> is a {@link CompletableFuture} that is completed by the first event sent to its
+ * {@link #identifier()}. Unlike a {@link SingleEventCollector}, it does not need a thread blocking in a <code>wait</code> loop
+ * to get the event out: the result can be obtained with {@link #get()}, but also be composed with other futures, so many results
+ * can be awaited asynchronously.
+ *
+ * Behind the scenes, the event is received by a small activity that does nothing but complete the future. This activity is not
+ * allowed to leave the node it was submitted on, but events can be sent to it from any node, just like to any other activity.
+ *
+ * Note that the future is completed by the thread of the executor that receives the event. Dependent actions that are not
+ * asynchronous therefore run on that thread too, and should be short.
+ */
+public class EventFuture extends CompletableFuture<Event> {
+
+    public static final Logger logger = LoggerFactory.getLogger(EventFuture.class);
+
+    private ActivityIdentifier identifier;
+
+    private EventFuture() {
+        // use submit
+    }
+
+    /**
+     * Creates an <code>EventFuture</code> by submitting the activity that will receive its event to the specified constellation.
+     *
+     * @param c
+     *            the constellation
+     * @param context
+     *            the activity context of the activity receiving the event; there must be a local executor for this context.
+     * @return the future, or <code>null</code> if the activity was not submitted and should be submitted again later (see
+     *         {@link Constellation#submit(Activity)}).
+     * @exception NoSuitableExecutorException
+     *                is thrown when the system has detected that no suitable executor can be found.
+     */
+    public static EventFuture submit(Constellation c, AbstractContext context) throws NoSuitableExecutorException {
+
+        EventFuture future = new EventFuture();
+        Sink sink = new Sink(context);
+        sink.future = future;
+
+        future.identifier = c.submit(sink);
+
+        if (future.identifier == null) {
+            return null;
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the identifier to send the event to, for instance by passing it to an activity as the parent to send its result
+     * to.
+     *
+     * @return the identifier.
+     */
+    public ActivityIdentifier identifier() {
+        return identifier;
+    }
+
+    @Override
+    public String toString() {
+        return "EventFuture(" + identifier + ") " + super.toString();
+    }
+
+    private static class Sink extends Activity {
+
+        private static final long serialVersionUID = 2974161870525326453L;
+
+        // The activity never leaves this node, so the future is never serialized.
+        private transient EventFuture future;
+
+        Sink(AbstractContext c) {
+            super(c, false, true);
+        }
+
+        @Override
+        public int initialize(Constellation c) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation c, Event e) {
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Event future " + identifier() + " got result!");
+            }
+
+            future.complete(e);
+            return FINISH;
+        }
+
+        @Override
+        public void cleanup(Constellation c) {
+            // empty
+        }
+    }
+}
@@ -49,6 +49,18 @@ public class ActivityTest {
         assertEquals(a.getContext(), c);
     }
    
+    @Test
+    public void defaultPriority() {
+        Activity a = new FakeActivity(new Context("TEST"));
+        assertEquals(Activity.DEFAULT_PRIORITY, a.getPriority());
+    }
+
+    @Test
+    public void priority() {
+        Activity a = new FakeActivity(new Context("TEST"), true, true, 42);
+        assertEquals(42, a.getPriority());
+    }
+
     @Test
     public void expectEventTrue() {
         Activity a = new FakeActivity(new Context("TEST"), false, true);
@@ -437,6 +437,13 @@ public class ConstellationConfigurationTest {
    
         assertEquals(c.getRemoteStealStrategy(), StealStrategy.BIGGEST);
     }
-    
-    
-}
\ No newline at end of file
+
+    @Test
+    public void testLockFreeQueue() {
+        ConstellationConfiguration c = new ConstellationConfiguration(Context.DEFAULT);
+
+        assertEquals(c.isLockFreeQueue(), false);
+        c.setLockFreeQueue(true);
+        assertEquals(c.isLockFreeQueue(), true);
+    }
+}
@@ -20,6 +20,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import org.junit.Test;
 
 /**
@@ -166,4 +171,29 @@ public class ContextTest {
         assertEquals(c.hashCode(), hashcode);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testNameId() {
+        Context c1 = new Context("tag1", 0, 10);
+        Context c2 = new Context(new String("tag1"));
+        Context c3 = new Context("tag2");
+
+        assertEquals(c1.getNameId(), c2.getNameId());
+        assertFalse(c1.getNameId() == c3.getNameId());
+    }
+
+    @Test
+    public void testNameIdAfterSerialization() throws Exception {
+        Context c = new Context("tag1", 0, 10);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(c);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Context tmp = (Context) in.readObject();
+
+        assertEquals(c, tmp);
+        assertEquals(c.getNameId(), tmp.getNameId());
+    }
+}
@@ -48,6 +48,10 @@ public class FakeActivity extends Activity {
     public FakeActivity(AbstractContext c, boolean mayBeStolen, boolean expectsEvents) {
         super(c, mayBeStolen, expectsEvents); 
     }
+
+    public FakeActivity(AbstractContext c, boolean mayBeStolen, boolean expectsEvents, int priority) {
+        super(c, mayBeStolen, expectsEvents, priority);
+    }
     
     @Override
     public void setIdentifier(ActivityIdentifier id) {
@@ -21,6 +21,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -648,6 +652,51 @@ public class StealPoolTest {
         assertFalse(s1.overlap(s2));
     }
 
+    @Test
+    public void testOverlapManyTags() {
+
+        // More than 64 tags, so the bitsets span multiple words.
+        StealPool[] pools = new StealPool[200];
+
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new StealPool("many" + i);
+        }
+
+        StealPool low = StealPool.merge(Arrays.copyOfRange(pools, 0, 100));
+        StealPool high = StealPool.merge(Arrays.copyOfRange(pools, 100, 200));
+
+        assertFalse(low.overlap(high));
+        assertFalse(high.overlap(low));
+        assertTrue(high.overlap(pools[199]));
+        assertTrue(pools[199].overlap(high));
+        assertFalse(low.overlap(pools[199]));
+        assertTrue(low.overlap(StealPool.merge(pools[5], pools[150])));
+    }
+
+    @Test
+    public void testOverlapSerialized() throws Exception {
+
+        StealPool a = new StealPool("A");
+        StealPool b = new StealPool("B");
+        StealPool s = StealPool.merge(a, b);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(s);
+        out.writeObject(StealPool.WORLD);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        StealPool tmp = (StealPool) in.readObject();
+        StealPool world = (StealPool) in.readObject();
+
+        assertEquals(s, tmp);
+        assertTrue(tmp.overlap(a));
+        assertTrue(b.overlap(tmp));
+        assertFalse(tmp.overlap(new StealPool("C")));
+        assertTrue(world.isWorld());
+    }
+
     @Test
     public void testHashcode1() {
 
@@ -679,4 +728,19 @@ public class StealPoolTest {
         assertEquals(a, a.randomlySelectPool(r));
     }
 
+    @Test
+    public void testSelect2() {
+
+        StealPool a = new StealPool("A");
+        StealPool b = new StealPool("B");
+        StealPool s = StealPool.merge(a, b);
+
+        Random r = new Random(1);
+
+        for (int i = 0; i < 10; i++) {
+            StealPool tmp = s.randomlySelectPool(r);
+            assertTrue(tmp.equals(a) || tmp.equals(b));
+        }
+    }
+
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class ActivityIdentifierImplTest {
+
+    private static ActivityIdentifierImpl create(int node, int local, long aid, boolean events) {
+        return ActivityIdentifierImpl.createActivityIdentifier(new ConstellationIdentifierImpl(node, local), aid, events);
+    }
+
+    @Test
+    public void testFields() {
+        ActivityIdentifierImpl id = create(42, 43, 44, true);
+
+        assertEquals(42, id.getNodeId());
+        assertEquals(43, id.getLocalId());
+        assertEquals(44, id.getSequenceNumber());
+        assertTrue(id.expectsEvents());
+        assertEquals(new ConstellationIdentifierImpl(42, 43), id.getOrigin());
+    }
+
+    @Test
+    public void testIsFrom() {
+        ActivityIdentifierImpl id = create(42, 43, 44, true);
+
+        assertTrue(id.isFrom(new ConstellationIdentifierImpl(42, 43)));
+        assertFalse(id.isFrom(new ConstellationIdentifierImpl(42, 44)));
+        assertFalse(id.isFrom(new ConstellationIdentifierImpl(43, 43)));
+        assertFalse(id.isFrom(null));
+    }
+
+    @Test
+    public void testNoEvents() {
+        ActivityIdentifierImpl id = create(42, 43, 44, false);
+
+        assertFalse(id.expectsEvents());
+        assertEquals(44, id.getSequenceNumber());
+    }
+
+    @Test
+    public void testNegativeIds() {
+        ActivityIdentifierImpl id = create(-1, -2, Long.MAX_VALUE, true);
+
+        assertEquals(-1, id.getNodeId());
+        assertEquals(-2, id.getLocalId());
+        assertEquals(Long.MAX_VALUE, id.getSequenceNumber());
+        assertTrue(id.expectsEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSequenceNumber() {
+        create(1, 2, -1, false);
+    }
+
+    @Test
+    public void testEquals() {
+        ActivityIdentifierImpl id = create(1, 2, 3, true);
+
+        assertEquals(id, create(1, 2, 3, true));
+        assertEquals(id.hashCode(), create(1, 2, 3, true).hashCode());
+        assertNotEquals(id, create(2, 1, 3, true));
+        assertNotEquals(id, create(1, 2, 4, true));
+        assertFalse(id.equals(null));
+        assertFalse(id.equals("AID"));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("AID:1:2a:ff", create(1, 42, 255, true).toString());
+    }
+
+    @Test
+    public void testWireEncoding() throws Exception {
+        ActivityIdentifierImpl id = create(7, 8, 9, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        id.writeTo(out);
+        out.close();
+
+        assertEquals(ActivityIdentifierImpl.ENCODED_SIZE, bytes.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ActivityIdentifierImpl copy = ActivityIdentifierImpl.readFrom(in);
+
+        assertEquals(id, copy);
+        assertTrue(copy.expectsEvents());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ActivityIdentifierImpl id = create(7, 8, 9, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(id);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ActivityIdentifierImpl copy = (ActivityIdentifierImpl) in.readObject();
+
+        assertEquals(id, copy);
+        assertFalse(copy.expectsEvents());
+        assertEquals(id.toString(), copy.toString());
+    }
+}
@@ -16,12 +16,15 @@
  */
 package ibis.constellation.impl;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import ibis.constellation.Activity;
 import ibis.constellation.Constellation;
 import ibis.constellation.Context;
 import ibis.constellation.CrashActivity;
@@ -46,6 +49,40 @@ public class ActivityRecordTest {
         assertEquals(id, r.identifier());
     }
 
+    @Test
+    public void testMoves() {
+
+        FakeActivity a = new FakeActivity(new Context("A"));
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(a, id);
+
+        ConstellationIdentifierImpl c1 = ImplUtil.createConstellationIdentifier(1, 42);
+        ConstellationIdentifierImpl c2 = ImplUtil.createConstellationIdentifier(2, 3);
+
+        assertEquals(0, r.getMoves());
+        assertNull(r.getHops());
+
+        assertEquals(1, r.addMove(c1));
+        assertEquals(2, r.addMove(c2));
+        assertEquals(3, r.addMove(c1));
+
+        assertEquals(3, r.getMoves());
+        assertArrayEquals(new ConstellationIdentifierImpl[] { c1, c2 }, r.getHops());
+    }
+
+    @Test
+    public void testMovesNoEvents() {
+
+        FakeActivity a = new FakeActivity(new Context("A"), true, false);
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, false);
+        ActivityRecord r = new ActivityRecord(a, id);
+
+        assertEquals(1, r.addMove(ImplUtil.createConstellationIdentifier(1, 42)));
+        assertNull(r.getHops());
+    }
+
     @Test
     public void testContext() {
 
@@ -160,6 +197,217 @@ public class ActivityRecordTest {
         assertEquals(0, r.pendingEvents());
     }
 
+    @Test
+    public void testEnqueueDequeueEventOrder() {
+
+        FakeActivity a = new FakeActivity(new Context("A"));
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(a, id, 2);
+
+        Event[] events = new Event[10];
+
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new Event(id, id, i);
+            r.enqueue(events[i]);
+        }
+
+        assertEquals(events.length, r.pendingEvents());
+
+        for (int i = 0; i < events.length; i++) {
+            assertTrue(events[i] == r.dequeue());
+        }
+
+        assertEquals(null, r.dequeue());
+    }
+
+    @Test
+    public void testEventQueueCapacity() {
+
+        FakeActivity a = new FakeActivity(new Context("A"));
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(a, id, 7);
+
+        assertEquals(7, r.eventQueueCapacity());
+    }
+
+    @Test
+    public void testCompletedWork() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        FakeActivity a = new FakeActivity(new Context("A"));
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(a, id);
+
+        // Suspending completes the unit of the activity.
+        r.run(fc);
+        assertEquals(1, r.takeCompletedWork());
+        assertEquals(0, r.takeCompletedWork());
+
+        // Finishing keeps the unit of the event until the cleanup is done, which also completes the dropped events.
+        r.enqueue(new Event(id, id, 1));
+        r.enqueue(new Event(id, id, 2));
+        r.setRunnable();
+        r.run(fc);
+        assertEquals(0, r.takeCompletedWork());
+
+        r.run(fc);
+        assertTrue(r.isDone());
+        assertEquals(2, r.takeCompletedWork());
+    }
+
+    @Test
+    public void testCompletedWorkError() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        CrashActivity a = new CrashActivity(new Context("A"), true, false, false);
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(a, id);
+
+        r.enqueue(new Event(id, id, 1));
+        r.run(fc);
+
+        assertTrue(r.isError());
+        assertEquals(2, r.takeCompletedWork());
+    }
+
+    @Test
+    public void testCancelFresh() {
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new FakeActivity(new Context("A")), id);
+
+        assertFalse(r.hasStarted());
+
+        // A fresh activity holds the unit of its initialize.
+        assertEquals(1, r.cancel());
+        assertTrue(r.isCancelled());
+        assertTrue(r.isDone());
+        assertEquals(-1, r.cancel());
+    }
+
+    @Test
+    public void testCancelSuspended() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new FakeActivity(new Context("A")), id);
+
+        r.run(fc);
+        r.takeCompletedWork();
+        assertTrue(r.hasStarted());
+
+        // A suspended activity only holds the events that are waiting for it.
+        r.enqueue(new Event(id, id, 1));
+        r.enqueue(new Event(id, id, 2));
+        assertEquals(2, r.cancel());
+        assertFalse(r.needsToRun());
+    }
+
+    @Test
+    public void testCancelFinishing() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new FakeActivity(new Context("A")), id);
+
+        r.run(fc);
+        r.enqueue(new Event(id, id, 1));
+        r.enqueue(new Event(id, id, 2));
+        r.setRunnable();
+        r.run(fc);
+        assertTrue(r.isFinishing());
+
+        // A finishing activity holds the unit of its cleanup, and the event it did not process.
+        assertEquals(2, r.cancel());
+    }
+
+    @Test
+    public void testCancelDone() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new FakeActivity(new Context("A")), id);
+
+        r.run(fc);
+        r.enqueue(new Event(id, id, 1));
+        r.setRunnable();
+        r.run(fc);
+        r.run(fc);
+        assertTrue(r.isDone());
+
+        assertEquals(-1, r.cancel());
+        assertFalse(r.isCancelled());
+    }
+
+    @Test
+    public void testEventQueueShrinksWhenIdle() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new SuspendingActivity(), id, 4);
+
+        // Initialize, after which the activity suspends.
+        r.run(fc);
+
+        for (int i = 0; i < 64; i++) {
+            r.enqueue(new Event(id, id, i));
+        }
+
+        assertEquals(64, r.eventQueueCapacity());
+
+        r.setRunnable();
+
+        while (r.pendingEvents() > 0) {
+            r.run(fc);
+        }
+
+        // The burst used the whole queue, so it is kept once.
+        assertEquals(64, r.eventQueueCapacity());
+
+        // Each quiet period halves the queue, until the initial capacity is reached.
+        int[] expected = { 32, 16, 8, 4, 4 };
+
+        for (int i = 0; i < expected.length; i++) {
+            r.enqueue(new Event(id, id, i));
+            r.setRunnable();
+            r.run(fc);
+            assertEquals(expected[i], r.eventQueueCapacity());
+        }
+    }
+
+    @Test
+    public void testEventQueueKeptWhenBusy() {
+
+        Constellation fc = ImplUtil.createFakeConstellation();
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 42, 1001, true);
+        ActivityRecord r = new ActivityRecord(new SuspendingActivity(), id, 4);
+
+        r.run(fc);
+
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < 12; i++) {
+                r.enqueue(new Event(id, id, i));
+            }
+
+            r.setRunnable();
+
+            while (r.pendingEvents() > 0) {
+                r.run(fc);
+            }
+
+            assertEquals(16, r.eventQueueCapacity());
+        }
+    }
+
     @Test
     public void testRestrictToLocal1() {
 
@@ -591,4 +839,27 @@ public class ActivityRecordTest {
         assertTrue(r.setRunnable());
     }
 
+    private static class SuspendingActivity extends Activity {
+
+        private static final long serialVersionUID = 1L;
+
+        SuspendingActivity() {
+            super(new Context("A"), true);
+        }
+
+        @Override
+        public int initialize(Constellation constellation) {
+            return SUSPEND;
+        }
+
+        @Override
+        public int process(Constellation constellation, Event event) {
+            return SUSPEND;
+        }
+
+        @Override
+        public void cleanup(Constellation constellation) {
+            // nothing
+        }
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ibis.constellation.ConstellationProperties;
+import ibis.constellation.SubmitRejectedException;
+
+public class BackpressureTest {
+
+    @Test
+    public void testDisabled() throws Exception {
+        Backpressure b = new Backpressure(new ConstellationProperties(new Properties()), 1);
+        assertFalse(b.isEnabled());
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(b.acquire(false));
+        }
+
+        assertFalse(b.isExhausted());
+        assertEquals(0, b.getOutstanding());
+    }
+
+    @Test
+    public void testProperties() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_BACKPRESSURE_LIMIT, "10");
+        p.put(ConstellationProperties.S_BACKPRESSURE_MODE, "retry");
+
+        Backpressure b = new Backpressure(new ConstellationProperties(p), 1);
+        assertTrue(b.isEnabled());
+        assertEquals(10, b.getLimit());
+        assertEquals(Backpressure.RETRY, b.getMode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMode() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_BACKPRESSURE_MODE, "drop");
+        new Backpressure(new ConstellationProperties(p), 1);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        Backpressure b = new Backpressure(2, Backpressure.RETRY, 2);
+        assertTrue(b.acquire(false));
+        assertTrue(b.acquire(false));
+        assertTrue(b.isExhausted());
+        assertFalse(b.acquire(false));
+        assertEquals(1, b.getRejected());
+
+        b.release(1);
+        assertTrue(b.acquire(false));
+        assertEquals(2, b.getOutstanding());
+        assertEquals(2, b.getPeak());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        Backpressure b = new Backpressure(1, Backpressure.FAIL, 2);
+        assertTrue(b.acquire(false));
+
+        try {
+            b.acquire(false);
+            throw new AssertionError("Expected SubmitRejectedException");
+        } catch (SubmitRejectedException e) {
+            // expected
+        }
+
+        assertEquals(1, b.getRejected());
+        assertEquals(1, b.getOutstanding());
+    }
+
+    @Test
+    public void testArrivedDoesNotBlock() throws Exception {
+        Backpressure b = new Backpressure(1, Backpressure.BLOCK, 2);
+        b.arrived(3);
+        assertEquals(3, b.getOutstanding());
+        b.release(3);
+        assertEquals(0, b.getOutstanding());
+        assertEquals(3, b.getPeak());
+    }
+
+    @Test(timeout = 10000)
+    public void testBlock() throws Exception {
+        final Backpressure b = new Backpressure(1, Backpressure.BLOCK, 2);
+        assertTrue(b.acquire(false));
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    b.acquire(false);
+                } catch (SubmitRejectedException e) {
+                    // not in this mode
+                }
+            }
+        };
+
+        t.start();
+
+        while (b.getBlocked() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertTrue(t.isAlive());
+        b.release(1);
+        t.join();
+
+        assertEquals(1, b.getOutstanding());
+        assertEquals(1, b.getBlocked());
+    }
+
+    @Test(timeout = 10000)
+    public void testExecutorThreadOverdraws() throws Exception {
+        Backpressure b = new Backpressure(1, Backpressure.BLOCK, 2);
+        assertTrue(b.acquire(true));
+
+        // Nothing is released, so an executor thread is admitted after a while.
+        assertTrue(b.acquire(true));
+        assertEquals(2, b.getOutstanding());
+        assertEquals(1, b.getOverdrawn());
+    }
+
+    @Test(timeout = 10000)
+    public void testLastExecutorThreadNeverBlocks() throws Exception {
+        Backpressure b = new Backpressure(1, Backpressure.BLOCK, 1);
+        assertTrue(b.acquire(true));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(b.acquire(true));
+        }
+
+        assertEquals(101, b.getOutstanding());
+        assertEquals(100, b.getOverdrawn());
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockedExecutorThreadKeepsServing() throws Exception {
+        final Backpressure b = new Backpressure(1, Backpressure.BLOCK, 2);
+        assertTrue(b.acquire(true));
+
+        final AtomicInteger served = new AtomicInteger();
+
+        // A peer releases room only after it has been served a few times.
+        assertTrue(b.acquire(true, new Runnable() {
+            @Override
+            public void run() {
+                if (served.incrementAndGet() == 5) {
+                    b.release(1);
+                }
+            }
+        }));
+
+        assertTrue(served.get() >= 5);
+        assertEquals(1, b.getOutstanding());
+        assertEquals(1, b.getBlocked());
+        assertEquals(0, b.getOverdrawn());
+    }
+
+    @Test(timeout = 10000)
+    public void testLastExecutorThreadDoesNotServe() throws Exception {
+        Backpressure b = new Backpressure(1, Backpressure.BLOCK, 1);
+        assertTrue(b.acquire(true));
+
+        assertTrue(b.acquire(true, new Runnable() {
+            @Override
+            public void run() {
+                fail("the last executor thread should not wait");
+            }
+        }));
+
+        assertEquals(2, b.getOutstanding());
+        assertEquals(1, b.getOverdrawn());
+    }
+}
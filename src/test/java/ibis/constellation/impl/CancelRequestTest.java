@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CancelRequestTest {
+
+    @Test
+    public void testConstructor() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ConstellationIdentifierImpl target = ImplUtil.createConstellationIdentifier(13, 14);
+
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 0, 1, true);
+
+        CancelRequest r = new CancelRequest(source, target, new ActivityIdentifierImpl[] { id }, false);
+
+        assertEquals(source, r.source);
+        assertEquals(target, r.target);
+        assertEquals(id, r.activities[0]);
+        assertFalse(r.cascade);
+        assertFalse(r.isBroadcast());
+    }
+
+    @Test
+    public void testBroadcast() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 0, 1, true);
+
+        CancelRequest r = new CancelRequest(source, null, new ActivityIdentifierImpl[] { id }, true);
+
+        assertTrue(r.cascade);
+        assertTrue(r.isBroadcast());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+
+        new CancelRequest(source, null, new ActivityIdentifierImpl[0], true);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ibis.constellation.Context;
+import ibis.constellation.FakeActivity;
+
+public class CancellationTest {
+
+    private static ActivityIdentifierImpl id(long aid) {
+        return (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 2, aid, true);
+    }
+
+    private static ActivityRecord record(long aid, ActivityIdentifierImpl parent) {
+        ActivityRecord r = new ActivityRecord(new FakeActivity(new Context("A")), id(aid));
+        r.setParent(parent);
+        return r;
+    }
+
+    @Test
+    public void testEmpty() {
+        Cancellation c = new Cancellation();
+
+        assertFalse(c.isActive());
+        assertFalse(c.isCancelled(id(1)));
+        assertFalse(c.cascades(id(1)));
+        assertFalse(c.cascades(null));
+        assertNull(c.mustCancel(record(1, null)));
+    }
+
+    @Test
+    public void testCancel() {
+        Cancellation c = new Cancellation();
+        c.add(id(1), false);
+
+        assertTrue(c.isActive());
+        assertTrue(c.isCancelled(id(1)));
+        assertFalse(c.cascades(id(1)));
+
+        assertEquals(Boolean.FALSE, c.mustCancel(record(1, null)));
+
+        // Not cascading, so its children are left alone.
+        assertNull(c.mustCancel(record(2, id(1))));
+    }
+
+    @Test
+    public void testCascade() {
+        Cancellation c = new Cancellation();
+        c.add(id(1), true);
+
+        assertTrue(c.cascades(id(1)));
+        assertEquals(Boolean.TRUE, c.mustCancel(record(1, null)));
+        assertEquals(Boolean.TRUE, c.mustCancel(record(2, id(1))));
+        assertNull(c.mustCancel(record(3, id(2))));
+    }
+
+    @Test
+    public void testCascadeWins() {
+        Cancellation c = new Cancellation();
+        c.add(id(1), true);
+        c.add(id(1), false);
+
+        assertTrue(c.cascades(id(1)));
+
+        c.add(id(2), false);
+        c.add(id(2), true);
+
+        assertTrue(c.cascades(id(2)));
+    }
+
+    @Test
+    public void testRequest() {
+        Cancellation c = new Cancellation();
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+
+        c.add(new CancelRequest(source, null, new ActivityIdentifierImpl[] { id(1), id(2) }, true));
+
+        assertTrue(c.cascades(id(1)));
+        assertTrue(c.cascades(id(2)));
+        assertFalse(c.isCancelled(id(3)));
+    }
+
+    @Test
+    public void testExpire() {
+        Cancellation c = new Cancellation();
+        long now = System.currentTimeMillis();
+
+        c.add(id(1), true);
+        c.add(id(2), false);
+
+        // Too early, nothing happens.
+        c.expire(now);
+        assertTrue(c.cascades(id(1)));
+
+        // Remembered for another period.
+        c.expire(now + Cancellation.EXPIRY);
+        assertTrue(c.isActive());
+        assertTrue(c.cascades(id(1)));
+        assertTrue(c.isCancelled(id(2)));
+        assertEquals(Boolean.TRUE, c.mustCancel(record(3, id(1))));
+
+        // Cascading later wins over the entry of the previous period.
+        c.add(id(2), true);
+        assertTrue(c.cascades(id(2)));
+
+        c.expire(now + 2 * Cancellation.EXPIRY);
+        assertTrue(c.isActive());
+        assertFalse(c.isCancelled(id(1)));
+        assertTrue(c.cascades(id(2)));
+
+        c.expire(now + 3 * Cancellation.EXPIRY);
+        assertFalse(c.isActive());
+        assertFalse(c.isCancelled(id(2)));
+        assertNull(c.mustCancel(record(3, id(1))));
+    }
+
+    @Test
+    public void testNonCascadeKeepsPreviousCascade() {
+        Cancellation c = new Cancellation();
+        long now = System.currentTimeMillis();
+
+        c.add(id(1), true);
+        c.expire(now + Cancellation.EXPIRY);
+        c.add(id(1), false);
+
+        assertTrue(c.cascades(id(1)));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+
+/**
+ * Microbenchmark for context matching, as done on every submit, steal and reclaim.
+ *
+ * This is not a unit test. Run it with <code>java ibis.constellation.impl.ContextMatchBenchmark [iterations]</code>.
+ */
+public class ContextMatchBenchmark {
+
+    // Names that are not identical to those of the executors, as is the case for activities that were sent over the network.
+    private static final Context[] ACTIVITIES = { new Context(new String("worker")), new Context(new String("other")),
+            new Context(new String("worker"), 42), new Context(new String("worker-gpu"), 1, 100) };
+
+    private static final AbstractContext[] EXECUTORS = { new Context("worker"),
+            new OrContext(new Context("io"), new Context("master"), new Context("worker-cpu"), new Context("worker")),
+            new Context("worker", 0, 10) };
+
+    private static final String[] NAMES = { "Context", "OrContext(4)", "Context(range)" };
+
+    private static volatile int sink;
+
+    private static double runContextMatch(AbstractContext executor, int iterations) {
+
+        int count = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            if (ContextMatch.match(executor, ACTIVITIES[i & 3])) {
+                count++;
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        sink += count;
+        return (double) time / iterations;
+    }
+
+    private static double runMatcher(AbstractContext executor, int iterations) {
+
+        ContextMatcher m = new ContextMatcher(executor);
+
+        int count = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            if (m.match(ACTIVITIES[i & 3])) {
+                count++;
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        sink += count;
+        return (double) time / iterations;
+    }
+
+    public static void main(String[] args) {
+
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 50000000;
+
+        for (int round = 0; round < 3; round++) {
+            for (int e = 0; e < EXECUTORS.length; e++) {
+                double t1 = runContextMatch(EXECUTORS[e], iterations);
+                double t2 = runMatcher(EXECUTORS[e], iterations);
+
+                if (round == 2) {
+                    System.out.printf("%-16s ContextMatch: %6.2f ns/match, ContextMatcher: %6.2f ns/match%n", NAMES[e], t1, t2);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ibis.constellation.AbstractContext;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+
+public class ContextMatcherTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNull() {
+        new ContextMatcher(null);
+    }
+
+    @Test
+    public void testNoMatchNull() {
+        assertFalse(new ContextMatcher(new Context("A")).match((AbstractContext) null));
+    }
+
+    @Test
+    public void testUnbounded() {
+        ContextMatcher m = new ContextMatcher(new Context("A"));
+        assertTrue(m.match(new Context("A", 5)));
+        assertFalse(m.match(new Context("B", 5)));
+        assertTrue(m.match(new OrContext(new Context("B"), new Context("A", 1, 2))));
+    }
+
+    @Test
+    public void testRanges() {
+        ContextMatcher m = new ContextMatcher(new OrContext(new Context("A", 0, 10), new Context("A", 20, 30)));
+        assertTrue(m.match(new Context("A", 10, 12)));
+        assertFalse(m.match(new Context("A", 11, 19)));
+        assertTrue(m.match(new Context("A", 30)));
+        assertFalse(m.match(new Context("B", 5)));
+    }
+
+    private static Context randomContext(Random random) {
+        String name = "name" + random.nextInt(10);
+
+        if (random.nextInt(4) == 0) {
+            return new Context(name);
+        }
+
+        long start = random.nextInt(100);
+        return new Context(name, start, start + random.nextInt(20));
+    }
+
+    private static AbstractContext randomAbstractContext(Random random) {
+        if (random.nextBoolean()) {
+            return randomContext(random);
+        }
+
+        Context[] tmp = new Context[2 + random.nextInt(3)];
+
+        for (int i = 0; i < tmp.length; i++) {
+            tmp[i] = randomContext(random);
+        }
+
+        return new OrContext(tmp);
+    }
+
+    @Test
+    public void testRandomAgainstContextMatch() {
+        Random random = new Random(3);
+
+        for (int i = 0; i < 10000; i++) {
+            AbstractContext a = randomAbstractContext(random);
+            AbstractContext b = randomAbstractContext(random);
+            assertEquals(ContextMatch.match(a, b), new ContextMatcher(a).match(b));
+        }
+    }
+}
@@ -16,6 +16,8 @@
  */
 package ibis.constellation.impl;
 
+import java.util.concurrent.Callable;
+
 import ibis.constellation.Activity;
 import ibis.constellation.ActivityIdentifier;
 import ibis.constellation.Constellation;
@@ -35,11 +37,36 @@ public class FakeConstellation implements Constellation {
         return null;
     }
 
+    @Override
+    public ActivityIdentifier[] submit(Activity[] activities) {
+        return new ActivityIdentifier[activities.length];
+    }
+
     @Override
     public void send(Event e) {
         // nothing
     }
 
+    @Override
+    public void send(Event[] events) {
+        // nothing
+    }
+
+    @Override
+    public void offload(ActivityIdentifier target, Callable<?> task) {
+        // nothing
+    }
+
+    @Override
+    public void awaitQuiescence() {
+        // nothing
+    }
+
+    @Override
+    public void cancel(ActivityIdentifier activity, boolean cascade) {
+        // nothing
+    }
+
     @Override
     public boolean activate() {
         return true;
@@ -51,6 +51,15 @@ public class ImplUtil {
         FakeActivity t = new FakeActivity(c);
         return new ActivityRecord(t, (ActivityIdentifierImpl) createActivityIdentifier(0, 0, 0, true));
     }
+
+    public static ActivityRecord createActivityRecord(AbstractContext c, int priority) {
+        FakeActivity t = new FakeActivity(c, true, true, priority);
+        return new ActivityRecord(t, (ActivityIdentifierImpl) createActivityIdentifier(0, 0, 0, true));
+    }
+
+    public static int cancel(ActivityRecord r) {
+        return r.cancel();
+    }
     
 }
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LocationUpdateTest {
+
+    @Test
+    public void testConstructor() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 2, 3, true);
+
+        LocationUpdate u = new LocationUpdate(source, id, 7);
+
+        assertEquals(source, u.source);
+        assertEquals(id, u.activity);
+        assertEquals(7, u.moves);
+    }
+
+    @Test
+    public void testTargetIsOrigin() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ActivityIdentifierImpl id = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 2, 3, true);
+
+        LocationUpdate u = new LocationUpdate(source, id, 2);
+
+        assertEquals(ImplUtil.createConstellationIdentifier(1, 2), u.target);
+        assertEquals(id, u.targetActivity());
+    }
+}
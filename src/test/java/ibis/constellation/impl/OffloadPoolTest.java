@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import ibis.constellation.ConstellationProperties;
+
+public class OffloadPoolTest {
+
+    private static final Callable<Object> TASK = new Callable<Object>() {
+        @Override
+        public Object call() {
+            return null;
+        }
+    };
+
+    @Test
+    public void testProperties() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_OFFLOAD_THREADS, "cached");
+
+        OffloadPool o = new OffloadPool(new ConstellationProperties(p));
+        assertEquals(0, o.getOffloaded());
+        o.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownThreads() throws Exception {
+        Properties p = new Properties();
+        p.put(ConstellationProperties.S_OFFLOAD_THREADS, "green");
+
+        new OffloadPool(new ConstellationProperties(p));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterShutdown() throws Exception {
+        OffloadPool o = new OffloadPool(OffloadPool.CACHED);
+        o.shutdown();
+        o.submit((MultiThreadedConstellation) null, null, TASK);
+    }
+
+    @Test
+    public void testPrintStatistics() throws Exception {
+        OffloadPool o = new OffloadPool(OffloadPool.CACHED);
+
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(b);
+        o.printStatistics(out);
+        out.flush();
+
+        assertTrue(b.toString().contains("tasks           : 0"));
+        o.shutdown();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class QuiescenceTest {
+
+    @Test
+    public void testInitial() {
+        Quiescence q = new Quiescence();
+        assertTrue(q.isQuiescent());
+        assertArrayEquals(new long[] { 0, 0 }, q.getCounts());
+    }
+
+    @Test
+    public void testCounts() {
+        Quiescence q = new Quiescence();
+
+        q.created(3);
+        assertFalse(q.isQuiescent());
+
+        q.completed(2);
+        assertFalse(q.isQuiescent());
+        assertArrayEquals(new long[] { 2, 3 }, q.getCounts());
+
+        q.completed(1);
+        assertTrue(q.isQuiescent());
+        assertEquals(3, q.getCreated());
+        assertEquals(3, q.getCompleted());
+    }
+
+    @Test
+    public void testAwaitTimeout() throws Exception {
+        Quiescence q = new Quiescence();
+        q.created(1);
+        assertFalse(q.await(10));
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        final Quiescence q = new Quiescence();
+        q.created(1);
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                q.completed(1);
+            }
+        };
+
+        t.start();
+        q.await();
+        assertTrue(q.isQuiescent());
+        t.join();
+    }
+}
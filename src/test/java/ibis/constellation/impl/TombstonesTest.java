@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TombstonesTest {
+
+    @Test
+    public void testConstructor() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ConstellationIdentifierImpl target = ImplUtil.createConstellationIdentifier(13, 14);
+
+        ActivityIdentifierImpl id1 = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(1, 0, 1, true);
+        ActivityIdentifierImpl id2 = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(2, 0, 2, true);
+
+        Tombstones t = new Tombstones(source, target, new ActivityIdentifierImpl[] { id1, id2 });
+
+        assertEquals(source, t.source);
+        assertEquals(target, t.target);
+        assertEquals(2, t.size());
+        assertEquals(id2, t.activities[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ConstellationIdentifierImpl target = ImplUtil.createConstellationIdentifier(13, 14);
+
+        new Tombstones(source, target, new ActivityIdentifierImpl[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNull() {
+
+        ConstellationIdentifierImpl source = ImplUtil.createConstellationIdentifier(42, 43);
+        ConstellationIdentifierImpl target = ImplUtil.createConstellationIdentifier(13, 14);
+
+        new Tombstones(source, target, null);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class QuiescenceDetectorTest {
+
+    /**
+     * A detector for a pool in which the other nodes reply right away with the counters we give them.
+     */
+    private static class FakeDetector extends QuiescenceDetector {
+
+        // The counters of each node, completed units first. The first node is the local one.
+        long[][] nodes;
+
+        boolean reachable = true;
+
+        int waves;
+
+        FakeDetector(long[]... nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        protected synchronized int requestCounts(long wave) {
+
+            waves++;
+
+            if (!reachable) {
+                return -1;
+            }
+
+            for (int i = 1; i < nodes.length; i++) {
+                gotReply(new QuiescenceCounts(wave, nodes[i][0], nodes[i][1]));
+            }
+
+            return nodes.length - 1;
+        }
+
+        @Override
+        protected synchronized long[] getLocalCounts() {
+            return nodes[0].clone();
+        }
+    }
+
+    @Test
+    public void testUnbalancedNodes() throws InterruptedException {
+
+        // Node 0 stole work from node 1 and completed it, node 2 completed events sent by node 0.
+        FakeDetector d = new FakeDetector(new long[] { 10, 7 }, new long[] { 3, 8 }, new long[] { 4, 2 });
+
+        QuiescenceCounts counts = d.runWave();
+
+        assertEquals(17, counts.completed);
+        assertEquals(17, counts.created);
+
+        // No node is balanced on its own, but the pool is quiescent.
+        d.detect();
+        assertEquals(3, d.waves);
+    }
+
+    @Test
+    public void testLocalNodeUnbalanced() throws InterruptedException {
+
+        // The master exported work, so its own counters never match again.
+        FakeDetector d = new FakeDetector(new long[] { 0, 5 }, new long[] { 5, 0 });
+
+        d.detect();
+        assertEquals(2, d.waves);
+    }
+
+    @Test
+    public void testPendingWork() throws InterruptedException {
+
+        final FakeDetector d = new FakeDetector(new long[] { 2, 5 }, new long[] { 1, 0 });
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+
+                synchronized (d) {
+                    // The remaining work completes on the other node.
+                    d.nodes[1] = new long[] { 3, 0 };
+                }
+            }
+        };
+
+        t.start();
+        d.detect();
+        t.join();
+
+        assertTrue(d.waves > 2);
+
+        QuiescenceCounts counts = d.runWave();
+        assertEquals(5, counts.completed);
+        assertEquals(5, counts.created);
+    }
+
+    @Test
+    public void testUnreachable() throws InterruptedException {
+        FakeDetector d = new FakeDetector(new long[] { 0, 0 }, new long[] { 0, 0 });
+        d.reachable = false;
+        assertNull(d.runWave());
+    }
+
+    @Test
+    public void testLateReply() throws InterruptedException {
+
+        FakeDetector d = new FakeDetector(new long[] { 1, 1 }, new long[] { 1, 1 });
+
+        QuiescenceCounts counts = d.runWave();
+
+        // A reply to a wave that has already ended does not count.
+        d.gotReply(new QuiescenceCounts(counts.wave - 1, 100, 0));
+
+        counts = d.runWave();
+        assertEquals(2, counts.completed);
+        assertEquals(2, counts.created);
+    }
+}
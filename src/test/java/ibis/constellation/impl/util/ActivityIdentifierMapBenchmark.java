@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ibis.constellation.impl.ActivityIdentifierImpl;
+import ibis.constellation.impl.ImplUtil;
+
+/**
+ * Measures the heap used per entry, and the time per lookup, of {@link ActivityIdentifierMap} and
+ * {@link ConcurrentActivityIdentifierMap}, compared to the {@link HashMap} and {@link ConcurrentHashMap} they replace. The
+ * identifiers themselves are allocated up front and are not counted, as they are kept alive by their activities anyway.
+ *
+ * This is not a unit test. Run it with
+ * <code>java -Xmx4g ibis.constellation.impl.util.ActivityIdentifierMapBenchmark [entries] [table]</code>.
+ * As the tables share a call site, run them one at a time, in separate JVMs, for fair timings.
+ */
+public class ActivityIdentifierMapBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    private static ActivityIdentifierImpl[] ids;
+
+    // The same identifiers in random order.
+    private static ActivityIdentifierImpl[] shuffled;
+
+    // Equal identifiers, but different objects, like the ones received in a message, in random order.
+    private static ActivityIdentifierImpl[] copies;
+
+    private static long usedMemory() {
+        Runtime r = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return r.totalMemory() - r.freeMemory();
+    }
+
+    private interface Table {
+        void put(ActivityIdentifierImpl id);
+
+        Object get(ActivityIdentifierImpl id);
+
+        void remove(ActivityIdentifierImpl id);
+    }
+
+    private static String only;
+
+    private static void run(String name, Table t) {
+
+        if (only != null && !only.equals(name)) {
+            return;
+        }
+
+        long before = usedMemory();
+
+        for (ActivityIdentifierImpl id : ids) {
+            t.put(id);
+        }
+
+        long after = usedMemory();
+
+        double inOrder = time(t, ids);
+        double random = time(t, shuffled);
+        double copied = time(t, copies);
+        double churn = churn(t);
+
+        System.out.printf("%-32s %5.1f bytes/entry, ns/get: %5.1f in order, %5.1f random, %5.1f copies; %5.1f ns/remove+put\n",
+                name, (after - before) / (double) ids.length, inOrder, random, copied, churn);
+    }
+
+    // Removes and reinserts all entries in random order, like activities that finish while new ones are submitted.
+    private static double churn(Table t) {
+
+        int passes = Math.max(5, 20000000 / shuffled.length);
+        double best = Double.MAX_VALUE;
+
+        for (int p = 0; p < passes; p++) {
+            long start = System.nanoTime();
+
+            for (ActivityIdentifierImpl id : shuffled) {
+                t.remove(id);
+                t.put(id);
+            }
+
+            best = Math.min(best, (System.nanoTime() - start) / (double) shuffled.length);
+        }
+
+        return best;
+    }
+
+    // Returns the best time per get over a number of passes, so the JIT has warmed up.
+    private static double time(Table t, ActivityIdentifierImpl[] keys) {
+
+        int passes = Math.max(5, 50000000 / keys.length);
+        double best = Double.MAX_VALUE;
+
+        for (int p = 0; p < passes; p++) {
+            long start = System.nanoTime();
+            int found = 0;
+
+            for (ActivityIdentifierImpl id : keys) {
+                if (t.get(id) != null) {
+                    found++;
+                }
+            }
+
+            long time = System.nanoTime() - start;
+
+            if (found != keys.length) {
+                throw new Error("Found " + found + " out of " + keys.length);
+            }
+
+            best = Math.min(best, time / (double) keys.length);
+        }
+
+        return best;
+    }
+
+    public static void main(String[] args) {
+
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        only = args.length > 1 ? args[1] : null;
+
+        ids = new ActivityIdentifierImpl[entries];
+
+        for (int i = 0; i < entries; i++) {
+            // Spread the activities over a few constellations, like the stolen ones in a lookup table.
+            ids[i] = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(i & 3, i & 7, i, false);
+        }
+
+        shuffled = ids.clone();
+        Random random = new Random(42);
+
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            ActivityIdentifierImpl tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+
+        copies = new ActivityIdentifierImpl[entries];
+
+        for (int i = 0; i < entries; i++) {
+            ActivityIdentifierImpl id = shuffled[i];
+            copies[i] = (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(id.getOrigin().getNodeId(),
+                    id.getOrigin().getLocalId(), id.getSequenceNumber(), false);
+        }
+
+        run("HashMap", new Table() {
+            HashMap<ActivityIdentifierImpl, Object> m = new HashMap<ActivityIdentifierImpl, Object>();
+
+            @Override
+            public void put(ActivityIdentifierImpl id) {
+                m.put(id, VALUE);
+            }
+
+            @Override
+            public Object get(ActivityIdentifierImpl id) {
+                return m.get(id);
+            }
+
+            @Override
+            public void remove(ActivityIdentifierImpl id) {
+                m.remove(id);
+            }
+        });
+
+        run("ActivityIdentifierMap", new Table() {
+            ActivityIdentifierMap<Object> m = new ActivityIdentifierMap<Object>();
+
+            @Override
+            public void put(ActivityIdentifierImpl id) {
+                m.put(id, VALUE);
+            }
+
+            @Override
+            public Object get(ActivityIdentifierImpl id) {
+                return m.get(id);
+            }
+
+            @Override
+            public void remove(ActivityIdentifierImpl id) {
+                m.remove(id);
+            }
+        });
+
+        run("ConcurrentHashMap", new Table() {
+            ConcurrentHashMap<ActivityIdentifierImpl, Object> m = new ConcurrentHashMap<ActivityIdentifierImpl, Object>();
+
+            @Override
+            public void put(ActivityIdentifierImpl id) {
+                m.put(id, VALUE);
+            }
+
+            @Override
+            public Object get(ActivityIdentifierImpl id) {
+                return m.get(id);
+            }
+
+            @Override
+            public void remove(ActivityIdentifierImpl id) {
+                m.remove(id);
+            }
+        });
+
+        run("ConcurrentActivityIdentifierMap", new Table() {
+            ConcurrentActivityIdentifierMap<Object> m = new ConcurrentActivityIdentifierMap<Object>();
+
+            @Override
+            public void put(ActivityIdentifierImpl id) {
+                m.put(id, VALUE);
+            }
+
+            @Override
+            public Object get(ActivityIdentifierImpl id) {
+                return m.get(id);
+            }
+
+            @Override
+            public void remove(ActivityIdentifierImpl id) {
+                m.remove(id);
+            }
+        });
+    }
+}
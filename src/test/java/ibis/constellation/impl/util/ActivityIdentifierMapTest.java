@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.ActivityIdentifierImpl;
+import ibis.constellation.impl.ImplUtil;
+
+public class ActivityIdentifierMapTest {
+
+    private static ActivityIdentifierImpl id(int node, int local, long seq) {
+        return (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(node, local, seq, false);
+    }
+
+    @Test
+    public void testPackedIdentifier() {
+        ActivityIdentifierImpl id = id(-1, 7, 42);
+        assertEquals(0xFFFFFFFF00000007L, id.getPackedOrigin());
+        assertEquals(42, id.getSequenceNumber());
+    }
+
+    @Test
+    public void testEmpty() {
+        ActivityIdentifierMap<String> m = new ActivityIdentifierMap<String>();
+        assertTrue(m.isEmpty());
+        assertNull(m.get(id(0, 0, 0)));
+        assertNull(m.remove(id(0, 0, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNull() {
+        new ActivityIdentifierMap<String>().put(id(0, 0, 0), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCapacity() {
+        new ActivityIdentifierMap<String>(-1);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        ActivityIdentifierMap<String> m = new ActivityIdentifierMap<String>();
+
+        assertNull(m.put(id(1, 2, 3), "a"));
+        assertEquals("a", m.put(id(1, 2, 3), "b"));
+        assertEquals(1, m.size());
+
+        // Equal identifiers are different objects.
+        assertEquals("b", m.get(id(1, 2, 3)));
+        assertTrue(m.containsKey(id(1, 2, 3)));
+        assertFalse(m.containsKey(id(2, 1, 3)));
+        assertNull(m.get(id(1, 2, 4)));
+
+        assertEquals("b", m.remove(id(1, 2, 3)));
+        assertNull(m.remove(id(1, 2, 3)));
+        assertTrue(m.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        ActivityIdentifierMap<String> m = new ActivityIdentifierMap<String>();
+
+        for (int i = 0; i < 100; i++) {
+            m.put(id(0, 0, i), "x");
+        }
+
+        m.clear();
+        assertEquals(0, m.size());
+        assertNull(m.get(id(0, 0, 5)));
+    }
+
+    @Test
+    public void testRandomAgainstHashMap() {
+        // Few distinct keys and many operations, so probe chains are often broken up by removals.
+        Random r = new Random(42);
+        ActivityIdentifierMap<Integer> m = new ActivityIdentifierMap<Integer>();
+        HashMap<ActivityIdentifierImpl, Integer> ref = new HashMap<ActivityIdentifierImpl, Integer>();
+
+        for (int i = 0; i < 200000; i++) {
+            ActivityIdentifierImpl key = id(r.nextInt(3), r.nextInt(3), r.nextInt(500));
+
+            switch (r.nextInt(3)) {
+            case 0:
+                assertEquals(ref.put(key, i), m.put(key, i));
+                break;
+            case 1:
+                assertEquals(ref.remove(key), m.remove(key));
+                break;
+            default:
+                assertEquals(ref.get(key), m.get(key));
+            }
+
+            assertEquals(ref.size(), m.size());
+        }
+
+        for (ActivityIdentifierImpl key : ref.keySet()) {
+            assertEquals(ref.get(key), m.get(key));
+        }
+    }
+}
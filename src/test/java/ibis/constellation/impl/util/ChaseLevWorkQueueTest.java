@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ImplUtil;
+
+public class ChaseLevWorkQueueTest {
+
+    private static final Context A = new Context("A");
+
+    @Test
+    public void testSuitable() {
+        assertTrue(ChaseLevWorkQueue.isSuitable(A));
+        assertFalse(ChaseLevWorkQueue.isSuitable(new Context("A", 1)));
+        assertFalse(ChaseLevWorkQueue.isSuitable(new OrContext(A, new Context("B"))));
+    }
+
+    @Test
+    public void testOwnerOrder() {
+        WorkQueue q = new ChaseLevWorkQueue("queue", Thread.currentThread());
+        ActivityRecord r1 = ImplUtil.createActivityRecord(A);
+        ActivityRecord r2 = ImplUtil.createActivityRecord(A);
+        ActivityRecord r3 = ImplUtil.createActivityRecord(A);
+        q.enqueue(r1);
+        q.enqueue(r2);
+        q.enqueue(r3);
+        assertEquals(3, q.size());
+        assertSame(r3, q.steal(A, StealStrategy.SMALLEST));
+        assertSame(r1, q.steal(A, StealStrategy.BIGGEST));
+        assertSame(r2, q.steal(A, StealStrategy.SMALLEST));
+        assertNull(q.steal(A, StealStrategy.SMALLEST));
+        assertNull(q.steal(A, StealStrategy.BIGGEST));
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testGrow() {
+        WorkQueue q = new ChaseLevWorkQueue("queue", Thread.currentThread());
+        ActivityRecord[] r = new ActivityRecord[1000];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = ImplUtil.createActivityRecord(A);
+            q.enqueue(r[i]);
+        }
+        assertEquals(r.length, q.size());
+        for (int i = r.length - 1; i >= 0; i--) {
+            assertSame(r[i], q.steal(A, StealStrategy.SMALLEST));
+        }
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testContextMismatch() {
+        WorkQueue q = new ChaseLevWorkQueue("queue", Thread.currentThread());
+        ActivityRecord r = ImplUtil.createActivityRecord(A);
+        q.enqueue(r);
+        assertNull(q.steal(new Context("B"), StealStrategy.SMALLEST));
+        assertNull(q.steal(new Context("B"), StealStrategy.BIGGEST));
+        assertEquals(1, q.size());
+        assertSame(r, q.steal(A, StealStrategy.SMALLEST));
+    }
+
+    @Test
+    public void testNonOwner() throws Exception {
+        final WorkQueue q = new ChaseLevWorkQueue("queue", Thread.currentThread());
+        final ActivityRecord r1 = ImplUtil.createActivityRecord(A);
+        final ActivityRecord r2 = ImplUtil.createActivityRecord(A);
+        final ActivityRecord[] result = new ActivityRecord[2];
+
+        q.enqueue(r1);
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                // Enqueued in the inbox, then stolen from the deque first.
+                q.enqueue(r2);
+                result[0] = q.steal(A, StealStrategy.SMALLEST);
+                result[1] = q.steal(A, StealStrategy.SMALLEST);
+            }
+        };
+        t.start();
+        t.join();
+
+        assertSame(r1, result[0]);
+        assertSame(r2, result[1]);
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testConcurrentSteals() throws Exception {
+        final int count = 100000;
+        final WorkQueue q = new ChaseLevWorkQueue("queue", Thread.currentThread());
+        final Set<ActivityRecord> seen = Collections
+                .synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ActivityRecord, Boolean>()));
+        final AtomicInteger taken = new AtomicInteger();
+        final AtomicInteger duplicates = new AtomicInteger();
+
+        Thread[] thieves = new Thread[3];
+
+        for (int i = 0; i < thieves.length; i++) {
+            thieves[i] = new Thread() {
+                @Override
+                public void run() {
+                    while (taken.get() < count) {
+                        ActivityRecord r = q.steal(A, StealStrategy.BIGGEST);
+                        if (r != null) {
+                            if (!seen.add(r)) {
+                                duplicates.incrementAndGet();
+                            }
+                            taken.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            thieves[i].start();
+        }
+
+        for (int i = 0; i < count; i++) {
+            q.enqueue(ImplUtil.createActivityRecord(A));
+
+            if (i % 3 == 0) {
+                ActivityRecord r = q.steal(A, StealStrategy.SMALLEST);
+                if (r != null) {
+                    if (!seen.add(r)) {
+                        duplicates.incrementAndGet();
+                    }
+                    taken.incrementAndGet();
+                }
+            }
+        }
+
+        for (Thread t : thieves) {
+            t.join();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(count, taken.get());
+        assertEquals(count, seen.size());
+        assertEquals(0, q.size());
+    }
+}
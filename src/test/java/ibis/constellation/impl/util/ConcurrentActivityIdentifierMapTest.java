@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import ibis.constellation.impl.ActivityIdentifierImpl;
+import ibis.constellation.impl.ImplUtil;
+
+public class ConcurrentActivityIdentifierMapTest {
+
+    private static ActivityIdentifierImpl id(int node, long seq) {
+        return (ActivityIdentifierImpl) ImplUtil.createActivityIdentifier(node, 0, seq, false);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentActivityIdentifierMap<String> m = new ConcurrentActivityIdentifierMap<String>();
+
+        for (int i = 0; i < 1000; i++) {
+            assertNull(m.put(id(1, i), "v" + i));
+        }
+
+        assertEquals(1000, m.size());
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("v" + i, m.get(id(1, i)));
+        }
+
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals("v" + i, m.remove(id(1, i)));
+        }
+
+        assertEquals(500, m.size());
+        assertNull(m.get(id(1, 0)));
+        assertEquals("v1", m.get(id(1, 1)));
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrent() throws Exception {
+        final ConcurrentActivityIdentifierMap<Integer> m = new ConcurrentActivityIdentifierMap<Integer>();
+        final int threads = 4;
+        final int count = 50000;
+        final Throwable[] failure = new Throwable[1];
+
+        Thread[] t = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            final int node = i;
+            t[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            m.put(id(node, j), j);
+                        }
+                        for (int j = 0; j < count; j += 2) {
+                            assertEquals(Integer.valueOf(j), m.remove(id(node, j)));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            t[i].start();
+        }
+
+        for (Thread x : t) {
+            x.join();
+        }
+
+        synchronized (failure) {
+            assertNull(failure[0]);
+        }
+
+        assertEquals(threads * count / 2, m.size());
+
+        for (int i = 0; i < threads; i++) {
+            assertNull(m.get(id(i, 0)));
+            assertEquals(Integer.valueOf(1), m.get(id(i, 1)));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class IdleStrategyTest {
+
+    @Test
+    public void testSequence() {
+        IdleStrategy s = new IdleStrategy(2, 1, 10, 35);
+
+        assertEquals(IdleStrategy.SPIN, s.next());
+        assertEquals(IdleStrategy.SPIN, s.next());
+        assertEquals(IdleStrategy.YIELD, s.next());
+        assertEquals(10, s.next());
+        assertEquals(20, s.next());
+        assertEquals(35, s.next());
+        assertEquals(35, s.next());
+    }
+
+    @Test
+    public void testReset() {
+        IdleStrategy s = new IdleStrategy(1, 0, 10, 100);
+
+        assertEquals(IdleStrategy.SPIN, s.next());
+        assertEquals(10, s.next());
+        assertEquals(20, s.next());
+
+        s.reset();
+
+        assertEquals(IdleStrategy.SPIN, s.next());
+        assertEquals(10, s.next());
+    }
+
+    @Test
+    public void testParkOnly() {
+        IdleStrategy s = new IdleStrategy(0, 0, 5, 5);
+
+        assertEquals(5, s.next());
+        assertEquals(5, s.next());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPark() {
+        new IdleStrategy(1, 1, 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPark() {
+        new IdleStrategy(1, 1, 10, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSpins() {
+        new IdleStrategy(-1, 1, 10, 20);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MpscQueueTest {
+
+    @Test
+    public void testEmpty() {
+        MpscQueue<Integer> q = new MpscQueue<Integer>();
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOfferNull() {
+        new MpscQueue<Integer>().offer(null);
+    }
+
+    @Test
+    public void testFifo() {
+        MpscQueue<Integer> q = new MpscQueue<Integer>();
+
+        for (int i = 0; i < 100; i++) {
+            q.offer(i);
+        }
+
+        assertFalse(q.isEmpty());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), q.poll());
+        }
+
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+    }
+
+    @Test
+    public void testInterleaved() {
+        MpscQueue<Integer> q = new MpscQueue<Integer>();
+
+        q.offer(1);
+        q.offer(2);
+        assertEquals(Integer.valueOf(1), q.poll());
+        q.offer(3);
+        assertEquals(Integer.valueOf(2), q.poll());
+        assertEquals(Integer.valueOf(3), q.poll());
+        assertNull(q.poll());
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentProducers() throws Exception {
+        final MpscQueue<int[]> q = new MpscQueue<int[]>();
+        final int producers = 4;
+        final int count = 100000;
+
+        Thread[] threads = new Thread[producers];
+
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        q.offer(new int[] { id, i });
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        // Every element must arrive exactly once, and in order per producer.
+        int[] next = new int[producers];
+        int received = 0;
+
+        while (received < producers * count) {
+            int[] v = q.poll();
+
+            if (v == null) {
+                Thread.yield();
+                continue;
+            }
+
+            assertEquals(next[v[0]], v[1]);
+            next[v[0]]++;
+            received++;
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertNull(q.poll());
+    }
+}
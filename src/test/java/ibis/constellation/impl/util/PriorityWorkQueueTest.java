@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ImplUtil;
+
+public class PriorityWorkQueueTest {
+
+    @Test
+    public void testEmpty() {
+        WorkQueue q = new PriorityWorkQueue("queue");
+        assertEquals(0, q.size());
+        assertEquals(Integer.MIN_VALUE, q.highestPriority());
+        assertNull(q.steal(new Context("A"), StealStrategy.SMALLEST));
+    }
+
+    @Test
+    public void testStealHighestFirst() {
+        Context a = new Context("A", 0, 100);
+        ActivityRecord low = ImplUtil.createActivityRecord(new Context("A", 1, 1), -5);
+        ActivityRecord def = ImplUtil.createActivityRecord(new Context("A", 2, 2), Activity.DEFAULT_PRIORITY);
+        ActivityRecord high = ImplUtil.createActivityRecord(new Context("A", 3, 3), 7);
+
+        WorkQueue q = new PriorityWorkQueue("queue");
+        q.enqueue(def);
+        q.enqueue(low);
+        q.enqueue(high);
+
+        assertEquals(3, q.size());
+        assertEquals(7, q.highestPriority());
+        assertEquals(high, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(Activity.DEFAULT_PRIORITY, q.highestPriority());
+        assertEquals(def, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(-5, q.highestPriority());
+        assertEquals(low, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(Integer.MIN_VALUE, q.highestPriority());
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testStrategyWithinLevel() {
+        Context a = new Context("A", 0, 100);
+        ActivityRecord r1 = ImplUtil.createActivityRecord(new Context("A", 1, 1), 1);
+        ActivityRecord r2 = ImplUtil.createActivityRecord(new Context("A", 2, 2), 1);
+        ActivityRecord r3 = ImplUtil.createActivityRecord(new Context("A", 3, 3), 1);
+
+        WorkQueue q = new PriorityWorkQueue("queue");
+        q.enqueue(r2);
+        q.enqueue(r1);
+        q.enqueue(r3);
+
+        assertEquals(r3, q.steal(a, StealStrategy.BIGGEST));
+        assertEquals(r1, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(r2, q.steal(a, StealStrategy.SMALLEST));
+    }
+
+    @Test
+    public void testNoMatchAtHighestLevel() {
+        ActivityRecord ra = ImplUtil.createActivityRecord(new Context("A"), 10);
+        ActivityRecord rb = ImplUtil.createActivityRecord(new Context("B"), 0);
+
+        WorkQueue q = new PriorityWorkQueue("queue");
+        q.enqueue(ra);
+        q.enqueue(rb);
+
+        assertEquals(rb, q.steal(new Context("B"), StealStrategy.SMALLEST));
+        assertEquals(1, q.size());
+        assertEquals(10, q.highestPriority());
+        assertNull(q.steal(new Context("B"), StealStrategy.SMALLEST));
+    }
+
+    @Test
+    public void testStealOr() {
+        Context a = new Context("A");
+        Context b = new Context("B");
+        ActivityRecord rab = ImplUtil.createActivityRecord(new OrContext(a, b), 3);
+        ActivityRecord ra = ImplUtil.createActivityRecord(a, 1);
+
+        WorkQueue q = new PriorityWorkQueue("queue");
+        q.enqueue(ra);
+        q.enqueue(rab);
+
+        assertEquals(rab, q.steal(a, StealStrategy.SMALLEST));
+        assertNull(q.steal(b, StealStrategy.SMALLEST));
+        assertEquals(ra, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testBulkSteal() {
+        Context a = new Context("A", 0, 100);
+        WorkQueue q = new PriorityWorkQueue("queue");
+
+        for (int i = 0; i < 10; i++) {
+            q.enqueue(ImplUtil.createActivityRecord(new Context("A", i, i), i % 3));
+        }
+
+        ActivityRecord[] dst = new ActivityRecord[10];
+        int n = q.steal(a, StealStrategy.SMALLEST, dst, 0, 5);
+        assertEquals(5, n);
+        assertEquals(5, q.size());
+
+        // Priority 2 holds 3 activities, so the next 2 come from priority 1.
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, dst[i].getPriority());
+        }
+        for (int i = 3; i < 5; i++) {
+            assertEquals(1, dst[i].getPriority());
+        }
+    }
+
+    @Test
+    public void testStealHalf() {
+        Context a = new Context("A", 0, 100);
+        WorkQueue q = new PriorityWorkQueue("queue");
+
+        for (int i = 0; i < 9; i++) {
+            q.enqueue(ImplUtil.createActivityRecord(new Context("A", i, i), i % 3));
+        }
+
+        ActivityRecord[] dst = new ActivityRecord[10];
+        int n = q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 10);
+        assertEquals(5, n);
+        assertEquals(4, q.size());
+        assertEquals(2, dst[0].getPriority());
+        assertEquals(1, dst[4].getPriority());
+    }
+
+    @Test
+    public void testRemoveCancelled() {
+        Context a = new Context("A", 0, 100);
+        WorkQueue q = new PriorityWorkQueue("queue");
+        ActivityRecord high = ImplUtil.createActivityRecord(new Context("A", 1, 1), 5);
+        ActivityRecord low = ImplUtil.createActivityRecord(new Context("A", 2, 2), 0);
+        q.enqueue(high);
+        q.enqueue(low);
+
+        ImplUtil.cancel(high);
+
+        assertEquals(1, q.removeCancelled());
+        assertEquals(1, q.size());
+        assertEquals(low, q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testEmptyLevelsAreDropped() {
+        Context a = new Context("A", 0, 1000);
+        PriorityWorkQueue q = new PriorityWorkQueue("queue");
+        ActivityRecord[] dst = new ActivityRecord[1];
+
+        // Every activity has a priority of its own, but only the queued ones take a level.
+        for (int i = 0; i < 1000; i++) {
+            q.enqueue(ImplUtil.createActivityRecord(new Context("A", i, i), i));
+            assertEquals(1, q.levels());
+            if (i % 2 == 0) {
+                q.steal(a, StealStrategy.SMALLEST);
+            } else {
+                assertEquals(1, q.steal(a, StealStrategy.SMALLEST, dst, 0, 1));
+            }
+            assertEquals(0, q.levels());
+        }
+
+        ActivityRecord r = ImplUtil.createActivityRecord(new Context("A", 1, 1), 3);
+        q.enqueue(r);
+        q.enqueue(ImplUtil.createActivityRecord(new Context("A", 2, 2), 4));
+        ImplUtil.cancel(r);
+
+        assertEquals(1, q.removeCancelled());
+        assertEquals(1, q.levels());
+        assertEquals(4, q.highestPriority());
+    }
+}
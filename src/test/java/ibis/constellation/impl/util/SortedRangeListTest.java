@@ -0,0 +1,277 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ibis.constellation.Context;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ImplUtil;
+
+public class SortedRangeListTest {
+
+    private static ActivityRecord record(long start, long end) {
+        return ImplUtil.createActivityRecord(new Context("A", start, end));
+    }
+
+    @Test
+    public void testEmpty() {
+        SortedRangeList l = new SortedRangeList("A");
+        assertEquals(0, l.size());
+        assertNull(l.removeHead());
+        assertNull(l.removeTail());
+        assertNull(l.removeSmallestInRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertNull(l.removeBiggestInRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testHeadTail() {
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord r1 = record(1, 1);
+        ActivityRecord r2 = record(2, 2);
+        ActivityRecord r3 = record(3, 3);
+        l.insert(r2, 2, 2);
+        l.insert(r3, 3, 3);
+        l.insert(r1, 1, 1);
+        assertEquals(3, l.size());
+        assertSame(r1, l.removeHead());
+        assertSame(r3, l.removeTail());
+        assertSame(r2, l.removeHead());
+        assertEquals(0, l.size());
+    }
+
+    @Test
+    public void testEqualRangesOrder() {
+        // Equal ranges: the most recently inserted one is the smallest.
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord r1 = record(1, 1);
+        ActivityRecord r2 = record(1, 1);
+        ActivityRecord r3 = record(1, 1);
+        l.insert(r1, 1, 1);
+        l.insert(r2, 1, 1);
+        l.insert(r3, 1, 1);
+        assertSame(r3, l.removeSmallestInRange(0, 10));
+        assertSame(r1, l.removeBiggestInRange(0, 10));
+        assertSame(r2, l.removeHead());
+    }
+
+    @Test
+    public void testSmallestInRange() {
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord r1 = record(1, 2);
+        ActivityRecord r2 = record(5, 6);
+        ActivityRecord r3 = record(8, 9);
+        l.insert(r1, 1, 2);
+        l.insert(r2, 5, 6);
+        l.insert(r3, 8, 9);
+        assertNull(l.removeSmallestInRange(3, 4));
+        assertNull(l.removeSmallestInRange(10, 20));
+        assertSame(r2, l.removeSmallestInRange(3, 8));
+        assertSame(r3, l.removeSmallestInRange(3, 8));
+        assertNull(l.removeSmallestInRange(3, 8));
+        assertEquals(1, l.size());
+    }
+
+    @Test
+    public void testBiggestInRangeWideEarlyRange() {
+        // A wide range that starts early must be found, even when a later but narrow range does not overlap.
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord wide = record(0, 100);
+        ActivityRecord narrow = record(5, 6);
+        l.insert(wide, 0, 100);
+        l.insert(narrow, 5, 6);
+        assertSame(wide, l.removeBiggestInRange(50, 60));
+        assertNull(l.removeBiggestInRange(50, 60));
+        assertSame(narrow, l.removeBiggestInRange(6, 60));
+    }
+
+    @Test
+    public void testSameRecordTwice() {
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord r = record(1, 1);
+        SortedRangeList.Node n = l.insert(r, 1, 1);
+        l.insert(r, 5, 5);
+        assertEquals(2, l.size());
+        assertSame(r, l.removeSmallestInRange(4, 6));
+        assertTrue(l.remove(n));
+        assertFalse(l.remove(n));
+        assertEquals(0, l.size());
+    }
+
+    @Test
+    public void testRemoveNode() {
+        SortedRangeList l = new SortedRangeList("A");
+        ActivityRecord r1 = record(1, 1);
+        ActivityRecord r2 = record(2, 2);
+        SortedRangeList.Node n1 = l.insert(r1, 1, 1);
+        SortedRangeList.Node n2 = l.insert(r2, 2, 2);
+        assertSame(l, n1.getList());
+        assertTrue(l.remove(n1));
+        assertNull(n1.getList());
+        assertFalse(l.remove(n1));
+        assertEquals(1, l.size());
+        assertSame(r2, l.removeHead());
+        assertNull(n2.getList());
+    }
+
+    private static int[] smallest(ArrayList<long[]> ranges, long start, long end) {
+        int best = -1;
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            if (r[0] <= end && r[1] >= start) {
+                if (best < 0 || r[0] < ranges.get(best)[0]
+                        || (r[0] == ranges.get(best)[0] && r[1] < ranges.get(best)[1])) {
+                    best = i;
+                }
+            }
+        }
+        return best < 0 ? null : new int[] { best };
+    }
+
+    private static int[] biggest(ArrayList<long[]> ranges, long start, long end) {
+        int best = -1;
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] r = ranges.get(i);
+            if (r[0] <= end && r[1] >= start) {
+                if (best < 0 || r[0] > ranges.get(best)[0]
+                        || (r[0] == ranges.get(best)[0] && r[1] > ranges.get(best)[1])) {
+                    best = i;
+                }
+            }
+        }
+        return best < 0 ? null : new int[] { best };
+    }
+
+    @Test
+    public void testRandomAgainstScan() {
+        Random random = new Random(42);
+        SortedRangeList l = new SortedRangeList("A");
+        ArrayList<long[]> ranges = new ArrayList<long[]>();
+        ArrayList<ActivityRecord> records = new ArrayList<ActivityRecord>();
+        ArrayList<SortedRangeList.Node> nodes = new ArrayList<SortedRangeList.Node>();
+
+        for (int step = 0; step < 5000; step++) {
+            int op = random.nextInt(5);
+            long start = random.nextInt(1000);
+            long end = start + random.nextInt(random.nextBoolean() ? 10 : 500);
+
+            if (op <= 1 || ranges.isEmpty()) {
+                ActivityRecord r = record(start, end);
+                nodes.add(l.insert(r, start, end));
+                ranges.add(new long[] { start, end });
+                records.add(r);
+            } else if (op == 2) {
+                int[] expected = smallest(ranges, start, end);
+                ActivityRecord r = l.removeSmallestInRange(start, end);
+                check(ranges, records, nodes, expected, r);
+            } else if (op == 3) {
+                int[] expected = biggest(ranges, start, end);
+                ActivityRecord r = l.removeBiggestInRange(start, end);
+                check(ranges, records, nodes, expected, r);
+            } else {
+                int index = random.nextInt(nodes.size());
+                assertTrue(l.remove(nodes.get(index)));
+                ranges.remove(index);
+                records.remove(index);
+                nodes.remove(index);
+            }
+            assertEquals(ranges.size(), l.size());
+        }
+    }
+
+    private static void check(ArrayList<long[]> ranges, ArrayList<ActivityRecord> records, ArrayList<SortedRangeList.Node> nodes,
+            int[] expected, ActivityRecord r) {
+        if (expected == null) {
+            assertNull(r);
+            return;
+        }
+        int index = records.indexOf(r);
+        assertTrue(index >= 0);
+        // Ties on equal ranges may be broken differently, so compare the ranges.
+        assertEquals(ranges.get(expected[0])[0], ranges.get(index)[0]);
+        assertEquals(ranges.get(expected[0])[1], ranges.get(index)[1]);
+        assertNull(nodes.get(index).getList());
+        ranges.remove(index);
+        records.remove(index);
+        nodes.remove(index);
+    }
+
+    @Test
+    public void testBulkRemoveAgainstSingle() {
+        Random random = new Random(7);
+
+        for (int round = 0; round < 50; round++) {
+            // Lists with the same name have the same priorities, so both get the same shape.
+            SortedRangeList bulk = new SortedRangeList("A");
+            SortedRangeList single = new SortedRangeList("A");
+
+            int count = random.nextInt(200);
+
+            for (int i = 0; i < count; i++) {
+                long start = random.nextInt(1000);
+                long end = start + random.nextInt(random.nextBoolean() ? 10 : 500);
+                ActivityRecord r = record(start, end);
+                bulk.insert(r, start, end);
+                single.insert(r, start, end);
+            }
+
+            long start = random.nextInt(1000);
+            long end = start + random.nextInt(200);
+            int len = 1 + random.nextInt(20);
+            boolean biggest = random.nextBoolean();
+
+            SortedRangeList.Node[] nodes = new SortedRangeList.Node[len + 1];
+            int n = biggest ? bulk.removeBiggestInRange(start, end, nodes, 1, len)
+                    : bulk.removeSmallestInRange(start, end, nodes, 1, len);
+
+            for (int i = 0; i < n; i++) {
+                ActivityRecord expected = biggest ? single.removeBiggestInRange(start, end)
+                        : single.removeSmallestInRange(start, end);
+                assertSame(expected, nodes[1 + i].getData());
+                assertNull(nodes[1 + i].getList());
+            }
+
+            if (n < len) {
+                assertNull(single.removeSmallestInRange(start, end));
+            }
+
+            assertEquals(single.size(), bulk.size());
+        }
+    }
+
+    @Test
+    public void testCountInRange() {
+        SortedRangeList l = new SortedRangeList("A");
+        for (int i = 0; i < 10; i++) {
+            l.insert(record(i, i), i, i);
+        }
+        assertEquals(10, l.countInRange(Long.MIN_VALUE, Long.MAX_VALUE, 100));
+        assertEquals(4, l.countInRange(Long.MIN_VALUE, Long.MAX_VALUE, 4));
+        assertEquals(3, l.countInRange(2, 4, 100));
+        assertEquals(0, l.countInRange(20, 40, 100));
+        assertEquals(10, l.size());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.impl.util;
+
+import java.util.Random;
+
+import ibis.constellation.Context;
+import ibis.constellation.OrContext;
+import ibis.constellation.StealStrategy;
+import ibis.constellation.impl.ActivityRecord;
+import ibis.constellation.impl.ImplUtil;
+
+/**
+ * Microbenchmark for stealing from a {@link SimpleWorkQueue} filled with activities that have an {@link OrContext}. Each steal
+ * also has to remove the stolen activity from the lists of its other contexts, so the cost per steal should not depend on the
+ * length of the queue.
+ *
+ * This is not a unit test. Run it with <code>java ibis.constellation.impl.util.WorkQueueBenchmark [labels] [steals]</code>.
+ */
+public class WorkQueueBenchmark {
+
+    private static final int[] LENGTHS = { 1000, 10000, 100000, 1000000 };
+
+    private static double run(int length, int labels, int steals, Random random) {
+
+        Context[] names = new Context[labels];
+
+        for (int i = 0; i < labels; i++) {
+            names[i] = new Context("label" + i);
+        }
+
+        SimpleWorkQueue q = new SimpleWorkQueue("benchmark");
+
+        for (int i = 0; i < length; i++) {
+            Context[] tmp = new Context[labels];
+
+            for (int j = 0; j < labels; j++) {
+                long start = random.nextInt(length);
+                tmp[j] = new Context("label" + j, start, start + random.nextInt(16));
+            }
+
+            q.enqueue(ImplUtil.createActivityRecord(new OrContext(tmp)));
+        }
+
+        long time = 0;
+
+        for (int i = 0; i < steals; i++) {
+            Context c = names[i % labels];
+            StealStrategy s = (i & 1) == 0 ? StealStrategy.SMALLEST : StealStrategy.BIGGEST;
+
+            long t = System.nanoTime();
+            ActivityRecord r = q.steal(c, s);
+            time += System.nanoTime() - t;
+
+            // Put it back, to keep the length of the queue constant.
+            q.enqueue(r);
+        }
+
+        return (double) time / steals;
+    }
+
+    public static void main(String[] args) {
+
+        int labels = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int steals = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        Random random = new Random(1);
+
+        // Warm up.
+        run(LENGTHS[1], labels, steals, random);
+
+        for (int length : LENGTHS) {
+            System.out.printf("length %8d, %d labels: %8.1f ns/steal%n", length, labels, run(length, labels, steals, random));
+        }
+    }
+}
@@ -161,4 +161,133 @@ public class WorkQueueTest {
         ActivityRecord tmp2 = q.steal(a, StealStrategy.BIGGEST);
         assertEquals(tmp2, tmp1);
     }
+
+    @Test
+    public void testStealOrSize() {
+        Context a = new Context("A");
+        Context b = new Context("B");
+        Context c = new Context("C");
+        ActivityRecord r1 = ImplUtil.createActivityRecord(new OrContext(a, b, c));
+        ActivityRecord r2 = ImplUtil.createActivityRecord(new OrContext(c, a));
+
+        WorkQueue q = new SimpleWorkQueue("queue");
+        q.enqueue(r1);
+        q.enqueue(r2);
+        assertEquals(2, q.size());
+        ActivityRecord tmp1 = q.steal(b, StealStrategy.SMALLEST);
+        assertEquals(r1, tmp1);
+        assertEquals(1, q.size());
+        ActivityRecord tmp2 = q.steal(a, StealStrategy.SMALLEST);
+        assertEquals(r2, tmp2);
+        assertEquals(0, q.size());
+        assertNull(q.steal(c, StealStrategy.SMALLEST));
+
+        // Records may be queued again after a steal.
+        q.enqueue(tmp1);
+        assertEquals(r1, q.steal(c, StealStrategy.SMALLEST));
+        assertNull(q.steal(a, StealStrategy.SMALLEST));
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testStealBulk() {
+        Context a = new Context("A");
+        Context b = new Context("B");
+        WorkQueue q = new SimpleWorkQueue("queue");
+        ActivityRecord[] r = new ActivityRecord[5];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = ImplUtil.createActivityRecord(new Context("A", i));
+            q.enqueue(r[i]);
+        }
+        ActivityRecord rab = ImplUtil.createActivityRecord(new OrContext(new Context("A", 10), b));
+        q.enqueue(rab);
+
+        ActivityRecord[] dst = new ActivityRecord[4];
+        assertEquals(3, q.steal(a, StealStrategy.SMALLEST, dst, 1, 3));
+        assertEquals(r[0], dst[1]);
+        assertEquals(r[1], dst[2]);
+        assertEquals(r[2], dst[3]);
+        assertEquals(3, q.size());
+
+        // The OrContext record is the biggest for A, and must be removed from B as well.
+        assertEquals(1, q.steal(a, StealStrategy.BIGGEST, dst, 0, 1));
+        assertEquals(rab, dst[0]);
+        assertNull(q.steal(b, StealStrategy.SMALLEST));
+        assertEquals(2, q.steal(new OrContext(a, b), StealStrategy.SMALLEST, dst, 0, 4));
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testStealBulkRepeatedName() {
+        Context a = new Context("A");
+        ActivityRecord r = ImplUtil.createActivityRecord(new OrContext(new Context("A", 1), new Context("A", 5)));
+        WorkQueue q = new SimpleWorkQueue("queue");
+        q.enqueue(r);
+
+        ActivityRecord[] dst = new ActivityRecord[2];
+        assertEquals(1, q.steal(a, StealStrategy.SMALLEST, dst, 0, 2));
+        assertEquals(r, dst[0]);
+        assertNull(dst[1]);
+        assertEquals(0, q.size());
+    }
+
+    @Test
+    public void testStealHalf() {
+        Context a = new Context("A");
+        WorkQueue q = new SimpleWorkQueue("queue");
+        for (int i = 0; i < 10; i++) {
+            q.enqueue(ImplUtil.createActivityRecord(new Context("A", i)));
+            q.enqueue(ImplUtil.createActivityRecord(new Context("B", i)));
+        }
+
+        ActivityRecord[] dst = new ActivityRecord[100];
+        assertEquals(5, q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 100));
+        assertEquals(3, q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 100));
+        assertEquals(1, q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 1));
+        assertEquals(1, q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 100));
+        assertEquals(0, q.stealHalf(a, StealStrategy.SMALLEST, dst, 0, 100));
+        assertEquals(10, q.size());
+    }
+
+    @Test
+    public void testRemoveCancelled() {
+        Context a = new Context("A");
+        WorkQueue q = new SimpleWorkQueue("queue");
+        ActivityRecord[] r = new ActivityRecord[6];
+
+        for (int i = 0; i < r.length; i++) {
+            r[i] = ImplUtil.createActivityRecord(new Context("A", i));
+            q.enqueue(r[i]);
+        }
+
+        ImplUtil.cancel(r[1]);
+        ImplUtil.cancel(r[4]);
+
+        assertEquals(2, q.removeCancelled());
+        assertEquals(4, q.size());
+        assertEquals(0, q.removeCancelled());
+
+        ActivityRecord[] dst = new ActivityRecord[6];
+        assertEquals(4, q.steal(a, StealStrategy.SMALLEST, dst, 0, 6));
+        assertEquals(r[0], dst[0]);
+        assertEquals(r[2], dst[1]);
+        assertEquals(r[3], dst[2]);
+        assertEquals(r[5], dst[3]);
+    }
+
+    @Test
+    public void testRemoveCancelledOr() {
+        Context a = new Context("A");
+        Context b = new Context("B");
+        ActivityRecord r = ImplUtil.createActivityRecord(new OrContext(a, b));
+        WorkQueue q = new SimpleWorkQueue("queue");
+        q.enqueue(r);
+
+        ImplUtil.cancel(r);
+
+        assertEquals(1, q.removeCancelled());
+        assertEquals(0, q.size());
+        assertNull(q.steal(a, StealStrategy.SMALLEST));
+        assertNull(q.steal(b, StealStrategy.SMALLEST));
+    }
 }
@@ -323,5 +323,32 @@ public class CircularBufferTest {
         String tmp = t.get(1);
         assertEquals(tmp, "C");
     }
-}
 
+    @Test
+    public void testSetCapacityWrapped() {
+        CircularBuffer<String> t = new CircularBuffer<>(4);
+        t.insertLast("A");
+        t.insertLast("B");
+        t.insertLast("C");
+        t.removeFirst();
+        t.removeFirst();
+        t.insertLast("D");
+        t.insertLast("E"); // Wraps around
+        t.setCapacity(3);
+        assertEquals(3, t.capacity());
+        assertEquals("C", t.get(0));
+        assertEquals("D", t.get(1));
+        assertEquals("E", t.get(2));
+        t.insertLast("F"); // Grows again
+        assertEquals("F", t.get(3));
+        assertEquals("C", t.removeFirst());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCapacityTooSmall() {
+        CircularBuffer<String> t = new CircularBuffer<>(4);
+        t.insertLast("A");
+        t.insertLast("B");
+        t.setCapacity(1);
+    }
+}
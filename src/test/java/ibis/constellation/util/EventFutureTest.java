@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Vrije Universiteit Amsterdam
+ *                Netherlands eScience Center
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ibis.constellation.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ibis.constellation.Activity;
+import ibis.constellation.ActivityIdentifier;
+import ibis.constellation.Constellation;
+import ibis.constellation.Context;
+import ibis.constellation.Event;
+import ibis.constellation.impl.FakeConstellation;
+import ibis.constellation.impl.ImplUtil;
+
+public class EventFutureTest {
+
+    private static class SubmitConstellation extends FakeConstellation {
+
+        Activity submitted;
+
+        final ActivityIdentifier id = ImplUtil.createActivityIdentifier(0, 0, 1, true);
+
+        @Override
+        public ActivityIdentifier submit(Activity activity) {
+            submitted = activity;
+            return id;
+        }
+    }
+
+    @Test
+    public void testSubmitRejected() throws Exception {
+        assertNull(EventFuture.submit(ImplUtil.createFakeConstellation(), new Context("TEST", 0, 0)));
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+
+        SubmitConstellation c = new SubmitConstellation();
+        Context a = new Context("TEST", 0, 0);
+
+        EventFuture f = EventFuture.submit(c, a);
+
+        assertEquals(c.id, f.identifier());
+        assertEquals(a, c.submitted.getContext());
+        assertTrue(c.submitted.expectsEvents());
+        assertFalse(c.submitted.mayBeStolen());
+        assertFalse(f.isDone());
+    }
+
+    @Test
+    public void testComplete() throws Exception {
+
+        SubmitConstellation c = new SubmitConstellation();
+
+        EventFuture f = EventFuture.submit(c, new Context("TEST", 0, 0));
+
+        Event e = new Event(c.id, c.id, "Hello");
+
+        assertEquals(Activity.SUSPEND, c.submitted.initialize(c));
+        assertEquals(Activity.FINISH, c.submitted.process(c, e));
+
+        assertTrue(f.isDone());
+        assertEquals(e, f.get());
+    }
+}